@@ -0,0 +1,89 @@
+package com.example.snapshop
+
+/**
+ * Frame-to-frame box association: gives each detection a track ID that
+ * stays the same while the object stays in view.
+ *
+ * Greedy matching by IoU within the same label, highest IoU first. A track
+ * survives [maxMisses] frames without a match (detector flicker) before its
+ * ID is retired. Detections are a handful per frame, so O(tracks × boxes)
+ * per frame is fine. Single-threaded: call from the analyzer thread.
+ */
+class BoxTracker(
+    private val matchIou: Float = 0.3f,
+    private val maxMisses: Int = 5
+) {
+
+    private class Track(val id: Int, var label: String?, var x: Float, var y: Float, var w: Float, var h: Float) {
+        var misses = 0
+    }
+
+    private val tracks = ArrayList<Track>()
+    private var nextId = 1
+
+    /**
+     * Track IDs for [objects], index-aligned
+     */
+    fun update(objects: Array<Yolo26Ncnn.Obj>): IntArray {
+        val ids = IntArray(objects.size)
+
+        // all (track, box) pairs above the threshold, best first
+        val pairs = ArrayList<Triple<Float, Int, Int>>()
+        for (t in tracks.indices) {
+            val track = tracks[t]
+            for (b in objects.indices) {
+                val obj = objects[b]
+                if (obj.label != track.label) continue
+                val iou = iou(track, obj)
+                if (iou >= matchIou) pairs.add(Triple(iou, t, b))
+            }
+        }
+        pairs.sortByDescending { it.first }
+
+        val trackUsed = BooleanArray(tracks.size)
+        val boxUsed = BooleanArray(objects.size)
+        for ((_, t, b) in pairs) {
+            if (trackUsed[t] || boxUsed[b]) continue
+            trackUsed[t] = true
+            boxUsed[b] = true
+
+            val track = tracks[t]
+            val obj = objects[b]
+            track.x = obj.x
+            track.y = obj.y
+            track.w = obj.w
+            track.h = obj.h
+            track.misses = 0
+            ids[b] = track.id
+        }
+
+        for (t in tracks.indices) {
+            if (!trackUsed[t]) tracks[t].misses++
+        }
+        tracks.removeAll { it.misses > maxMisses }
+
+        for (b in objects.indices) {
+            if (boxUsed[b]) continue
+            val obj = objects[b]
+            val track = Track(nextId++, obj.label, obj.x, obj.y, obj.w, obj.h)
+            tracks.add(track)
+            ids[b] = track.id
+        }
+
+        return ids
+    }
+
+    fun reset() {
+        tracks.clear()
+    }
+
+    private fun iou(t: Track, o: Yolo26Ncnn.Obj): Float {
+        val x0 = maxOf(t.x, o.x)
+        val y0 = maxOf(t.y, o.y)
+        val x1 = minOf(t.x + t.w, o.x + o.w)
+        val y1 = minOf(t.y + t.h, o.y + o.h)
+        val inter = maxOf(0f, x1 - x0) * maxOf(0f, y1 - y0)
+        val union = t.w * t.h + o.w * o.h - inter
+        return if (union > 0f) inter / union else 0f
+    }
+}
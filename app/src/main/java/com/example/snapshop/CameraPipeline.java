@@ -0,0 +1,337 @@
+package com.example.snapshop;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared camera → detection pipeline for the camera activities.
+ *
+ * Binds a 640x480 Preview + ImageAnalysis (keep-only-latest) to the
+ * activity lifecycle and runs every analyzed frame through pluggable
+ * stages on a single analyzer thread:
+ *
+ *   gate     enabled flag, detect interval, optional custom Gate
+ *   convert  ImageProxy → upright Bitmap (YuvBitmapConverter by default)
+ *   detect   Yolo26Ncnn.detect or any Detector
+ *   track    optional Tracker, track IDs go into the snapshot
+ *   publish  DetectionBus snapshot, then FrameListeners (capture, autotune)
+ *
+ * Average time per stage is logged every LOG_EVERY frames. The analyzer
+ * executor is shut down when the lifecycle is destroyed, closing the
+ * converter first if it is Closeable.
+ */
+public class CameraPipeline implements DefaultLifecycleObserver {
+
+    private static final String TAG = "CameraPipeline";
+    private static final int LOG_EVERY = 100;
+
+    /** ImageProxy → upright ARGB_8888 bitmap, null drops the frame */
+    public interface Converter {
+        Bitmap convert(ImageProxy image, boolean mirror);
+    }
+
+    /** Extra frame filter, checked before conversion */
+    public interface Gate {
+        boolean accept(long frameTimestampNs);
+    }
+
+    public interface Detector {
+        Yolo26Ncnn.Obj[] detect(Bitmap bitmap);
+    }
+
+    /** Track IDs index-aligned with objects */
+    public interface Tracker {
+        int[] track(Yolo26Ncnn.Obj[] objects);
+    }
+
+    /** Per-frame work on the analyzer thread, the bitmap is recycled right after */
+    public interface FrameListener {
+        void onFrame(Bitmap bitmap, Yolo26Ncnn.Obj[] objects);
+    }
+
+    public static class Builder {
+        private final AppCompatActivity activity;
+        private final PreviewView previewView;
+        private int lensFacing = CameraSelector.LENS_FACING_BACK;
+        private boolean mirrorFrontCamera = false;
+        private boolean enabled = true;
+        private long detectIntervalMs = 100;
+        private Converter converter = new YuvBitmapConverter(95);
+        private Gate gate = null;
+        private Detector detector = null;
+        private Tracker tracker = null;
+        private DetectionBus bus = null;
+        private Runnable onBound = null;
+
+        public Builder(AppCompatActivity activity, PreviewView previewView) {
+            this.activity = activity;
+            this.previewView = previewView;
+        }
+
+        public Builder lensFacing(int lensFacing) {
+            this.lensFacing = lensFacing;
+            return this;
+        }
+
+        /** Mirror front-camera frames so boxes line up with the mirrored preview */
+        public Builder mirrorFrontCamera(boolean mirror) {
+            this.mirrorFrontCamera = mirror;
+            return this;
+        }
+
+        public Builder enabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder detectInterval(long intervalMs) {
+            this.detectIntervalMs = intervalMs;
+            return this;
+        }
+
+        public Builder converter(Converter converter) {
+            this.converter = converter;
+            return this;
+        }
+
+        public Builder gate(Gate gate) {
+            this.gate = gate;
+            return this;
+        }
+
+        public Builder detector(Detector detector) {
+            this.detector = detector;
+            return this;
+        }
+
+        public Builder tracker(Tracker tracker) {
+            this.tracker = tracker;
+            return this;
+        }
+
+        public Builder bus(DetectionBus bus) {
+            this.bus = bus;
+            return this;
+        }
+
+        /** Main thread, after the use cases are bound */
+        public Builder onBound(Runnable onBound) {
+            this.onBound = onBound;
+            return this;
+        }
+
+        public CameraPipeline build() {
+            if (detector == null || bus == null) {
+                throw new IllegalStateException("CameraPipeline needs a detector and a bus");
+            }
+            return new CameraPipeline(this);
+        }
+    }
+
+    private final AppCompatActivity activity;
+    private final PreviewView previewView;
+    private final boolean mirrorFrontCamera;
+    private final long detectIntervalMs;
+    private final Converter converter;
+    private final Gate gate;
+    private final Detector detector;
+    private final Tracker tracker;
+    private final DetectionBus bus;
+    private final Runnable onBound;
+    private final CopyOnWriteArrayList<FrameListener> frameListeners = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService analyzerExecutor = Executors.newSingleThreadExecutor();
+    private ProcessCameraProvider cameraProvider;
+
+    private volatile int lensFacing;
+    private volatile boolean enabled;
+
+    // analyzer thread only
+    private long lastDetectTime = 0;
+    private long frames = 0;
+    private long convertNanos, detectNanos, trackNanos, publishNanos;
+
+    private CameraPipeline(Builder b) {
+        activity = b.activity;
+        previewView = b.previewView;
+        lensFacing = b.lensFacing;
+        mirrorFrontCamera = b.mirrorFrontCamera;
+        enabled = b.enabled;
+        detectIntervalMs = b.detectIntervalMs;
+        converter = b.converter;
+        gate = b.gate;
+        detector = b.detector;
+        tracker = b.tracker;
+        bus = b.bus;
+        onBound = b.onBound;
+
+        activity.getLifecycle().addObserver(this);
+    }
+
+    /** Get the camera provider and bind the use cases. Main thread. */
+    public void start() {
+        ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(activity);
+        future.addListener(() -> {
+            try {
+                cameraProvider = future.get();
+                bindCameraUseCases();
+            } catch (Exception e) {
+                Log.e(TAG, "Camera init failed", e);
+            }
+        }, ContextCompat.getMainExecutor(activity));
+    }
+
+    /** Switch camera and rebind. Main thread. */
+    public void setLensFacing(int lensFacing) {
+        this.lensFacing = lensFacing;
+        start();
+    }
+
+    public boolean isFrontCamera() {
+        return lensFacing == CameraSelector.LENS_FACING_FRONT;
+    }
+
+    /** Frames are dropped (and closed) while disabled */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addFrameListener(FrameListener listener) {
+        frameListeners.add(listener);
+    }
+
+    public void removeFrameListener(FrameListener listener) {
+        frameListeners.remove(listener);
+    }
+
+    /** Run on the analyzer thread, no detect call interleaves */
+    public void execute(Runnable task) {
+        analyzerExecutor.execute(task);
+    }
+
+    private void bindCameraUseCases() {
+        if (cameraProvider == null) return;
+        cameraProvider.unbindAll();
+
+        CameraSelector selector = new CameraSelector.Builder()
+                .requireLensFacing(lensFacing)
+                .build();
+
+        Preview preview = new Preview.Builder()
+                .setTargetResolution(new Size(640, 480))
+                .build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setTargetResolution(new Size(640, 480))
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+        analysis.setAnalyzer(analyzerExecutor, this::analyze);
+
+        try {
+            cameraProvider.bindToLifecycle(activity, selector, preview, analysis);
+            if (onBound != null) onBound.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Use case binding failed", e);
+        }
+    }
+
+    private void analyze(ImageProxy image) {
+        try {
+            // Gate
+            if (!enabled) return;
+
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastDetectTime < detectIntervalMs) return;
+
+            // Sensor timestamp paces the overlay animation between results
+            long frameTimestamp = image.getImageInfo().getTimestamp();
+            if (gate != null && !gate.accept(frameTimestamp)) return;
+            lastDetectTime = currentTime;
+
+            // Convert
+            long t0 = SystemClock.elapsedRealtimeNanos();
+            Bitmap bitmap = converter.convert(image, mirrorFrontCamera && isFrontCamera());
+            if (bitmap == null) return;
+
+            // Detect
+            long t1 = SystemClock.elapsedRealtimeNanos();
+            Yolo26Ncnn.Obj[] objects = detector.detect(bitmap);
+            long t2 = SystemClock.elapsedRealtimeNanos();
+
+            // Track
+            int[] trackIds = tracker != null && objects != null ? tracker.track(objects) : null;
+            long t3 = SystemClock.elapsedRealtimeNanos();
+
+            // Publish
+            bus.publish(objects, bitmap.getWidth(), bitmap.getHeight(), frameTimestamp, (t2 - t1) / 1000000, trackIds);
+            for (FrameListener listener : frameListeners) {
+                listener.onFrame(bitmap, objects);
+            }
+            bitmap.recycle();
+            long t4 = SystemClock.elapsedRealtimeNanos();
+
+            logStages(t1 - t0, t2 - t1, t3 - t2, t4 - t3);
+        } catch (Exception e) {
+            Log.e(TAG, "Detection failed", e);
+        } finally {
+            image.close();
+        }
+    }
+
+    private void logStages(long convert, long detect, long track, long publish) {
+        convertNanos += convert;
+        detectNanos += detect;
+        trackNanos += track;
+        publishNanos += publish;
+        frames++;
+
+        if (frames % LOG_EVERY == 0) {
+            Log.d(TAG, String.format("avg over %d frames: convert %.1fms detect %.1fms track %.2fms publish %.2fms",
+                    frames, convertNanos / 1e6 / frames, detectNanos / 1e6 / frames,
+                    trackNanos / 1e6 / frames, publishNanos / 1e6 / frames));
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        // after any frame still being analyzed (FrameRecorder flushes its file here)
+        if (converter instanceof Closeable) {
+            analyzerExecutor.execute(() -> {
+                try {
+                    ((Closeable) converter).close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Converter close failed", e);
+                }
+            });
+        }
+        analyzerExecutor.shutdown();
+        owner.getLifecycle().removeObserver(this);
+    }
+}
@@ -3,39 +3,29 @@ package com.example.snapshop;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
+import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
-import android.util.Size;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageProxy;
-import androidx.camera.core.Preview;
-import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.common.util.concurrent.ListenableFuture;
-
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class DetectActivity extends AppCompatActivity {
     private static final String TAG = "DetectActivity";
     private static final int REQUEST_PERMISSION = 100;
+    private static final int REQUEST_GALLERY_PERMISSION = 101;
     private static final String[] REQUIRED_PERMISSIONS = {
             Manifest.permission.CAMERA
     };
@@ -44,14 +34,19 @@ public class DetectActivity extends AppCompatActivity {
     private PreviewView previewView;
     private OverlayView overlayView;
     private TextView tvResult;
+    private StatusTextPublisher statusPublisher;
     private Button btnSwitchCamera;
     private Button btnStartStop;
+    private Button btnScanGallery;
     private Button btnConnectWallet;
     private Button btnMemoOnChain;
     private TextView tvWalletStatus;
 
-    // Store current detection results for on-chain memo
-    private Yolo26Ncnn.Obj[] currentObjects = null;
+    // Latest detection results: the overlay subscribes, on-chain memo reads the latest snapshot
+    private final DetectionBus detectionBus = new DetectionBus();
+
+    // Tracked frames as a Flow; the status line collects the latest one while started
+    private DetectionSession detectionSession;
 
     // Store last transaction info
     private String lastTxSignature = null;
@@ -59,15 +54,27 @@ public class DetectActivity extends AppCompatActivity {
 
     private int currentModel = 0;
     private int currentDevice = 0; // Use CPU only (Seeker GPU performance is insufficient)
-    private boolean isDetecting = false;
-    private boolean isFrontCamera = false;
 
-    private ExecutorService cameraExecutor;
-    private ProcessCameraProvider cameraProvider;
+    // Camera, convert, detect and publish; enabled by "Start Detect"
+    private CameraPipeline cameraPipeline;
+
+    // First-run autotune or precision check, fed with analyzed frames as precision references
+    private volatile YoloAutotuner.PendingTune pendingTune = null;
 
-    private long lastDetectTime = 0;
     private static final long DETECT_INTERVAL = 100; // Detection interval 100ms
 
+    // Capture mode: adb shell am start -n com.example.snapshop/.DetectActivity --ez record_frames true
+    // records analyzed frames to <external files>/frames-<time>.ssfr for off-device replay
+    public static final String EXTRA_RECORD_FRAMES = "record_frames";
+    private static final int RECORD_MAX_FRAMES = 300;
+
+    // Running gallery scan, null when idle; touched on the UI thread only
+    private YoloBatch.Handle galleryScan = null;
+    private boolean galleryScanning = false;
+
+    // Labels listed in the gallery scan summary
+    private static final int GALLERY_TOP_LABELS = 10;
+
     // Solana Wallet Helper (Kotlin)
     private WalletHelper walletHelper;
 
@@ -79,8 +86,21 @@ public class DetectActivity extends AppCompatActivity {
         previewView = findViewById(R.id.previewView);
         overlayView = findViewById(R.id.overlayView);
         tvResult = findViewById(R.id.tvResult);
+        statusPublisher = new StatusTextPublisher(tvResult);
+
+        // The overlay is thread-safe and coalesces to one update per vsync,
+        // nothing is posted to the UI thread per frame
+        detectionBus.subscribe(snapshot -> {
+            overlayView.setPreviewSize(snapshot.imageWidth, snapshot.imageHeight);
+            overlayView.setResults(snapshot.objects, snapshot.frameTimestampNs);
+        });
+
+        // Status line: conflated, a busy UI thread skips frames instead of queueing them
+        detectionSession = new DetectionSession(detectionBus);
+        detectionSession.collectFrames(this, detectionSession.frames(), statusPublisher::publish);
         btnSwitchCamera = findViewById(R.id.btnSwitchCamera);
         btnStartStop = findViewById(R.id.btnStartStop);
+        btnScanGallery = findViewById(R.id.btnScanGallery);
         btnConnectWallet = findViewById(R.id.btnConnectWallet);
         btnMemoOnChain = findViewById(R.id.btnMemoOnChain);
         tvWalletStatus = findViewById(R.id.tvWalletStatus);
@@ -88,7 +108,17 @@ public class DetectActivity extends AppCompatActivity {
         // Set PreviewView to fill the container (crop to fit)
         previewView.setScaleType(PreviewView.ScaleType.FILL_CENTER);
 
-        cameraExecutor = Executors.newSingleThreadExecutor();
+        cameraPipeline = new CameraPipeline.Builder(this, previewView)
+                .lensFacing(CameraSelector.LENS_FACING_BACK)
+                .mirrorFrontCamera(true)
+                .enabled(false)
+                .detectInterval(DETECT_INTERVAL)
+                .converter(createConverter())
+                .detector(yolo26Ncnn::detect)
+                .bus(detectionBus)
+                .onBound(() -> tvResult.setText("Camera ready. Tap \"Start Detect\" to begin."))
+                .build();
+        cameraPipeline.addFrameListener(this::offerToAutotune);
 
         // Initialize Solana Wallet Helper
         walletHelper = new WalletHelper(this);
@@ -101,25 +131,34 @@ public class DetectActivity extends AppCompatActivity {
 
         // Switch camera button
         btnSwitchCamera.setOnClickListener(v -> {
-            isFrontCamera = !isFrontCamera;
-            overlayView.setFrontCamera(isFrontCamera);
-            startCamera();
+            boolean front = !cameraPipeline.isFrontCamera();
+            overlayView.setFrontCamera(front);
+            cameraPipeline.setLensFacing(front ?
+                    CameraSelector.LENS_FACING_FRONT :
+                    CameraSelector.LENS_FACING_BACK);
         });
 
         // Start/Stop detection button
         btnStartStop.setOnClickListener(v -> {
-            isDetecting = !isDetecting;
-            btnStartStop.setText(isDetecting ? "Stop Detect" : "Start Detect");
-            if (!isDetecting) {
+            boolean detecting = !cameraPipeline.isEnabled();
+            cameraPipeline.setEnabled(detecting);
+            btnStartStop.setText(detecting ? "Stop Detect" : "Start Detect");
+            if (detecting) {
+                statusPublisher.start();
+            } else {
                 overlayView.clearResults();
+                statusPublisher.cancel();
                 tvResult.setText("Detection stopped");
             }
         });
 
+        // Scan gallery button: index detections in the photo library, tap again to stop
+        btnScanGallery.setOnClickListener(v -> handleGalleryScan());
+
         // Check permissions
         if (allPermissionsGranted()) {
             reloadModel();
-            startCamera();
+            cameraPipeline.start();
         } else {
             ActivityCompat.requestPermissions(this, REQUIRED_PERMISSIONS, REQUEST_PERMISSION);
         }
@@ -140,23 +179,168 @@ public class DetectActivity extends AppCompatActivity {
         if (requestCode == REQUEST_PERMISSION) {
             if (allPermissionsGranted()) {
                 reloadModel();
-                startCamera();
+                cameraPipeline.start();
             } else {
                 Toast.makeText(this, "Camera permission is required", Toast.LENGTH_LONG).show();
                 finish();
             }
+        } else if (requestCode == REQUEST_GALLERY_PERMISSION) {
+            if (galleryPermissionGranted()) {
+                startGalleryScan();
+            } else {
+                Toast.makeText(this, "Photo access is required to scan the gallery", Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        detectionSession.close();
+        if (galleryScan != null) {
+            // the index is saved on completion, the next scan resumes from it
+            galleryScan.cancel();
+            galleryScan = null;
+        }
+    }
+
+    /**
+     * READ_MEDIA_IMAGES from API 33, READ_EXTERNAL_STORAGE before
+     */
+    private static String galleryPermission() {
+        return Build.VERSION.SDK_INT >= 33
+                ? Manifest.permission.READ_MEDIA_IMAGES
+                : Manifest.permission.READ_EXTERNAL_STORAGE;
+    }
+
+    private boolean galleryPermissionGranted() {
+        return ContextCompat.checkSelfPermission(this, galleryPermission()) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Handle Scan Gallery button click: start a scan, or stop the running one
+     */
+    private void handleGalleryScan() {
+        if (galleryScanning) {
+            if (galleryScan != null) {
+                galleryScan.cancel();
+            }
+            btnScanGallery.setEnabled(false);
+            btnScanGallery.setText("Stopping...");
+            return;
+        }
+
+        if (galleryPermissionGranted()) {
+            startGalleryScan();
+        } else {
+            ActivityCompat.requestPermissions(this, new String[]{galleryPermission()}, REQUEST_GALLERY_PERMISSION);
+        }
+    }
+
+    /**
+     * Enumerate the gallery off the main thread and detect new or changed images.
+     * The native detector is locked, the scan can run next to live detection.
+     */
+    private void startGalleryScan() {
+        galleryScanning = true;
+        btnScanGallery.setText("Scanning...");
+
+        GalleryScanner scanner = new GalleryScanner(getApplicationContext(), yolo26Ncnn,
+                YoloAutotuner.modelKey(currentModel, null));
+        GalleryScanner.Listener listener = new GalleryScanner.Listener() {
+            @Override
+            public void onProgress(int scanned, int total) {
+                runOnUiThread(() -> {
+                    if (galleryScanning && btnScanGallery.isEnabled()) {
+                        btnScanGallery.setText("Stop " + scanned + "/" + total);
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(YoloBatch.Stats stats, int indexedImages) {
+                // the index is only touched on the scan's threads, read it here
+                String summary = gallerySummary(scanner.getIndex(), stats, indexedImages);
+                runOnUiThread(() -> showGalleryResults(summary));
+            }
+        };
+
+        new Thread(() -> {
+            try {
+                YoloBatch.Handle handle = scanner.scan(listener);
+                runOnUiThread(() -> {
+                    if (handle != null && galleryScanning) {
+                        galleryScan = handle;
+                        // stop tapped before the scan had started
+                        if (!btnScanGallery.isEnabled()) {
+                            handle.cancel();
+                        }
+                    }
+                });
+            } catch (SecurityException e) {
+                Log.e(TAG, "Gallery scan not permitted", e);
+                runOnUiThread(() -> showGalleryResults("Photo access was revoked"));
+            }
+        }, "GalleryScan").start();
+    }
+
+    private static String gallerySummary(GalleryIndex index, YoloBatch.Stats stats, int indexedImages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(indexedImages).append(" images indexed");
+        if (stats == null) {
+            sb.append(", no new photos");
+        } else {
+            sb.append(String.format(java.util.Locale.US, ", %d scanned in %.1fs%s",
+                    stats.getImages(), stats.getElapsedMs() / 1000f, stats.getCancelled() ? " (stopped)" : ""));
+        }
+        sb.append("\n");
+
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>(index.labelCounts().entrySet());
+        if (counts.isEmpty()) {
+            sb.append("\nNo objects found.");
+            return sb.toString();
+        }
+        counts.sort((a, b) -> b.getValue() - a.getValue());
+        for (int i = 0; i < Math.min(GALLERY_TOP_LABELS, counts.size()); i++) {
+            Map.Entry<String, Integer> e = counts.get(i);
+            sb.append("\n").append(e.getKey()).append(": ").append(e.getValue())
+                    .append(e.getValue() == 1 ? " photo" : " photos");
+        }
+        return sb.toString();
+    }
+
+    private void showGalleryResults(String summary) {
+        galleryScanning = false;
+        galleryScan = null;
+        btnScanGallery.setEnabled(true);
+        btnScanGallery.setText("Scan Gallery");
+        if (isFinishing() || isDestroyed()) {
+            return;
         }
+        new AlertDialog.Builder(this)
+                .setTitle("Gallery")
+                .setMessage(summary)
+                .setPositiveButton("OK", null)
+                .show();
     }
 
     private void reloadModel() {
         // Use CPU only, Seeker GPU performance causes detection boxes to drift
-        boolean ret = yolo26Ncnn.loadModel(getAssets(), currentModel, 0);
+        boolean ret = YoloAutotuner.loadStored(this, yolo26Ncnn, currentModel, null);
         if (!ret) {
             Log.e(TAG, "Failed to load model");
             Toast.makeText(this, "Failed to load model", Toast.LENGTH_SHORT).show();
         } else {
-            Log.d(TAG, "Model loaded: yolo26n on CPU");
+            // read after loading, a stored config that failed to load has been dropped
+            Yolo26Ncnn.RuntimeConfig config = YoloAutotuner.getStoredConfig(this, YoloAutotuner.modelKey(currentModel, null));
+            Log.d(TAG, "Model loaded: yolo26n on CPU, " + (config != null ? config : "default config"));
         }
+
+        // First run on this device, or an unchecked reduced precision: tune or verify
+        // on the analyzer thread once reference frames are collected
+        pendingTune = ret
+                ? YoloAutotuner.pendingWork(this, yolo26Ncnn, currentModel, null)
+                : null;
     }
 
     /**
@@ -237,7 +421,8 @@ public class DetectActivity extends AppCompatActivity {
         }
 
         // Check if we have detection results
-        if (currentObjects == null || currentObjects.length == 0) {
+        Yolo26Ncnn.Obj[] currentObjects = detectionBus.latest().objects;
+        if (currentObjects.length == 0) {
             Toast.makeText(this, "No objects detected. Start detection first.", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -325,242 +510,24 @@ public class DetectActivity extends AppCompatActivity {
         }
     };
 
-    private void startCamera() {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture =
-                ProcessCameraProvider.getInstance(this);
-
-        cameraProviderFuture.addListener(() -> {
-            try {
-                cameraProvider = cameraProviderFuture.get();
-                bindCameraUseCases();
-            } catch (Exception e) {
-                Log.e(TAG, "Camera initialization failed", e);
-            }
-        }, ContextCompat.getMainExecutor(this));
-    }
-
-    private void bindCameraUseCases() {
-        if (cameraProvider == null) return;
-
-        // Unbind previous use cases
-        cameraProvider.unbindAll();
-
-        // Select camera
-        CameraSelector cameraSelector = new CameraSelector.Builder()
-                .requireLensFacing(isFrontCamera ?
-                        CameraSelector.LENS_FACING_FRONT :
-                        CameraSelector.LENS_FACING_BACK)
-                .build();
-
-        // Preview
-        Preview preview = new Preview.Builder()
-                .setTargetResolution(new Size(640, 480))
-                .build();
-        preview.setSurfaceProvider(previewView.getSurfaceProvider());
-
-        // Image analysis
-        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                .setTargetResolution(new Size(640, 480))
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build();
-
-        imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeImage);
-
-        try {
-            cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
-            runOnUiThread(() -> tvResult.setText("Camera ready. Tap \"Start Detect\" to begin."));
-        } catch (Exception e) {
-            Log.e(TAG, "Use case binding failed", e);
+    private CameraPipeline.Converter createConverter() {
+        CameraPipeline.Converter converter = new YuvBitmapConverter(95);
+        if (!getIntent().getBooleanExtra(EXTRA_RECORD_FRAMES, false)) {
+            return converter;
         }
-    }
-
-    private void analyzeImage(ImageProxy image) {
-        if (!isDetecting) {
-            image.close();
-            return;
-        }
-
-        // Control detection frequency
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastDetectTime < DETECT_INTERVAL) {
-            image.close();
-            return;
-        }
-        lastDetectTime = currentTime;
-
-        try {
-            // Convert ImageProxy to Bitmap
-            Bitmap bitmap = imageProxyToBitmap(image);
-            if (bitmap == null) {
-                image.close();
-                return;
-            }
 
-            // Set preview size
-            int previewWidth = bitmap.getWidth();
-            int previewHeight = bitmap.getHeight();
-
-            // Run detection
-            long startTime = System.currentTimeMillis();
-            Yolo26Ncnn.Obj[] objects = yolo26Ncnn.detect(bitmap);
-            long inferenceTime = System.currentTimeMillis() - startTime;
-
-            // Store current detection results for memo
-            currentObjects = objects;
-
-            // Update UI
-            final int objectCount = objects != null ? objects.length : 0;
-            final long fps = 1000 / Math.max(inferenceTime, 1);
-
-            runOnUiThread(() -> {
-                overlayView.setPreviewSize(previewWidth, previewHeight);
-                overlayView.setResults(objects);
-
-                if (objectCount > 0) {
-                    StringBuilder sb = new StringBuilder();
-                    sb.append(String.format("Detected %d objects | %dms | %d FPS\n", objectCount, inferenceTime, fps));
-                    for (int i = 0; i < Math.min(objectCount, 3); i++) {
-                        if (objects[i].label != null) {
-                            sb.append(String.format("%s: %.1f%% ", objects[i].label, objects[i].prob * 100));
-                        }
-                    }
-                    if (objectCount > 3) {
-                        sb.append("...");
-                    }
-                    tvResult.setText(sb.toString());
-                } else {
-                    tvResult.setText(String.format("No objects detected | %dms | %d FPS", inferenceTime, fps));
-                }
-            });
-
-            bitmap.recycle();
-
-        } catch (Exception e) {
-            Log.e(TAG, "Detection failed", e);
-        } finally {
-            image.close();
-        }
+        java.io.File file = new java.io.File(getExternalFilesDir(null), "frames-" + System.currentTimeMillis() + ".ssfr");
+        Log.d(TAG, "Recording analyzed frames to " + file);
+        return new FrameRecorder(file, RECORD_MAX_FRAMES, converter);
     }
 
     /**
-     * Convert ImageProxy (YUV_420_888) to Bitmap correctly
-     * Key: Handle rowStride and pixelStride properly
+     * Hand analyzed frames to the pending first-run autotune
      */
-    private Bitmap imageProxyToBitmap(ImageProxy image) {
-        try {
-            ImageProxy.PlaneProxy[] planes = image.getPlanes();
-            int width = image.getWidth();
-            int height = image.getHeight();
-
-            // Y plane
-            ByteBuffer yBuffer = planes[0].getBuffer();
-            int yRowStride = planes[0].getRowStride();
-            int yPixelStride = planes[0].getPixelStride();
-
-            // U plane
-            ByteBuffer uBuffer = planes[1].getBuffer();
-            int uvRowStride = planes[1].getRowStride();
-            int uvPixelStride = planes[1].getPixelStride();
-
-            // V plane
-            ByteBuffer vBuffer = planes[2].getBuffer();
-
-            // NV21 format: Y plane + VU interleaved plane
-            // Total size = width * height * 1.5
-            int nv21Size = width * height + (width * height / 2);
-            byte[] nv21 = new byte[nv21Size];
-
-            // Copy Y plane (considering rowStride)
-            int yPos = 0;
-            if (yRowStride == width && yPixelStride == 1) {
-                // Fast path: direct copy
-                yBuffer.get(nv21, 0, width * height);
-                yPos = width * height;
-            } else {
-                // Slow path: copy row by row
-                for (int row = 0; row < height; row++) {
-                    yBuffer.position(row * yRowStride);
-                    for (int col = 0; col < width; col++) {
-                        nv21[yPos++] = yBuffer.get(row * yRowStride + col * yPixelStride);
-                    }
-                }
-                yBuffer.rewind();
-            }
-
-            // Copy VU interleaved plane
-            // NV21 requires V first, U second, interleaved
-            int uvHeight = height / 2;
-            int uvWidth = width / 2;
-            int uvPos = width * height;
-
-            if (uvPixelStride == 2 && uvRowStride == width) {
-                // Fast path: UV already interleaved (common case)
-                // planes[2] (V) is already VUVU... format
-                vBuffer.position(0);
-                int uvSize = Math.min(vBuffer.remaining(), width * height / 2);
-                vBuffer.get(nv21, uvPos, uvSize);
-            } else if (uvPixelStride == 1) {
-                // Slow path: U and V are separate planes, need manual interleave
-                for (int row = 0; row < uvHeight; row++) {
-                    for (int col = 0; col < uvWidth; col++) {
-                        int uvIndex = row * uvRowStride + col * uvPixelStride;
-                        // NV21: V first, U second
-                        nv21[uvPos++] = vBuffer.get(uvIndex);  // V
-                        nv21[uvPos++] = uBuffer.get(uvIndex);  // U
-                    }
-                }
-            } else {
-                // Generic path
-                for (int row = 0; row < uvHeight; row++) {
-                    for (int col = 0; col < uvWidth; col++) {
-                        int uvIndex = row * uvRowStride + col * uvPixelStride;
-                        nv21[uvPos++] = vBuffer.get(uvIndex);  // V
-                        nv21[uvPos++] = uBuffer.get(uvIndex);  // U
-                    }
-                }
-            }
-
-            // Use YuvImage to convert to JPEG, then decode to Bitmap
-            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 95, out);
-            byte[] imageBytes = out.toByteArray();
-
-            Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-
-            // Rotate image
-            Matrix matrix = new Matrix();
-            int rotationDegrees = image.getImageInfo().getRotationDegrees();
-            if (rotationDegrees != 0) {
-                matrix.postRotate(rotationDegrees);
-            }
-
-            // Mirror flip for front camera
-            if (isFrontCamera) {
-                matrix.postScale(-1, 1);
-            }
-
-            if (rotationDegrees != 0 || isFrontCamera) {
-                Bitmap rotatedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-                if (rotatedBitmap != bitmap) {
-                    bitmap.recycle();
-                }
-                return rotatedBitmap;
-            }
-
-            return bitmap;
-
-        } catch (Exception e) {
-            Log.e(TAG, "Image conversion failed", e);
-            return null;
-        }
-    }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (cameraExecutor != null) {
-            cameraExecutor.shutdown();
+    private void offerToAutotune(Bitmap bitmap, Yolo26Ncnn.Obj[] objects) {
+        YoloAutotuner.PendingTune tune = pendingTune;
+        if (tune != null && tune.offer(bitmap, objects)) {
+            pendingTune = null;
         }
     }
 }
@@ -0,0 +1,104 @@
+package com.example.snapshop;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single-writer, multi-reader publication of detection results.
+ *
+ * The analyzer thread publishes one immutable Snapshot per detected frame
+ * through a volatile reference; readers on any thread call latest() without
+ * locks and compare sequence numbers to see whether anything is new.
+ * Subscribers are called on the analyzer thread right after publication,
+ * so they must be cheap (hand off to their own thread or coalesce, like
+ * OverlayView and StatusTextPublisher do).
+ */
+public class DetectionBus {
+
+    public interface Listener {
+        void onDetections(Snapshot snapshot);
+    }
+
+    /**
+     * One detected frame. Treat objects as read-only: the array and its
+     * Obj instances are shared by every reader.
+     */
+    public static final class Snapshot {
+        public final long sequence;
+        public final long frameTimestampNs;
+        public final int imageWidth;
+        public final int imageHeight;
+        public final long inferenceMs;
+        public final Yolo26Ncnn.Obj[] objects;
+        /** Track IDs index-aligned with objects, null when the publisher doesn't track */
+        public final int[] trackIds;
+
+        Snapshot(long sequence, long frameTimestampNs, int imageWidth, int imageHeight, long inferenceMs,
+                 Yolo26Ncnn.Obj[] objects, int[] trackIds) {
+            this.sequence = sequence;
+            this.frameTimestampNs = frameTimestampNs;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.inferenceMs = inferenceMs;
+            this.objects = objects;
+            this.trackIds = trackIds;
+        }
+
+        public boolean isEmpty() {
+            return objects.length == 0;
+        }
+
+        /** First label with prob above minProb (objects are sorted by area, largest first), or null */
+        public String firstLabel(float minProb) {
+            for (Yolo26Ncnn.Obj obj : objects) {
+                if (obj.label != null && obj.prob > minProb) {
+                    return obj.label;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Yolo26Ncnn.Obj[] NO_OBJECTS = new Yolo26Ncnn.Obj[0];
+    private static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, NO_OBJECTS, null);
+
+    private volatile Snapshot latest = EMPTY;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // writer-side only
+    private long sequence = 0;
+
+    /**
+     * Publish a detected frame. Single writer (the analyzer thread);
+     * the caller must not modify objects afterwards.
+     */
+    public Snapshot publish(Yolo26Ncnn.Obj[] objects, int imageWidth, int imageHeight, long frameTimestampNs,
+                            long inferenceMs) {
+        return publish(objects, imageWidth, imageHeight, frameTimestampNs, inferenceMs, null);
+    }
+
+    /** Same, with track IDs index-aligned with objects (or null) */
+    public Snapshot publish(Yolo26Ncnn.Obj[] objects, int imageWidth, int imageHeight, long frameTimestampNs,
+                            long inferenceMs, int[] trackIds) {
+        Snapshot snapshot = new Snapshot(++sequence, frameTimestampNs, imageWidth, imageHeight, inferenceMs,
+                objects != null ? objects : NO_OBJECTS, objects != null ? trackIds : null);
+        latest = snapshot;
+
+        for (Listener listener : listeners) {
+            listener.onDetections(snapshot);
+        }
+        return snapshot;
+    }
+
+    /** Latest snapshot, never null (sequence 0 before the first frame). Any thread. */
+    public Snapshot latest() {
+        return latest;
+    }
+
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+}
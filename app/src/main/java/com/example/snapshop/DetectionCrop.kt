@@ -0,0 +1,90 @@
+package com.example.snapshop
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.graphics.Rect
+
+/**
+ * Product crops out of analyzed frames, for LLM identification
+ */
+object DetectionCrop {
+
+    // Context kept around the box on every side, as a fraction of the box size
+    const val DEFAULT_PADDING = 0.15f
+
+    /**
+     * [obj]'s box grown by [padding] per side, clamped to the bitmap
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun bounds(bitmap: Bitmap, obj: Yolo26Ncnn.Obj, padding: Float = DEFAULT_PADDING): Rect {
+        val padX = obj.w * padding
+        val padY = obj.h * padding
+        val left = (obj.x - padX).toInt().coerceIn(0, bitmap.width - 1)
+        val top = (obj.y - padY).toInt().coerceIn(0, bitmap.height - 1)
+        val right = (obj.x + obj.w + padX).toInt().coerceIn(left + 1, bitmap.width)
+        val bottom = (obj.y + obj.h + padY).toInt().coerceIn(top + 1, bitmap.height)
+        return Rect(left, top, right, bottom)
+    }
+
+    /**
+     * Copy of the padded box region; always a new bitmap, the caller owns it
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun crop(bitmap: Bitmap, obj: Yolo26Ncnn.Obj, padding: Float = DEFAULT_PADDING): Bitmap {
+        val r = bounds(bitmap, obj, padding)
+        val cropped = Bitmap.createBitmap(bitmap, r.left, r.top, r.width(), r.height())
+        // createBitmap returns the source itself for a full-size region of an immutable bitmap
+        return if (cropped === bitmap) bitmap.copy(bitmap.config, false) else cropped
+    }
+
+    /**
+     * Variance of the 4-neighbour Laplacian of luma inside [r], higher is sharper
+     *
+     * Samples on a grid of at most ~[maxSamples] per side, so the cost is bounded
+     * whatever the box size (motion blur spans many pixels, it still shows).
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun sharpness(bitmap: Bitmap, r: Rect, maxSamples: Int = 96): Double {
+        val step = maxOf(1, maxOf(r.width(), r.height()) / maxSamples)
+        val width = r.width()
+        if (width <= 2 * step || r.height() <= 2 * step) return 0.0
+
+        // the sampled row and its neighbours `step` rows above and below
+        val above = IntArray(width)
+        val row = IntArray(width)
+        val below = IntArray(width)
+
+        var sum = 0.0
+        var sumSq = 0.0
+        var n = 0
+        var y = r.top + step
+        while (y < r.bottom - step) {
+            bitmap.getPixels(above, 0, width, r.left, y - step, width, 1)
+            bitmap.getPixels(row, 0, width, r.left, y, width, 1)
+            bitmap.getPixels(below, 0, width, r.left, y + step, width, 1)
+
+            var x = step
+            while (x < width - step) {
+                val lap = 4 * luma(row[x]) - luma(row[x - step]) - luma(row[x + step]) -
+                        luma(above[x]) - luma(below[x])
+                sum += lap
+                sumSq += lap.toDouble() * lap
+                n++
+                x += step
+            }
+            y += step
+        }
+        if (n == 0) return 0.0
+
+        val mean = sum / n
+        return sumSq / n - mean * mean
+    }
+
+    // BT.601 luma, integer
+    private fun luma(c: Int): Int {
+        return (Color.red(c) * 299 + Color.green(c) * 587 + Color.blue(c) * 114) / 1000
+    }
+}
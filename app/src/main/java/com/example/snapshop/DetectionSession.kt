@@ -0,0 +1,138 @@
+package com.example.snapshop
+
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.sample
+import kotlinx.coroutines.launch
+
+/**
+ * Detection results as a Kotlin Flow
+ *
+ * Adapts a DetectionBus (published by the analyzer thread) into
+ * Flow<DetectionFrame> with explicit backpressure:
+ *   frames()          conflated: a slow collector only sees the latest frame
+ *   sampled(periodMs) at most one frame per period
+ *   buffered(n)       keeps the last n frames, oldest dropped
+ *
+ * The analyzer side never suspends or blocks (trySend into a bounded
+ * channel), so a slow consumer cannot stall the camera executor.
+ * Track IDs are assigned once per published frame by a BoxTracker (or
+ * taken from the snapshot when the CameraPipeline already tracks), so
+ * every collector sees the same IDs whatever it drops.
+ *
+ * The CameraPipeline publishes into the bus, so its frames reach the flows
+ * without further wiring; collectIn / collectFrames run the UI side under
+ * repeatOnLifecycle, cancelled with the activity.
+ */
+class DetectionSession(private val bus: DetectionBus) {
+
+    data class Box(
+        val trackId: Int,
+        val label: String?,
+        val prob: Float,
+        val x: Float,
+        val y: Float,
+        val w: Float,
+        val h: Float
+    )
+
+    data class DetectionFrame(
+        val sequence: Long,
+        val frameTimestampNs: Long,
+        val imageWidth: Int,
+        val imageHeight: Int,
+        val inferenceMs: Long,
+        val boxes: List<Box>
+    )
+
+    /**
+     * Frame consumer for Java callers of [collectFrames]
+     */
+    fun interface FrameCollector {
+        fun onFrame(frame: DetectionFrame)
+    }
+
+    private val tracker = BoxTracker()
+
+    @Volatile
+    private var latestFrame: DetectionFrame? = null
+
+    // Runs on the analyzer thread for every published snapshot
+    private val trackingListener = DetectionBus.Listener { snapshot ->
+        val ids = snapshot.trackIds ?: tracker.update(snapshot.objects)
+        val boxes = snapshot.objects.mapIndexed { i, obj ->
+            Box(ids[i], obj.label, obj.prob, obj.x, obj.y, obj.w, obj.h)
+        }
+        latestFrame = DetectionFrame(
+            snapshot.sequence, snapshot.frameTimestampNs, snapshot.imageWidth, snapshot.imageHeight,
+            snapshot.inferenceMs, boxes
+        )
+    }
+
+    init {
+        bus.subscribe(trackingListener)
+    }
+
+    /**
+     * Stop tracking, collectors of the flows complete when their scope does
+     */
+    fun close() {
+        bus.unsubscribe(trackingListener)
+        tracker.reset()
+    }
+
+    /**
+     * Every tracked frame, with the given capacity and overflow policy
+     */
+    private fun raw(capacity: Int, overflow: BufferOverflow): Flow<DetectionFrame> = callbackFlow {
+        // Subscribed after the tracker, so latestFrame is already this snapshot's frame
+        val listener = DetectionBus.Listener { snapshot ->
+            latestFrame?.takeIf { it.sequence == snapshot.sequence }?.let { trySend(it) }
+        }
+        bus.subscribe(listener)
+        awaitClose { bus.unsubscribe(listener) }
+    }.buffer(capacity, overflow)
+
+    /** Latest frame only: a slow collector skips intermediate frames */
+    fun frames(): Flow<DetectionFrame> = raw(1, BufferOverflow.DROP_OLDEST).conflate()
+
+    /** At most one frame per [periodMs] */
+    @OptIn(FlowPreview::class)
+    fun sampled(periodMs: Long): Flow<DetectionFrame> = frames().sample(periodMs)
+
+    /** The last [capacity] frames, oldest dropped when the collector falls behind */
+    fun buffered(capacity: Int): Flow<DetectionFrame> = raw(capacity, BufferOverflow.DROP_OLDEST)
+
+    /**
+     * Collect [flow] while [owner] is at least [minState], cancelled with the lifecycle
+     */
+    fun collectIn(
+        owner: LifecycleOwner,
+        flow: Flow<DetectionFrame> = frames(),
+        minState: Lifecycle.State = Lifecycle.State.STARTED,
+        block: suspend (DetectionFrame) -> Unit
+    ): Job {
+        return owner.lifecycleScope.launch {
+            owner.repeatOnLifecycle(minState) {
+                flow.collect { block(it) }
+            }
+        }
+    }
+
+    /**
+     * [collectIn] for Java: [collector] runs on the main thread while [owner] is STARTED
+     */
+    fun collectFrames(owner: LifecycleOwner, flow: Flow<DetectionFrame>, collector: FrameCollector): Job {
+        return collectIn(owner, flow) { collector.onFrame(it) }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.snapshop;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * CameraPipeline convert stage that records every analyzed frame before
+ * handing it to the wrapped converter.
+ *
+ * Frames are stored as CameraX delivered them: YUV_420_888 planes with
+ * their strides, rotation, mirror flag and sensor timestamp. The file is
+ * replayed off-device by jni/tools/yolo_replay (same NV21 packing as
+ * YuvBitmapConverter), so detector changes can be compared on identical
+ * input. Format, little-endian:
+ *
+ *   "SSFR" int32 version
+ *   per frame: int64 timestampNs, int32 width, height, rotation, flags,
+ *              3 x (int32 rowStride, pixelStride, length, bytes)
+ *
+ * Recording stops after maxFrames; the file is closed when the pipeline
+ * is destroyed.
+ */
+public class FrameRecorder implements CameraPipeline.Converter, Closeable {
+
+    private static final String TAG = "FrameRecorder";
+
+    private static final byte[] MAGIC = {'S', 'S', 'F', 'R'};
+    private static final int VERSION = 1;
+    private static final int FLAG_MIRROR = 1;
+
+    private final CameraPipeline.Converter converter;
+    private final File file;
+    private final int maxFrames;
+
+    // analyzer thread only
+    private OutputStream out;
+    private final ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+    private byte[] planeBytes = new byte[0];
+    private int frames = 0;
+
+    public FrameRecorder(File file, int maxFrames, CameraPipeline.Converter converter) {
+        this.file = file;
+        this.maxFrames = maxFrames;
+        this.converter = converter;
+    }
+
+    @Override
+    public Bitmap convert(ImageProxy image, boolean mirror) {
+        if (frames < maxFrames) {
+            try {
+                write(image, mirror);
+                if (++frames == maxFrames) {
+                    Log.d(TAG, "Recorded " + frames + " frames to " + file);
+                    close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Recording failed, stopping", e);
+                frames = maxFrames;
+                close();
+            }
+        }
+        return converter.convert(image, mirror);
+    }
+
+    private void write(ImageProxy image, boolean mirror) throws IOException {
+        if (out == null) {
+            out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+            header.clear();
+            header.put(MAGIC).putInt(VERSION);
+            out.write(header.array(), 0, header.position());
+        }
+
+        header.clear();
+        header.putLong(image.getImageInfo().getTimestamp())
+                .putInt(image.getWidth())
+                .putInt(image.getHeight())
+                .putInt(image.getImageInfo().getRotationDegrees())
+                .putInt(mirror ? FLAG_MIRROR : 0);
+        out.write(header.array(), 0, header.position());
+
+        for (ImageProxy.PlaneProxy plane : image.getPlanes()) {
+            // duplicate: the converter reads the same buffer afterwards
+            ByteBuffer buffer = plane.getBuffer().duplicate();
+            buffer.rewind();
+            int length = buffer.remaining();
+
+            header.clear();
+            header.putInt(plane.getRowStride()).putInt(plane.getPixelStride()).putInt(length);
+            out.write(header.array(), 0, header.position());
+
+            if (planeBytes.length < length) {
+                planeBytes = new byte[length];
+            }
+            buffer.get(planeBytes, 0, length);
+            out.write(planeBytes, 0, length);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close " + file, e);
+        }
+        out = null;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.snapshop
+
+import android.util.Log
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * On-disk detection index for the gallery scanner
+ *
+ * One entry per MediaStore image, keyed by media ID and checked against the
+ * image's modification time, so a rescan only runs inference on new or
+ * changed images. Boxes are stored normalized to the image size.
+ *
+ * File layout (big-endian, DataOutputStream):
+ *   int magic, int version, UTF model key
+ *   int label count, UTF label × count
+ *   int entry count, then per entry:
+ *     long media id, long date modified, short box count,
+ *     box × count: short label index, byte prob (0..255), 4 × ushort x0 y0 x1 y1 (0..65535)
+ *
+ * ~11 bytes per box. Not thread-safe: the scanner only touches it from the detect thread.
+ */
+class GalleryIndex(private val file: File, private val modelKey: String) {
+
+    companion object {
+        private const val TAG = "GalleryIndex"
+        private const val MAGIC = 0x53534749 // "SSGI"
+        private const val VERSION = 1
+        private const val COORD_SCALE = 65535f
+    }
+
+    data class Detection(
+        val label: String,
+        val prob: Float,
+        // normalized 0..1
+        val x: Float,
+        val y: Float,
+        val w: Float,
+        val h: Float
+    )
+
+    data class Entry(
+        val mediaId: Long,
+        val dateModified: Long,
+        val detections: List<Detection>
+    )
+
+    private val entries = LinkedHashMap<Long, Entry>()
+
+    val size: Int get() = entries.size
+
+    /**
+     * Read the index file. A missing, corrupt or other-model index starts empty.
+     */
+    fun load() {
+        entries.clear()
+        if (!file.exists()) return
+
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) return
+                if (input.readUTF() != modelKey) {
+                    Log.d(TAG, "Model changed, index discarded")
+                    return
+                }
+
+                val labels = Array(input.readInt()) { input.readUTF() }
+                repeat(input.readInt()) {
+                    val mediaId = input.readLong()
+                    val dateModified = input.readLong()
+                    val detections = List(input.readShort().toInt()) {
+                        val label = labels[input.readShort().toInt()]
+                        val prob = input.readUnsignedByte() / 255f
+                        val x0 = input.readUnsignedShort() / COORD_SCALE
+                        val y0 = input.readUnsignedShort() / COORD_SCALE
+                        val x1 = input.readUnsignedShort() / COORD_SCALE
+                        val y1 = input.readUnsignedShort() / COORD_SCALE
+                        Detection(label, prob, x0, y0, x1 - x0, y1 - y0)
+                    }
+                    entries[mediaId] = Entry(mediaId, dateModified, detections)
+                }
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Corrupt index, starting over", e)
+            entries.clear()
+        }
+    }
+
+    /**
+     * Write to a temp file and rename, a crash mid-write keeps the previous index
+     */
+    fun save() {
+        val labels = LinkedHashMap<String, Int>()
+        for (entry in entries.values) {
+            for (d in entry.detections) labels.getOrPut(d.label) { labels.size }
+        }
+
+        val tmp = File(file.path + ".tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeUTF(modelKey)
+
+                out.writeInt(labels.size)
+                for (label in labels.keys) out.writeUTF(label)
+
+                out.writeInt(entries.size)
+                for (entry in entries.values) {
+                    out.writeLong(entry.mediaId)
+                    out.writeLong(entry.dateModified)
+                    out.writeShort(entry.detections.size)
+                    for (d in entry.detections) {
+                        out.writeShort(labels.getValue(d.label))
+                        out.writeByte((d.prob.coerceIn(0f, 1f) * 255f).toInt())
+                        out.writeShort(quantize(d.x))
+                        out.writeShort(quantize(d.y))
+                        out.writeShort(quantize(d.x + d.w))
+                        out.writeShort(quantize(d.y + d.h))
+                    }
+                }
+            }
+            if (!tmp.renameTo(file)) throw IOException("rename failed")
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to save index", e)
+            tmp.delete()
+        }
+    }
+
+    /** True if the image has to be (re)scanned */
+    fun isStale(mediaId: Long, dateModified: Long): Boolean {
+        return entries[mediaId]?.dateModified != dateModified
+    }
+
+    fun put(entry: Entry) {
+        entries[entry.mediaId] = entry
+    }
+
+    /** Drop entries of images that no longer exist */
+    fun retainAll(mediaIds: Set<Long>) {
+        entries.keys.retainAll(mediaIds)
+    }
+
+    fun get(mediaId: Long): Entry? = entries[mediaId]
+
+    /** Images with at least one [label] box at ≥ [minProb], best match first */
+    fun find(label: String, minProb: Float = 0.5f): List<Entry> {
+        return entries.values
+            .filter { e -> e.detections.any { it.label == label && it.prob >= minProb } }
+            .sortedByDescending { e -> e.detections.filter { it.label == label }.maxOf { it.prob } }
+    }
+
+    /** Label → number of images it appears in */
+    fun labelCounts(): Map<String, Int> {
+        val counts = HashMap<String, Int>()
+        for (entry in entries.values) {
+            for (label in entry.detections.map { it.label }.toSet()) {
+                counts[label] = (counts[label] ?: 0) + 1
+            }
+        }
+        return counts
+    }
+
+    private fun quantize(v: Float): Int = (v.coerceIn(0f, 1f) * COORD_SCALE + 0.5f).toInt()
+}
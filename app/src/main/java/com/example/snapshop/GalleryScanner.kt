@@ -0,0 +1,130 @@
+package com.example.snapshop
+
+import android.content.ContentUris
+import android.content.Context
+import android.provider.MediaStore
+import android.util.Log
+import java.io.File
+
+/**
+ * Incremental "find products in my photos" scan over the MediaStore gallery
+ *
+ * Enumerates images, skips those whose (media ID, modification time) is
+ * already in the GalleryIndex, and runs YoloBatch on the rest, decoding
+ * with subsampling at the detector input size. Deleted images are dropped
+ * from the index. The index is saved every [SAVE_EVERY] images and at the
+ * end, so a cancelled or killed scan resumes where it stopped.
+ *
+ * Needs READ_MEDIA_IMAGES (API 33+) or READ_EXTERNAL_STORAGE, granted by the caller.
+ */
+class GalleryScanner(private val context: Context, private val yolo: Yolo26Ncnn, modelKey: String) {
+
+    companion object {
+        private const val TAG = "GalleryScanner"
+        private const val INDEX_FILE = "gallery_index.bin"
+
+        // Decode size: the detector letterboxes to 640, more pixels only cost decode time
+        private const val DECODE_SIZE = 640
+
+        private const val SAVE_EVERY = 50
+    }
+
+    interface Listener {
+        /** Called on the detect thread after every image */
+        fun onProgress(scanned: Int, total: Int)
+
+        /** Called on the detect thread; stats is null when nothing needed scanning */
+        fun onComplete(stats: YoloBatch.Stats?, indexedImages: Int)
+    }
+
+    private class MediaImage(val id: Long, val dateModified: Long, val orientation: Int)
+
+    val index = GalleryIndex(File(context.filesDir, INDEX_FILE), modelKey)
+
+    /**
+     * Enumerate the gallery and scan new or changed images.
+     * Queries MediaStore synchronously: call off the main thread.
+     * Returns null when the index is already up to date.
+     */
+    fun scan(listener: Listener): YoloBatch.Handle? {
+        val startTime = System.currentTimeMillis()
+        index.load()
+
+        val images = queryImages()
+        index.retainAll(images.mapTo(HashSet()) { it.id })
+
+        val stale = images.filter { index.isStale(it.id, it.dateModified) }
+        Log.d(TAG, "${images.size} images, ${stale.size} new or changed " +
+                "(enumerated in ${System.currentTimeMillis() - startTime}ms)")
+
+        if (stale.isEmpty()) {
+            index.save()
+            listener.onComplete(null, index.size)
+            return null
+        }
+
+        val resolver = context.contentResolver
+        val sources = stale.map {
+            val uri = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, it.id)
+            YoloBatch.UriSource(resolver, uri, it.orientation)
+        }
+
+        return YoloBatch.start(yolo, sources, object : YoloBatch.Callback {
+            private var scanned = 0
+
+            override fun onResult(index: Int, source: YoloBatch.Source, objects: Array<Yolo26Ncnn.Obj>, width: Int, height: Int) {
+                val image = stale[index]
+                val detections = objects.filter { it.label != null }.map {
+                    GalleryIndex.Detection(it.label, it.prob, it.x / width, it.y / height, it.w / width, it.h / height)
+                }
+                this@GalleryScanner.index.put(GalleryIndex.Entry(image.id, image.dateModified, detections))
+                progress()
+            }
+
+            override fun onError(index: Int, source: YoloBatch.Source, error: Exception) {
+                // Unreadable images are indexed empty so they are not retried every scan
+                val image = stale[index]
+                Log.w(TAG, "Skipping ${source.id}: ${error.message}")
+                this@GalleryScanner.index.put(GalleryIndex.Entry(image.id, image.dateModified, emptyList()))
+                progress()
+            }
+
+            override fun onComplete(stats: YoloBatch.Stats) {
+                this@GalleryScanner.index.save()
+                Log.d(TAG, "Scan done: $stats, ${this@GalleryScanner.index.size} images indexed")
+                listener.onComplete(stats, this@GalleryScanner.index.size)
+            }
+
+            private fun progress() {
+                scanned++
+                if (scanned % SAVE_EVERY == 0) this@GalleryScanner.index.save()
+                listener.onProgress(scanned, stale.size)
+            }
+        }, YoloBatch.defaultDecodeThreads(), DECODE_SIZE)
+    }
+
+    private fun queryImages(): List<MediaImage> {
+        val images = ArrayList<MediaImage>()
+        val projection = arrayOf(
+            MediaStore.Images.Media._ID,
+            MediaStore.Images.Media.DATE_MODIFIED,
+            MediaStore.Images.Media.ORIENTATION
+        )
+
+        context.contentResolver.query(
+            MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+            projection,
+            null,
+            null,
+            "${MediaStore.Images.Media.DATE_MODIFIED} DESC"
+        )?.use { cursor ->
+            val idCol = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID)
+            val modifiedCol = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED)
+            val orientationCol = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.ORIENTATION)
+            while (cursor.moveToNext()) {
+                images.add(MediaImage(cursor.getLong(idCol), cursor.getLong(modifiedCol), cursor.getInt(orientationCol)))
+            }
+        }
+        return images
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.snapshop
+
+import android.util.Log
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.ConnectionPool
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+/**
+ * App-scoped HTTP stack shared by OpenRouter, Vision and Solana RPC calls
+ *
+ * One OkHttpClient, so every call shares:
+ *   - the connection pool: keep-alive connections are reused across requests
+ *   - HTTP/2: concurrent requests to one host multiplex over one connection
+ *     (tier 1 and tier 2 LLM calls, RPC bursts)
+ *   - the TLS session cache: a new connection to a known host resumes the
+ *     session instead of a full handshake
+ *
+ * preconnect() opens connections ahead of the first real request, so it
+ * doesn't pay DNS + TCP + TLS (hundreds of ms on mobile networks).
+ *
+ * Ktor's Android engine sits on HttpURLConnection (HTTP/1.1 only), so the
+ * stack is OkHttp directly; blocking calls are meant for background threads.
+ */
+object HttpStack {
+
+    private const val TAG = "HttpStack"
+
+    @JvmField
+    val JSON = "application/json".toMediaType()
+
+    // Idle connections stay warm for 5 minutes, long enough to span a shopping session
+    val client: OkHttpClient = OkHttpClient.Builder()
+        .connectionPool(ConnectionPool(5, 5, TimeUnit.MINUTES))
+        .protocols(listOf(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .connectTimeout(15, TimeUnit.SECONDS)
+        .readTimeout(30, TimeUnit.SECONDS)
+        .writeTimeout(30, TimeUnit.SECONDS)
+        .retryOnConnectionFailure(true)
+        .build()
+
+    class Response(val code: Int, val body: String) {
+        val isSuccessful: Boolean get() = code in 200..299
+    }
+
+    /**
+     * POST a JSON body, blocking. [timeoutMs] bounds the whole call (connect, write, read).
+     *
+     * @throws IOException on network failure or timeout; HTTP errors are returned, not thrown
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun postJson(url: String, json: String, headers: Map<String, String> = emptyMap(), timeoutMs: Long = 30000): Response {
+        val builder = Request.Builder()
+            .url(url)
+            .post(json.toRequestBody(JSON))
+        for ((name, value) in headers) {
+            builder.header(name, value)
+        }
+
+        val call = client.newCall(builder.build())
+        call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS)
+
+        call.execute().use { response ->
+            return Response(response.code, response.body?.string() ?: "")
+        }
+    }
+
+    /**
+     * Warm DNS, TCP and TLS for the origins of [urls] in the background
+     *
+     * A HEAD request per origin; whatever it answers, the connection stays
+     * in the pool for the next real request. With a pooled connection already
+     * there it's one cheap round trip over it.
+     */
+    @JvmStatic
+    fun preconnect(vararg urls: String) {
+        for (url in urls) {
+            val request = try {
+                val origin = Request.Builder().url(url).build().url
+                Request.Builder()
+                    .url(origin.newBuilder().encodedPath("/").query(null).build())
+                    .head()
+                    .build()
+            } catch (e: IllegalArgumentException) {
+                Log.w(TAG, "preconnect: bad url $url")
+                continue
+            }
+
+            client.newCall(request).enqueue(object : Callback {
+                override fun onResponse(call: Call, response: okhttp3.Response) {
+                    response.close()
+                    Log.d(TAG, "preconnected ${request.url.host} (${response.protocol})")
+                }
+
+                override fun onFailure(call: Call, e: IOException) {
+                    Log.w(TAG, "preconnect ${request.url.host} failed: ${e.message}")
+                }
+            })
+        }
+    }
+}
@@ -4,15 +4,76 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.RectF;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Detection box overlay.
+ *
+ * Boxes are packed floats (x, y, w, h, prob per box, image pixels) in a
+ * double buffer: setResults fills the back buffer and swaps it with the
+ * front one under the view's monitor. Writers (setResults from the analyzer,
+ * clearResults from the UI thread) are serialized on writeLock, so no one
+ * swaps a back buffer another writer is still filling, and drawing never
+ * waits for a fill. No per-frame allocation once the
+ * buffers have grown to the largest box count seen. The image-to-view
+ * transform is cached until the image or view size changes, and only the
+ * union of the old and new boxes is invalidated.
+ *
+ * Detections arrive every 100-150 ms, so boxes are animated on
+ * Choreographer frame callbacks: each new box is matched by IoU to a box
+ * on screen and moves from there to its new position over the time
+ * between the two camera frames the results came from (not their arrival
+ * time). Unmatched boxes appear and disappear immediately.
+ */
 public class OverlayView extends View {
 
-    private final List<DetectionResult> results = new ArrayList<>();
+    // floats per box in the packed arrays
+    public static final int BOX_STRIDE = 5;
+
+    // a new box continues an on-screen box above this IoU
+    private static final float MATCH_IOU = 0.3f;
+
+    // frame gaps longer than this (dropped frames, pauses) snap instead of gliding
+    private static final long MAX_INTERPOLATION_NS = 250_000_000L;
+
+    // used when the caller has no frame timestamps
+    private static final long DEFAULT_INTERPOLATION_NS = 100_000_000L;
+
+    // held from backBuffer() to swap(): the back buffer belongs to one writer at a time
+    private final Object writeLock = new Object();
+
+    // latest results (target of the animation), double buffered
+    private float[] frontBoxes = new float[BOX_STRIDE * 16];
+    private float[] backBoxes = new float[BOX_STRIDE * 16];
+    private int frontCount = 0;
+    private long frontTimestampNs = 0;
+    private long lastTimestampNs = 0;
+    private boolean targetChanged = false;
+
+    // animation state, touched on the UI thread under the monitor
+    private float[] fromBoxes = new float[BOX_STRIDE * 16];
+    private float[] shownBoxes = new float[BOX_STRIDE * 16];
+    private boolean[] shownMatched = new boolean[16];
+    private int shownCount = 0;
+    private long animStartNs = 0;
+    private long animDurationNs = 0;
+    private boolean animating = false;
+    private boolean frameScheduled = false;
+
+    // view-space bounds of the boxes currently on screen, empty if none
+    private final RectF drawnBounds = new RectF();
+    private final RectF dirtyBounds = new RectF();
+    private final RectF boxRect = new RectF();
+
+    // cached image → view transform
+    private boolean transformValid = false;
+    private float scale = 1f;
+    private float offsetX = 0f;
+    private float offsetY = 0f;
+
     private final Paint boxPaint = new Paint();
     private final Paint textPaint = new Paint();
     private final Paint bgPaint = new Paint();
@@ -62,39 +123,244 @@ public class OverlayView extends View {
     }
 
     public void setPreviewSize(int width, int height) {
-        this.imageWidth = width;
-        this.imageHeight = height;
+        synchronized (this) {
+            if (width == imageWidth && height == imageHeight) return;
+            this.imageWidth = width;
+            this.imageHeight = height;
+            transformValid = false;
+        }
+        postInvalidate();
     }
 
     public void setFrontCamera(boolean isFront) {
-        this.isFrontCamera = isFront;
+        synchronized (this) {
+            if (isFront == isFrontCamera) return;
+            this.isFrontCamera = isFront;
+        }
+        postInvalidate();
     }
 
     public void setResults(Yolo26Ncnn.Obj[] objects) {
-        results.clear();
-        if (objects != null) {
-            for (Yolo26Ncnn.Obj obj : objects) {
-                results.add(new DetectionResult(
-                        obj.x, obj.y, obj.w, obj.h,
-                        obj.label != null ? obj.label : "unknown",
-                        obj.prob
-                ));
+        setResults(objects, 0);
+    }
+
+    /**
+     * frameTimestampNs: timestamp of the camera frame the results belong to
+     * (ImageProxy.getImageInfo().getTimestamp()), 0 if unknown. Any thread.
+     */
+    public void setResults(Yolo26Ncnn.Obj[] objects, long frameTimestampNs) {
+        int count = objects != null ? objects.length : 0;
+        synchronized (writeLock) {
+            float[] boxes = backBuffer(count);
+            for (int i = 0; i < count; i++) {
+                Yolo26Ncnn.Obj obj = objects[i];
+                int o = i * BOX_STRIDE;
+                boxes[o] = obj.x;
+                boxes[o + 1] = obj.y;
+                boxes[o + 2] = obj.w;
+                boxes[o + 3] = obj.h;
+                boxes[o + 4] = obj.prob;
             }
+            swap(count, frameTimestampNs);
+        }
+    }
+
+    public void setResults(float[] boxes, int count) {
+        setResults(boxes, count, 0);
+    }
+
+    /**
+     * Packed results: [x, y, w, h, prob] per box in image pixels, copied
+     * into the back buffer so the caller may reuse boxes. Any thread.
+     */
+    public void setResults(float[] boxes, int count, long frameTimestampNs) {
+        synchronized (writeLock) {
+            float[] back = backBuffer(count);
+            if (count > 0) {
+                System.arraycopy(boxes, 0, back, 0, count * BOX_STRIDE);
+            }
+            swap(count, frameTimestampNs);
         }
-        postInvalidate();
     }
 
+    /**
+     * Remove all boxes. Any thread; waits for a setResults in progress, then wins over it.
+     */
     public void clearResults() {
-        results.clear();
-        postInvalidate();
+        synchronized (writeLock) {
+            swap(0, 0);
+        }
+    }
+
+    // grows (rarely) and returns the back buffer, the caller fills it and calls swap, both under writeLock
+    private synchronized float[] backBuffer(int count) {
+        backBoxes = ensureCapacity(backBoxes, count);
+        return backBoxes;
+    }
+
+    private static float[] ensureCapacity(float[] boxes, int count) {
+        if (boxes.length >= count * BOX_STRIDE) return boxes;
+        return new float[Math.max(count, boxes.length / BOX_STRIDE * 2) * BOX_STRIDE];
+    }
+
+    private void swap(int count, long frameTimestampNs) {
+        synchronized (this) {
+            float[] t = frontBoxes;
+            frontBoxes = backBoxes;
+            backBoxes = t;
+            frontCount = count;
+            frontTimestampNs = frameTimestampNs;
+            targetChanged = true;
+        }
+
+        // Choreographer is per looper, schedule from the UI thread
+        post(scheduleFrame);
+    }
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (OverlayView.this) {
+                if (frameScheduled) return;
+                frameScheduled = true;
+            }
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            boolean again;
+            boolean dirty;
+            int left, top, right, bottom;
+            synchronized (OverlayView.this) {
+                frameScheduled = false;
+
+                if (targetChanged) {
+                    targetChanged = false;
+                    startAnimation(frameTimeNanos);
+                }
+                stepAnimation(frameTimeNanos);
+                again = animating;
+
+                // old boxes must be erased, new ones drawn
+                dirtyBounds.set(drawnBounds);
+                if (transformValid) {
+                    unionBounds(dirtyBounds, shownBoxes, shownCount);
+                } else {
+                    dirtyBounds.set(0, 0, getWidth(), getHeight());
+                }
+
+                dirty = !dirtyBounds.isEmpty();
+                float pad = boxPaint.getStrokeWidth();
+                left = (int) Math.floor(dirtyBounds.left - pad);
+                top = (int) Math.floor(dirtyBounds.top - pad);
+                right = (int) Math.ceil(dirtyBounds.right + pad);
+                bottom = (int) Math.ceil(dirtyBounds.bottom + pad);
+
+                if (again) frameScheduled = true;
+            }
+
+            if (dirty) {
+                invalidate(left, top, right, bottom);
+            }
+            if (again) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    // new target: match each new box to an on-screen box and glide from there
+    private void startAnimation(long frameTimeNanos) {
+        fromBoxes = ensureCapacity(fromBoxes, frontCount);
+        if (shownMatched.length < shownCount) {
+            shownMatched = new boolean[Math.max(shownCount, shownMatched.length * 2)];
+        }
+        for (int j = 0; j < shownCount; j++) shownMatched[j] = false;
+
+        for (int i = 0; i < frontCount; i++) {
+            int o = i * BOX_STRIDE;
+            int best = -1;
+            float bestIou = MATCH_IOU;
+            for (int j = 0; j < shownCount; j++) {
+                if (shownMatched[j]) continue;
+                float iou = iou(frontBoxes, i, shownBoxes, j);
+                if (iou > bestIou) {
+                    bestIou = iou;
+                    best = j;
+                }
+            }
+
+            float[] src = best >= 0 ? shownBoxes : frontBoxes;
+            int so = (best >= 0 ? best : i) * BOX_STRIDE;
+            System.arraycopy(src, so, fromBoxes, o, BOX_STRIDE);
+            if (best >= 0) shownMatched[best] = true;
+        }
+
+        // pace by the camera frame gap, not by when the results arrived
+        long duration = DEFAULT_INTERPOLATION_NS;
+        if (frontTimestampNs > 0 && lastTimestampNs > 0) {
+            duration = frontTimestampNs - lastTimestampNs;
+        }
+        lastTimestampNs = frontTimestampNs;
+
+        animDurationNs = duration > 0 && duration <= MAX_INTERPOLATION_NS ? duration : 0;
+        animStartNs = frameTimeNanos;
+
+        shownBoxes = ensureCapacity(shownBoxes, frontCount);
+        shownCount = frontCount;
+        animating = true;
+    }
+
+    private void stepAnimation(long frameTimeNanos) {
+        if (!animating) return;
+
+        float t = animDurationNs > 0 ? (float) (frameTimeNanos - animStartNs) / animDurationNs : 1f;
+        if (t >= 1f) {
+            t = 1f;
+            animating = false;
+        }
+
+        // ease-out: most of the move lands early, so boxes do not trail the object
+        float k = 1f - (1f - t) * (1f - t);
+        for (int i = 0; i < shownCount * BOX_STRIDE; i++) {
+            shownBoxes[i] = fromBoxes[i] + (frontBoxes[i] - fromBoxes[i]) * k;
+        }
+    }
+
+    private static float iou(float[] a, int i, float[] b, int j) {
+        int ao = i * BOX_STRIDE;
+        int bo = j * BOX_STRIDE;
+        float x0 = Math.max(a[ao], b[bo]);
+        float y0 = Math.max(a[ao + 1], b[bo + 1]);
+        float x1 = Math.min(a[ao] + a[ao + 2], b[bo] + b[bo + 2]);
+        float y1 = Math.min(a[ao + 1] + a[ao + 3], b[bo + 1] + b[bo + 3]);
+        float inter = Math.max(0f, x1 - x0) * Math.max(0f, y1 - y0);
+        float union = a[ao + 2] * a[ao + 3] + b[bo + 2] * b[bo + 3] - inter;
+        return union > 0f ? inter / union : 0f;
     }
 
     @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        synchronized (this) {
+            transformValid = false;
+        }
+    }
 
-        if (imageWidth == 0 || imageHeight == 0) return;
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(scheduleFrame);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        synchronized (this) {
+            frameScheduled = false;
+            animating = false;
+        }
+    }
 
+    private void updateTransform() {
         int viewWidth = getWidth();
         int viewHeight = getHeight();
 
@@ -102,9 +368,8 @@ public class OverlayView extends View {
         float imageAspect = (float) imageWidth / imageHeight;
         float viewAspect = (float) viewWidth / viewHeight;
 
-        float scale;
-        float offsetX = 0;
-        float offsetY = 0;
+        offsetX = 0;
+        offsetY = 0;
 
         if (imageAspect > viewAspect) {
             // Image is wider - fit height, crop width
@@ -116,52 +381,73 @@ public class OverlayView extends View {
             offsetY = (viewHeight - imageHeight * scale) / 2f;
         }
 
-        int colorIndex = 0;
-        for (DetectionResult result : results) {
-            int color = COLORS[colorIndex % COLORS.length];
-            boxPaint.setColor(color);
-            bgPaint.setColor(color);
-            colorIndex++;
-
-            // Transform coordinates from image space to view space
-            float left = result.x * scale + offsetX;
-            float top = result.y * scale + offsetY;
-            float right = (result.x + result.w) * scale + offsetX;
-            float bottom = (result.y + result.h) * scale + offsetY;
-
-            // Front camera mirror
-            if (isFrontCamera) {
-                float temp = left;
-                left = viewWidth - right;
-                right = viewWidth - temp;
-            }
+        transformValid = true;
+    }
+
+    // box i of boxes in view space, clamped to the view
+    private void mapBox(float[] boxes, int i, RectF out) {
+        int viewWidth = getWidth();
+        int viewHeight = getHeight();
+        int o = i * BOX_STRIDE;
 
-            // Clamp to view bounds
-            left = Math.max(0, Math.min(left, viewWidth));
-            top = Math.max(0, Math.min(top, viewHeight));
-            right = Math.max(0, Math.min(right, viewWidth));
-            bottom = Math.max(0, Math.min(bottom, viewHeight));
+        // Transform coordinates from image space to view space
+        float left = boxes[o] * scale + offsetX;
+        float top = boxes[o + 1] * scale + offsetY;
+        float right = (boxes[o] + boxes[o + 2]) * scale + offsetX;
+        float bottom = (boxes[o + 1] + boxes[o + 3]) * scale + offsetY;
 
-            // Draw detection box only — no label text
-            // YOLO COCO labels are too coarse and often wrong for shopping
-            // (e.g. phone → "remote"), so we only show the bounding box as
-            // a visual aid. Product identification is done by LLM.
-            canvas.drawRect(left, top, right, bottom, boxPaint);
+        // Front camera mirror
+        if (isFrontCamera) {
+            float temp = left;
+            left = viewWidth - right;
+            right = viewWidth - temp;
         }
+
+        // Clamp to view bounds
+        out.set(Math.max(0, Math.min(left, viewWidth)),
+                Math.max(0, Math.min(top, viewHeight)),
+                Math.max(0, Math.min(right, viewWidth)),
+                Math.max(0, Math.min(bottom, viewHeight)));
     }
 
-    private static class DetectionResult {
-        float x, y, w, h;
-        String label;
-        float prob;
+    private void unionBounds(RectF bounds, float[] boxes, int count) {
+        for (int i = 0; i < count; i++) {
+            mapBox(boxes, i, boxRect);
+            if (bounds.isEmpty()) {
+                bounds.set(boxRect);
+            } else {
+                bounds.union(boxRect);
+            }
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
 
-        DetectionResult(float x, float y, float w, float h, String label, float prob) {
-            this.x = x;
-            this.y = y;
-            this.w = w;
-            this.h = h;
-            this.label = label;
-            this.prob = prob;
+        synchronized (this) {
+            drawnBounds.setEmpty();
+
+            if (imageWidth == 0 || imageHeight == 0) return;
+            if (!transformValid) updateTransform();
+
+            for (int i = 0; i < shownCount; i++) {
+                int color = COLORS[i % COLORS.length];
+                boxPaint.setColor(color);
+
+                mapBox(shownBoxes, i, boxRect);
+                if (drawnBounds.isEmpty()) {
+                    drawnBounds.set(boxRect);
+                } else {
+                    drawnBounds.union(boxRect);
+                }
+
+                // Draw detection box only — no label text
+                // YOLO COCO labels are too coarse and often wrong for shopping
+                // (e.g. phone → "remote"), so we only show the bounding box as
+                // a visual aid. Product identification is done by LLM.
+                canvas.drawRect(boxRect, boxPaint);
+            }
         }
     }
 }
@@ -0,0 +1,273 @@
+package com.example.snapshop
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Color
+import android.util.Log
+import com.example.snapshop.core.ProductInfo
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Identification cache keyed by a perceptual hash of the uploaded image
+ *
+ * Rescanning the same product gives a slightly different frame every time,
+ * so lookups match by Hamming distance between 64-bit dHashes (difference
+ * of adjacent cells on a 9x8 grayscale grid) instead of exact keys. Hashes are
+ * always taken from the upload JPEG (dHash(jpeg)), whichever encoder made it,
+ * so the native and Bitmap upload paths hit each other's entries. Entries
+ * are kept in LRU order, at most [maxEntries], expire [ttlMs] after they were
+ * stored, and are persisted to [file] after every change (temp file + rename,
+ * like GalleryIndex). One entry per product: storing a result replaces the
+ * entries within maxDistance of its hash.
+ *
+ * File layout (big-endian, DataOutputStream):
+ *   int magic, int version, int entry count, then per entry:
+ *     long dhash, long stored at (epoch ms), UTF brand, model, category,
+ *     int attribute count, UTF attribute × count, UTF searchQuery,
+ *     double confidence, UTF notes, byte tier
+ *
+ * Thread-safe; the file is read on first use, from the identification thread.
+ */
+class ProductCache(
+    private val file: File,
+    private val maxEntries: Int = 200,
+    private val maxDistance: Int = 6,
+    private val ttlMs: Long = TimeUnit.DAYS.toMillis(7)
+) {
+
+    companion object {
+        private const val TAG = "ProductCache"
+        private const val MAGIC = 0x53535043 // "SSPC"
+        private const val VERSION = 2
+
+        private const val GRID_W = 9
+        private const val GRID_H = 8
+
+        // Adjacent cells closer than this (average luma) carry no detail; with fewer than
+        // MIN_DETAIL_PAIRS detailed pairs the image is too flat to hash (all its hashes ≈ 0)
+        private const val FLAT_LUMA = 2
+        private const val MIN_DETAIL_PAIRS = 8
+
+        /**
+         * dHash of an upload JPEG, jpeg[0, length): decoded at half size, plenty
+         * for a 9x8 grid. Null if it does not decode or is too flat to tell apart
+         * from other flat images; such uploads bypass the cache.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun dHash(jpeg: ByteArray, length: Int = jpeg.size): Long? {
+            val options = BitmapFactory.Options().apply { inSampleSize = 2 }
+            val bitmap = BitmapFactory.decodeByteArray(jpeg, 0, length, options) ?: return null
+            try {
+                return dHash(bitmap)
+            } finally {
+                bitmap.recycle()
+            }
+        }
+
+        /**
+         * 64-bit difference hash: average luma over a 9x8 grid, one bit per
+         * horizontally adjacent pair (left brighter than right).
+         * Box-averages every pixel. Null for a flat image.
+         */
+        private fun dHash(bitmap: Bitmap): Long? {
+            val width = bitmap.width
+            val height = bitmap.height
+            val pixels = IntArray(width * height)
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height)
+
+            val sums = LongArray(GRID_W * GRID_H)
+            val counts = IntArray(GRID_W * GRID_H)
+            for (y in 0 until height) {
+                val cellRow = y * GRID_H / height * GRID_W
+                for (x in 0 until width) {
+                    val c = pixels[y * width + x]
+                    // BT.601 luma, integer
+                    val luma = (Color.red(c) * 299 + Color.green(c) * 587 + Color.blue(c) * 114) / 1000
+                    val cell = cellRow + x * GRID_W / width
+                    sums[cell] += luma.toLong()
+                    counts[cell]++
+                }
+            }
+
+            var hash = 0L
+            var bit = 0
+            var detailPairs = 0
+            for (row in 0 until GRID_H) {
+                for (col in 0 until GRID_W - 1) {
+                    val left = row * GRID_W + col
+                    // compare averages without dividing: a/n > b/m ⇔ a*m > b*n
+                    val diff = sums[left] * counts[left + 1] - sums[left + 1] * counts[left]
+                    if (diff > 0) {
+                        hash = hash or (1L shl bit)
+                    }
+                    if (Math.abs(diff) > FLAT_LUMA.toLong() * counts[left] * counts[left + 1]) {
+                        detailPairs++
+                    }
+                    bit++
+                }
+            }
+            return if (detailPairs >= MIN_DETAIL_PAIRS) hash else null
+        }
+    }
+
+    private class Entry(val info: ProductInfo, val storedAt: Long)
+
+    // access-ordered: iteration starts at the least recently used entry
+    private val entries = LinkedHashMap<Long, Entry>(16, 0.75f, true)
+    private var loaded = false
+
+    var hits = 0
+        private set
+    var misses = 0
+        private set
+
+    /**
+     * Closest unexpired result within maxDistance bits of [hash], null if none
+     */
+    @Synchronized
+    fun get(hash: Long): ProductInfo? {
+        ensureLoaded()
+        removeExpired()
+
+        var bestKey = 0L
+        var bestDistance = Int.MAX_VALUE
+        for (key in entries.keys) {
+            val distance = java.lang.Long.bitCount(key xor hash)
+            if (distance < bestDistance) {
+                bestDistance = distance
+                bestKey = key
+            }
+        }
+
+        if (bestDistance > maxDistance) {
+            misses++
+            Log.d(TAG, "Miss (closest ${if (entries.isEmpty()) "-" else bestDistance.toString()} bits) | $hits hits, $misses misses")
+            return null
+        }
+
+        hits++
+        Log.d(TAG, "Hit at $bestDistance bits | $hits hits, $misses misses")
+        return entries[bestKey]?.info // get() moves it to the MRU end
+    }
+
+    /**
+     * Store a result, replacing any within maxDistance bits of [hash] (an explicit
+     * re-identification overwrites the old answer), and persist; evicts the least
+     * recently used entry when full
+     */
+    @Synchronized
+    fun put(hash: Long, productInfo: ProductInfo) {
+        ensureLoaded()
+
+        removeNear(hash)
+        entries[hash] = Entry(productInfo, System.currentTimeMillis())
+        while (entries.size > maxEntries) {
+            val eldest = entries.keys.iterator()
+            eldest.next()
+            eldest.remove()
+        }
+        save()
+    }
+
+    /**
+     * Forget the results within maxDistance bits of [hash] (a retry that came
+     * back without a confident answer: the old one was rejected) and persist
+     */
+    @Synchronized
+    fun remove(hash: Long) {
+        ensureLoaded()
+        if (removeNear(hash)) save()
+    }
+
+    private fun removeNear(hash: Long): Boolean {
+        return entries.keys.removeAll { java.lang.Long.bitCount(it xor hash) <= maxDistance }
+    }
+
+    private fun removeExpired() {
+        val oldest = System.currentTimeMillis() - ttlMs
+        if (entries.values.removeAll { it.storedAt < oldest }) save()
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        load()
+    }
+
+    /**
+     * Read the cache file. A missing, corrupt or older-version file starts empty.
+     */
+    private fun load() {
+        if (!file.exists()) return
+
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) return
+                repeat(input.readInt()) {
+                    val hash = input.readLong()
+                    val storedAt = input.readLong()
+                    val brand = input.readUTF()
+                    val model = input.readUTF()
+                    val category = input.readUTF()
+                    val keyAttributes = List(input.readInt()) { input.readUTF() }
+                    val info = ProductInfo(
+                        brand = brand,
+                        model = model,
+                        category = category,
+                        keyAttributes = keyAttributes,
+                        searchQuery = input.readUTF(),
+                        confidence = input.readDouble(),
+                        notes = input.readUTF(),
+                        tier = input.readByte().toInt()
+                    )
+                    entries[hash] = Entry(info, storedAt)
+                }
+            }
+            Log.d(TAG, "Loaded ${entries.size} cached identifications")
+        } catch (e: Exception) {
+            Log.e(TAG, "Corrupt cache, starting over", e)
+            entries.clear()
+        }
+    }
+
+    /**
+     * Write to a temp file and rename, a crash mid-write keeps the previous cache
+     */
+    private fun save() {
+        val tmp = File(file.path + ".tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeInt(entries.size)
+                for ((hash, entry) in entries) {
+                    val info = entry.info
+                    out.writeLong(hash)
+                    out.writeLong(entry.storedAt)
+                    out.writeUTF(info.brand)
+                    out.writeUTF(info.model)
+                    out.writeUTF(info.category)
+                    out.writeInt(info.keyAttributes.size)
+                    for (attr in info.keyAttributes) out.writeUTF(attr)
+                    out.writeUTF(info.searchQuery)
+                    out.writeDouble(info.confidence)
+                    out.writeUTF(info.notes)
+                    out.writeByte(info.tier)
+                }
+            }
+            if (!tmp.renameTo(file)) throw IOException("rename failed")
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to save cache", e)
+            tmp.delete()
+        }
+    }
+}
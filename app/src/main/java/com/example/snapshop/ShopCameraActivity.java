@@ -4,14 +4,10 @@ import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
-import android.util.Size;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
@@ -22,24 +18,12 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageProxy;
-import androidx.camera.core.Preview;
-import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
 
-import com.google.common.util.concurrent.ListenableFuture;
+import com.example.snapshop.core.ProductInfo;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-// LLM Vision called via LlmVisionHelper.identifyProductBlocking() on background thread
+// LLM Vision called via LlmVisionHelper.identifyJpegBlocking() on background thread
 
 /**
  * ShopCameraActivity - Shopping camera with AI product identification
@@ -56,7 +40,11 @@ import java.util.concurrent.Executors;
  *   Tier 1: gemini-2.5-flash-lite (cheap, fast, ~$0.10/1000 images)
  *   Tier 2: gemini-3-flash-preview (stronger, auto-upgrade if Tier 1 uncertain)
  *
- * Image is resized to ≤384px before sending → 258 tokens → minimal cost.
+ * The upload is cropped to the main YOLO box (full frame without one), then
+ * resized to ≤384px before sending → 258 tokens → minimal cost.
+ *
+ * A product held steady in frame is identified speculatively before the tap
+ * (SpeculativeIdentifier); capturing the same track picks up that result.
  */
 public class ShopCameraActivity extends AppCompatActivity {
 
@@ -75,17 +63,33 @@ public class ShopCameraActivity extends AppCompatActivity {
     private LinearLayout loadingOverlay;
     private TextView tvLoadingStatus;
 
-    private boolean isDetecting = true;
     private boolean isCapturing = false; // Lock to prevent double-tap
-    private ExecutorService cameraExecutor;
-    private ProcessCameraProvider cameraProvider;
 
-    private long lastDetectTime = 0;
+    // Camera, convert, detect and publish; paused while a capture is frozen
+    private CameraPipeline cameraPipeline;
+
+    // First-run autotune or precision check, fed with analyzed frames as precision references
+    private volatile YoloAutotuner.PendingTune pendingTune = null;
+
     private static final long DETECT_INTERVAL = 150; // ms between YOLO frames
 
-    // Track YOLO labels silently for LLM fallback hint
-    private final Set<String> currentLabels = new HashSet<>();
+    // Capture hint, from tracked frames sampled every HINT_SAMPLE_MS
+    private static final long HINT_SAMPLE_MS = 500;
+    private static final String HINT_POINT = "Point camera at any product, then tap capture (long-press to re-identify)";
+    private static final String HINT_IN_VIEW = "Product in view, tap capture (long-press to re-identify)";
+    private DetectionSession detectionSession;
+    private int hintTrackId = 0; // main thread
+    private boolean hintInView = false;
+
+    // Latest detection results: the overlay subscribes, capture reads the YOLO hint (LLM fallback) from it
+    private final DetectionBus detectionBus = new DetectionBus();
     private Bitmap lastCaptureBitmap = null;
+    private Yolo26Ncnn.Obj[] lastCaptureObjects = null; // detections of lastCaptureBitmap, for the upload crop
+    private YuvBitmapConverter.Frame lastCaptureFrame = null; // NV21 of lastCaptureBitmap, for the native upload
+    private final YuvBitmapConverter converter = new YuvBitmapConverter(90);
+
+    // Identifies a steadily framed product before the tap; null without an API key
+    private SpeculativeIdentifier speculator = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -94,6 +98,10 @@ public class ShopCameraActivity extends AppCompatActivity {
 
         previewView = findViewById(R.id.previewView);
         overlayView = findViewById(R.id.overlayView);
+        detectionBus.subscribe(snapshot -> {
+            overlayView.setPreviewSize(snapshot.imageWidth, snapshot.imageHeight);
+            overlayView.setResults(snapshot.objects, snapshot.frameTimestampNs);
+        });
         btnCaptureSearch = findViewById(R.id.btnCaptureSearch);
         btnBack = findViewById(R.id.btnBack);
         tvStatus = findViewById(R.id.tvStatus);
@@ -103,8 +111,36 @@ public class ShopCameraActivity extends AppCompatActivity {
         loadingOverlay = findViewById(R.id.loadingOverlay);
         tvLoadingStatus = findViewById(R.id.tvLoadingStatus);
 
+        // Rescans of an already identified product are answered without an API call
+        LlmVisionHelper.enableCache(getFilesDir());
+
+        String apiKey = BuildConfig.OPENROUTER_API_KEY;
+        if (apiKey != null && !apiKey.isEmpty()) {
+            speculator = new SpeculativeIdentifier();
+        }
+
         previewView.setScaleType(PreviewView.ScaleType.FILL_CENTER);
-        cameraExecutor = Executors.newSingleThreadExecutor();
+
+        // Bounding boxes only, no label chips
+        // (YOLO COCO labels are too coarse for shopping, LLM handles identification)
+        cameraPipeline = new CameraPipeline.Builder(this, previewView)
+                .lensFacing(CameraSelector.LENS_FACING_BACK)
+                .detectInterval(DETECT_INTERVAL)
+                .converter(converter)
+                .detector(yolo26Ncnn::detect)
+                .tracker(new BoxTracker()::update) // track IDs tell speculation a product stays in view
+                .bus(detectionBus)
+                .onBound(() -> {
+                    tvStatus.setText(HINT_POINT);
+                    // Warm the OpenRouter connection while the user frames the product
+                    LlmVisionHelper.preconnect();
+                })
+                .build();
+        cameraPipeline.addFrameListener(this::onFrameDetected);
+
+        // Same track ID in two samples in a row: the product is held in view
+        detectionSession = new DetectionSession(detectionBus);
+        detectionSession.collectFrames(this, detectionSession.sampled(HINT_SAMPLE_MS), this::updateCaptureHint);
 
         // Back button
         btnBack.setOnClickListener(v -> {
@@ -116,13 +152,18 @@ public class ShopCameraActivity extends AppCompatActivity {
             }
         });
 
-        // Capture & Search — always enabled, no YOLO requirement
-        btnCaptureSearch.setOnClickListener(v -> handleCaptureSearch());
+        // Capture & Search — always enabled, no YOLO requirement;
+        // long-press retries a wrong answer without the identification cache
+        btnCaptureSearch.setOnClickListener(v -> handleCaptureSearch(false));
+        btnCaptureSearch.setOnLongClickListener(v -> {
+            handleCaptureSearch(true);
+            return true;
+        });
 
         // Check permissions and start
         if (checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
             reloadModel();
-            startCamera();
+            cameraPipeline.start();
         } else {
             ActivityCompat.requestPermissions(this,
                     new String[]{Manifest.permission.CAMERA}, REQUEST_PERMISSION);
@@ -135,7 +176,7 @@ public class ShopCameraActivity extends AppCompatActivity {
         if (requestCode == REQUEST_PERMISSION && grantResults.length > 0
                 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
             reloadModel();
-            startCamera();
+            cameraPipeline.start();
         } else {
             Toast.makeText(this, "Camera permission required", Toast.LENGTH_LONG).show();
             finish();
@@ -143,117 +184,45 @@ public class ShopCameraActivity extends AppCompatActivity {
     }
 
     private void reloadModel() {
-        boolean ret = yolo26Ncnn.loadModel(getAssets(), 0, 0); // CPU only
+        // CPU only, head pruned to shopping classes (boxes are only a visual aid here)
+        boolean ret = YoloAutotuner.loadStored(this, yolo26Ncnn, 0, Yolo26Ncnn.SHOPPING_CLASSES);
         if (!ret) {
             Log.e(TAG, "Failed to load YOLO model");
             Toast.makeText(this, "Failed to load model", Toast.LENGTH_SHORT).show();
         }
-    }
-
-    private void startCamera() {
-        ListenableFuture<ProcessCameraProvider> future =
-                ProcessCameraProvider.getInstance(this);
-        future.addListener(() -> {
-            try {
-                cameraProvider = future.get();
-                bindCameraUseCases();
-            } catch (Exception e) {
-                Log.e(TAG, "Camera init failed", e);
-            }
-        }, ContextCompat.getMainExecutor(this));
-    }
-
-    private void bindCameraUseCases() {
-        if (cameraProvider == null) return;
-        cameraProvider.unbindAll();
-
-        CameraSelector selector = new CameraSelector.Builder()
-                .requireLensFacing(CameraSelector.LENS_FACING_BACK)
-                .build();
-
-        Preview preview = new Preview.Builder()
-                .setTargetResolution(new Size(640, 480))
-                .build();
-        preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
-        ImageAnalysis analysis = new ImageAnalysis.Builder()
-                .setTargetResolution(new Size(640, 480))
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build();
-        analysis.setAnalyzer(cameraExecutor, this::analyzeImage);
-
-        try {
-            cameraProvider.bindToLifecycle(this, selector, preview, analysis);
-            tvStatus.setText("Point camera at any product, then tap capture");
-        } catch (Exception e) {
-            Log.e(TAG, "Use case binding failed", e);
-        }
+        // First run on this device, or an unchecked reduced precision: tune or verify
+        // on the analyzer thread once reference frames are collected
+        pendingTune = ret
+                ? YoloAutotuner.pendingWork(this, yolo26Ncnn, 0, Yolo26Ncnn.SHOPPING_CLASSES)
+                : null;
     }
 
     // ==================== Layer 1: YOLO Real-time Detection ====================
 
-    private void analyzeImage(ImageProxy image) {
-        if (!isDetecting) {
-            image.close();
-            return;
-        }
-
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastDetectTime < DETECT_INTERVAL) {
-            image.close();
-            return;
-        }
-        lastDetectTime = currentTime;
-
-        try {
-            Bitmap bitmap = imageProxyToBitmap(image);
-            if (bitmap == null) {
-                image.close();
-                return;
-            }
-
-            // Store last bitmap for capture (thread-safe)
-            synchronized (this) {
-                if (lastCaptureBitmap != null) {
-                    lastCaptureBitmap.recycle();
-                }
-                lastCaptureBitmap = bitmap.copy(bitmap.getConfig(), false);
+    /**
+     * Analyzer thread: keep a copy of the latest frame for capture,
+     * feed speculative identification and the pending first-run autotune
+     */
+    private void onFrameDetected(Bitmap bitmap, Yolo26Ncnn.Obj[] objects) {
+        // Store last bitmap for capture (thread-safe)
+        synchronized (this) {
+            if (lastCaptureBitmap != null) {
+                lastCaptureBitmap.recycle();
             }
+            lastCaptureBitmap = bitmap.copy(bitmap.getConfig(), false);
+            lastCaptureObjects = objects;
+            lastCaptureFrame = converter.latestFrame();
+        }
 
-            // Run YOLO detection
-            Yolo26Ncnn.Obj[] objects = yolo26Ncnn.detect(bitmap);
-
-            // Update UI on main thread — bounding boxes only, no label chips
-            // (YOLO COCO labels are too coarse for shopping, LLM handles identification)
-            runOnUiThread(() -> {
-                int previewWidth = bitmap.getWidth();
-                int previewHeight = bitmap.getHeight();
-                overlayView.setPreviewSize(previewWidth, previewHeight);
-                overlayView.setResults(objects);
-                updateYoloHints(objects); // Track labels silently for LLM fallback
-            });
-
-            bitmap.recycle();
-        } catch (Exception e) {
-            Log.e(TAG, "Detection failed", e);
-        } finally {
-            image.close();
+        if (speculator != null) {
+            // published just before the frame listeners: this frame's track IDs
+            speculator.onFrame(bitmap, objects, detectionBus.latest().trackIds);
         }
-    }
 
-    /**
-     * Silently track YOLO labels as a hint for LLM fallback.
-     * No chips or labels shown to user — YOLO COCO 80-class names are too
-     * coarse and error-prone for shopping (e.g. phone → "remote").
-     */
-    private void updateYoloHints(Yolo26Ncnn.Obj[] objects) {
-        currentLabels.clear();
-        if (objects != null) {
-            for (Yolo26Ncnn.Obj obj : objects) {
-                if (obj.label != null && obj.prob > 0.5f) {
-                    currentLabels.add(obj.label);
-                }
-            }
+        YoloAutotuner.PendingTune tune = pendingTune;
+        if (tune != null && tune.offer(bitmap, objects)) {
+            pendingTune = null;
         }
     }
 
@@ -265,25 +234,35 @@ public class ShopCameraActivity extends AppCompatActivity {
      * Works regardless of whether YOLO detected anything:
      * 1. Freeze the camera frame
      * 2. Show loading overlay
-     * 3. Send image to LLM via OpenRouter (tiered cascade)
+     * 3. Send image to LLM via OpenRouter (tiered cascade), cropped to the main
+     *    YOLO box when there is one so the product gets the whole pixel budget
      * 4. Use LLM-generated searchQuery (+ YOLO hint as fallback)
      * 5. Navigate to ProductResultsActivity
+     *
+     * refresh (long-press): the user is retrying a wrong answer, so skip the
+     * cache and the speculative call, and overwrite the cached entry.
      */
-    private void handleCaptureSearch() {
+    private void handleCaptureSearch(boolean refresh) {
         if (isCapturing) return; // Prevent double-tap
 
         // Grab the latest frame
         Bitmap capturedBitmap;
+        Yolo26Ncnn.Obj primary;
+        YuvBitmapConverter.Frame frame;
         synchronized (this) {
             if (lastCaptureBitmap == null) {
                 Toast.makeText(this, "Camera is starting, please wait...", Toast.LENGTH_SHORT).show();
                 return;
             }
             capturedBitmap = lastCaptureBitmap.copy(lastCaptureBitmap.getConfig(), false);
+            // objects are sorted by area: the largest confident box is the product
+            primary = lastCaptureObjects != null && lastCaptureObjects.length > 0
+                    && lastCaptureObjects[0].prob > 0.5f ? lastCaptureObjects[0] : null;
+            frame = lastCaptureFrame;
         }
 
         isCapturing = true;
-        isDetecting = false; // Pause YOLO detection
+        cameraPipeline.setEnabled(false); // Pause YOLO detection
 
         // Step 1: Freeze camera — show captured frame
         ivFrozenFrame.setImageBitmap(capturedBitmap);
@@ -293,12 +272,19 @@ public class ShopCameraActivity extends AppCompatActivity {
 
         // Step 2: Show loading overlay
         loadingOverlay.setVisibility(View.VISIBLE);
-        tvLoadingStatus.setText("Analyzing product...");
+        tvLoadingStatus.setText(refresh ? "Re-identifying product..." : "Analyzing product...");
         btnCaptureSearch.setEnabled(false);
         btnCaptureSearch.setText("Analyzing...");
 
         // Grab YOLO hint (might be empty — that's fine)
-        String yoloHint = currentLabels.isEmpty() ? null : currentLabels.iterator().next();
+        // Labels are tracked silently: YOLO COCO 80-class names are too coarse
+        // and error-prone to show for shopping (e.g. phone → "remote")
+        DetectionBus.Snapshot snapshot = detectionBus.latest();
+        String yoloHint = snapshot.firstLabel(0.5f);
+
+        // Already identifying this product in the background? Take over that call
+        SpeculativeIdentifier.Speculation speculation =
+                speculator != null && !refresh ? speculator.claim(snapshot) : null;
 
         // Step 3: Call LLM Vision via OpenRouter in background
         new Thread(() -> {
@@ -316,10 +302,39 @@ public class ShopCameraActivity extends AppCompatActivity {
                 LlmVisionHelper.ProgressCallback progressCallback = message ->
                         runOnUiThread(() -> tvLoadingStatus.setText(message));
 
+                // Streamed search query, shown while the rest of the answer (or Tier 2) is still coming
+                LlmVisionHelper.PartialResultCallback partialCallback = partial -> {
+                    if (partial.getSearchQuery().isEmpty()) return;
+                    runOnUiThread(() -> {
+                        if (isCapturing) tvLoadingStatus.setText("Looks like: " + partial.getSearchQuery());
+                    });
+                };
+
+                ProductInfo identified = null;
+                if (speculation != null) {
+                    runOnUiThread(() -> tvLoadingStatus.setText("AI analyzing product (fast scan)..."));
+                    identified = speculation.awaitBlocking();
+                }
+
                 // Call LLM (synchronous on this background thread)
                 // Tiered cascade: tries cheap model first, upgrades if uncertain
-                LlmVisionHelper.ProductInfo productInfo =
-                        LlmVisionHelper.identifyProductBlocking(capturedBitmap, progressCallback);
+                if (identified == null) {
+                    // Crop to the product (same padding as speculation, so the cache matches);
+                    // full frame when YOLO saw nothing
+                    byte[] jpeg = encodeUpload(frame, capturedBitmap, primary);
+                    if (jpeg == null) {
+                        Bitmap upload = primary != null ? DetectionCrop.crop(capturedBitmap, primary) : capturedBitmap;
+                        try {
+                            jpeg = LlmVisionHelper.encodeUpload(upload);
+                        } finally {
+                            if (upload != capturedBitmap) upload.recycle();
+                        }
+                    }
+                    LlmVisionHelper.recordUpload(jpeg.length, primary != null);
+                    identified = LlmVisionHelper.identifyJpegBlocking(
+                            jpeg, progressCallback, partialCallback, refresh);
+                }
+                ProductInfo productInfo = identified;
 
                 runOnUiThread(() -> {
                     if (productInfo != null) {
@@ -340,10 +355,38 @@ public class ShopCameraActivity extends AppCompatActivity {
         }).start();
     }
 
+    /**
+     * Background thread: the upload JPEG encoded natively from the frame's NV21
+     * (one crop/scale/rotate/encode pass instead of Bitmap round trips);
+     * null when there is no frame or the encoder failed
+     */
+    private byte[] encodeUpload(YuvBitmapConverter.Frame frame, Bitmap capturedBitmap,
+                                Yolo26Ncnn.Obj primary) {
+        if (frame == null) return null;
+
+        int[] crop = null;
+        if (primary != null) {
+            Rect r = DetectionCrop.bounds(capturedBitmap, primary);
+            crop = new int[]{r.left, r.top, r.right, r.bottom};
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        byte[] jpeg = Yolo26Ncnn.encodeUploadJpeg(frame.nv21, frame.width, frame.height, frame.rotation,
+                frame.mirror, crop, LlmVisionHelper.MAX_IMAGE_SIZE, LlmVisionHelper.JPEG_QUALITY);
+        if (jpeg == null) {
+            Log.w(TAG, "Native upload encode failed, using the bitmap path");
+            return null;
+        }
+        Log.d(TAG, "Upload encoded natively: " + jpeg.length + " bytes"
+                + (crop != null ? ", crop " + (crop[2] - crop[0]) + "x" + (crop[3] - crop[1]) : ", full frame")
+                + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return jpeg;
+    }
+
     /**
      * LLM returned a product identification — build search query and navigate.
      */
-    private void handleLlmSuccess(LlmVisionHelper.ProductInfo productInfo, String yoloHint) {
+    private void handleLlmSuccess(ProductInfo productInfo, String yoloHint) {
         String searchQuery = LlmVisionHelper.buildSearchQuery(productInfo, yoloHint);
 
         if (searchQuery.isEmpty()) {
@@ -401,7 +444,7 @@ public class ShopCameraActivity extends AppCompatActivity {
         resetCaptureUI();
         ivFrozenFrame.setVisibility(View.GONE);
         overlayView.setVisibility(View.VISIBLE);
-        isDetecting = true;
+        cameraPipeline.setEnabled(true);
         isCapturing = false;
     }
 
@@ -414,7 +457,7 @@ public class ShopCameraActivity extends AppCompatActivity {
         overlayView.setVisibility(View.VISIBLE);
         btnCaptureSearch.setEnabled(true);
         btnCaptureSearch.setText("\uD83D\uDCF8  Capture & Identify Product");
-        isDetecting = true;
+        cameraPipeline.setEnabled(true);
         isCapturing = false;
     }
 
@@ -430,98 +473,28 @@ public class ShopCameraActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
-    // ==================== Image Conversion ====================
-
     /**
-     * Convert ImageProxy (YUV_420_888) to Bitmap
+     * Capture hint from a sampled frame: "in view" once the largest box keeps
+     * its track ID across two samples. Main thread.
      */
-    private Bitmap imageProxyToBitmap(ImageProxy image) {
-        try {
-            ImageProxy.PlaneProxy[] planes = image.getPlanes();
-            int width = image.getWidth();
-            int height = image.getHeight();
-
-            ByteBuffer yBuffer = planes[0].getBuffer();
-            int yRowStride = planes[0].getRowStride();
-            int yPixelStride = planes[0].getPixelStride();
-
-            ByteBuffer uBuffer = planes[1].getBuffer();
-            int uvRowStride = planes[1].getRowStride();
-            int uvPixelStride = planes[1].getPixelStride();
-
-            ByteBuffer vBuffer = planes[2].getBuffer();
-
-            int nv21Size = width * height + (width * height / 2);
-            byte[] nv21 = new byte[nv21Size];
-
-            int yPos = 0;
-            if (yRowStride == width && yPixelStride == 1) {
-                yBuffer.get(nv21, 0, width * height);
-                yPos = width * height;
-            } else {
-                for (int row = 0; row < height; row++) {
-                    yBuffer.position(row * yRowStride);
-                    for (int col = 0; col < width; col++) {
-                        nv21[yPos++] = yBuffer.get(row * yRowStride + col * yPixelStride);
-                    }
-                }
-                yBuffer.rewind();
-            }
-
-            int uvHeight = height / 2;
-            int uvWidth = width / 2;
-            int uvPos = width * height;
-
-            if (uvPixelStride == 2 && uvRowStride == width) {
-                vBuffer.position(0);
-                int uvSize = Math.min(vBuffer.remaining(), width * height / 2);
-                vBuffer.get(nv21, uvPos, uvSize);
-            } else if (uvPixelStride == 1) {
-                for (int row = 0; row < uvHeight; row++) {
-                    for (int col = 0; col < uvWidth; col++) {
-                        int uvIndex = row * uvRowStride + col * uvPixelStride;
-                        nv21[uvPos++] = vBuffer.get(uvIndex);
-                        nv21[uvPos++] = uBuffer.get(uvIndex);
-                    }
-                }
-            } else {
-                for (int row = 0; row < uvHeight; row++) {
-                    for (int col = 0; col < uvWidth; col++) {
-                        int uvIndex = row * uvRowStride + col * uvPixelStride;
-                        nv21[uvPos++] = vBuffer.get(uvIndex);
-                        nv21[uvPos++] = uBuffer.get(uvIndex);
-                    }
-                }
-            }
-
-            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 90, out);
-            byte[] imageBytes = out.toByteArray();
-
-            Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-
-            Matrix matrix = new Matrix();
-            int rotationDegrees = image.getImageInfo().getRotationDegrees();
-            if (rotationDegrees != 0) {
-                matrix.postRotate(rotationDegrees);
-                Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0,
-                        bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-                if (rotated != bitmap) bitmap.recycle();
-                return rotated;
-            }
-
-            return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Image conversion failed", e);
-            return null;
+    private void updateCaptureHint(DetectionSession.DetectionFrame frame) {
+        if (isCapturing) return;
+        int trackId = frame.getBoxes().isEmpty() ? 0 : frame.getBoxes().get(0).getTrackId();
+        boolean inView = trackId != 0 && trackId == hintTrackId;
+        hintTrackId = trackId;
+        if (inView != hintInView) {
+            hintInView = inView;
+            tvStatus.setText(inView ? HINT_IN_VIEW : HINT_POINT);
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (cameraExecutor != null) cameraExecutor.shutdown();
+        detectionSession.close();
+        if (speculator != null) {
+            speculator.close();
+        }
         synchronized (this) {
             if (lastCaptureBitmap != null) {
                 lastCaptureBitmap.recycle();
@@ -19,11 +19,6 @@ import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import org.json.JSONArray
 import org.json.JSONObject
-import java.io.BufferedReader
-import java.io.InputStreamReader
-import java.io.OutputStreamWriter
-import java.net.HttpURLConnection
-import java.net.URL
 import java.security.MessageDigest
 
 /**
@@ -103,14 +98,6 @@ object SolanaPayHelper {
     suspend fun getUsdcBalance(walletAddress: String): Double {
         return withContext(Dispatchers.IO) {
             try {
-                val url = URL(MAINNET_RPC)
-                val connection = url.openConnection() as HttpURLConnection
-                connection.requestMethod = "POST"
-                connection.setRequestProperty("Content-Type", "application/json")
-                connection.doOutput = true
-                connection.connectTimeout = 10000
-                connection.readTimeout = 10000
-
                 val requestBody = JSONObject().apply {
                     put("jsonrpc", "2.0")
                     put("id", 1)
@@ -126,15 +113,9 @@ object SolanaPayHelper {
                     })
                 }.toString()
 
-                OutputStreamWriter(connection.outputStream).use { writer ->
-                    writer.write(requestBody)
-                    writer.flush()
-                }
-
-                if (connection.responseCode == HttpURLConnection.HTTP_OK) {
-                    val response = BufferedReader(InputStreamReader(connection.inputStream))
-                        .use { it.readText() }
-                    val json = JSONObject(response)
+                val response = HttpStack.postJson(MAINNET_RPC, requestBody, timeoutMs = 20000)
+                if (response.isSuccessful) {
+                    val json = JSONObject(response.body)
                     val result = json.optJSONObject("result")
                     val value = result?.optJSONArray("value")
 
@@ -150,7 +131,7 @@ object SolanaPayHelper {
                         0.0
                     }
                 } else {
-                    Log.e(TAG, "RPC error: ${connection.responseCode}")
+                    Log.e(TAG, "RPC error: ${response.code}")
                     0.0
                 }
             } catch (e: Exception) {
@@ -0,0 +1,171 @@
+package com.example.snapshop
+
+import android.graphics.Bitmap
+import android.graphics.Rect
+import android.util.Log
+import com.example.snapshop.core.ProductInfo
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+
+/**
+ * Identifies the main product before the user taps "Capture & Identify"
+ *
+ * Fed every detected frame on the analyzer thread. When the largest box
+ * keeps the same track ID for [stableFrames] frames, barely moving and
+ * sharp, its crop goes to LlmVisionHelper in the background. A tap on the
+ * same track then claims that call, in flight or done, instead of starting
+ * from scratch. Confident results also land in the identification cache.
+ *
+ * Bounded: at most one speculation in flight (a new stable track cancels
+ * the previous one), one start per [minIntervalMs], [maxPerSession] starts
+ * per activity. Call [close] when the activity is destroyed.
+ */
+class SpeculativeIdentifier(
+    private val stableFrames: Int = 6,
+    private val minStableIou: Float = 0.8f,
+    private val minSharpness: Double = 60.0,
+    private val minIntervalMs: Long = 4000,
+    private val maxPerSession: Int = 8
+) {
+
+    companion object {
+        private const val TAG = "SpeculativeIdentifier"
+        private const val MIN_PROB = 0.5f
+    }
+
+    /**
+     * A background identification of one track
+     */
+    class Speculation internal constructor(val trackId: Int, private val result: Deferred<ProductInfo?>) {
+
+        val isDone: Boolean get() = result.isCompleted
+
+        /**
+         * Wait for the result, blocking; null if it failed or was cancelled.
+         * Call from a background thread.
+         */
+        fun awaitBlocking(): ProductInfo? {
+            return try {
+                runBlocking { result.await() }
+            } catch (e: CancellationException) {
+                null
+            }
+        }
+
+        internal fun cancel() {
+            result.cancel()
+        }
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    // analyzer thread only
+    private var candidateId = 0
+    private var candidateBox: Rect? = null
+    private var candidateFrames = 0
+    private var lastStartMs = 0L
+
+    @Volatile
+    private var current: Speculation? = null
+
+    // counters, logged on every start and claim
+    @Volatile
+    private var started = 0
+    @Volatile
+    private var claimed = 0
+
+    /**
+     * Analyzer thread: [trackIds] index-aligned with [objects], as in the DetectionBus snapshot
+     */
+    fun onFrame(bitmap: Bitmap, objects: Array<Yolo26Ncnn.Obj>?, trackIds: IntArray?) {
+        // objects are sorted by area, the first one is what the user is pointing at
+        if (objects == null || objects.isEmpty() || trackIds == null || objects[0].prob < MIN_PROB) {
+            candidateFrames = 0
+            return
+        }
+
+        val obj = objects[0]
+        val box = DetectionCrop.bounds(bitmap, obj)
+        val trackId = trackIds[0]
+
+        val previous = candidateBox
+        if (trackId == candidateId && previous != null && iou(previous, box) >= minStableIou) {
+            candidateFrames++
+        } else {
+            candidateId = trackId
+            candidateFrames = 1
+        }
+        candidateBox = box
+
+        if (candidateFrames < stableFrames || current?.trackId == trackId) return
+
+        val now = System.currentTimeMillis()
+        if (started >= maxPerSession || now - lastStartMs < minIntervalMs) return
+
+        val sharpness = DetectionCrop.sharpness(bitmap, box)
+        if (sharpness < minSharpness) return
+
+        start(trackId, DetectionCrop.crop(bitmap, obj), sharpness)
+        lastStartMs = now
+    }
+
+    @Synchronized
+    private fun start(trackId: Int, crop: Bitmap, sharpness: Double) {
+        current?.cancel()
+
+        val result = scope.async {
+            try {
+                LlmVisionHelper.identifyProduct(crop)
+            } finally {
+                crop.recycle()
+            }
+        }
+        current = Speculation(trackId, result)
+        started++
+
+        Log.d(TAG, "Speculating on track $trackId (${crop.width}x${crop.height}, " +
+                "sharpness ${"%.0f".format(sharpness)}) | $started started, $claimed claimed")
+    }
+
+    /**
+     * Claim the speculation for the largest box of [snapshot] (what a capture
+     * now would identify), null if none covers it. A claimed speculation is
+     * handed over once.
+     */
+    @Synchronized
+    fun claim(snapshot: DetectionBus.Snapshot): Speculation? {
+        val speculation = current ?: return null
+        val trackIds = snapshot.trackIds
+        if (snapshot.isEmpty() || trackIds == null || trackIds[0] != speculation.trackId) return null
+
+        current = null
+        claimed++
+        Log.d(TAG, "Capture claims track ${speculation.trackId} " +
+                "(${if (speculation.isDone) "done" else "in flight"}) | $started started, $claimed claimed")
+        return speculation
+    }
+
+    /**
+     * Cancel the speculation in flight and stop starting new ones
+     */
+    @Synchronized
+    fun close() {
+        current?.cancel()
+        current = null
+        scope.cancel()
+    }
+
+    private fun iou(a: Rect, b: Rect): Float {
+        val inter = Rect()
+        if (!inter.setIntersect(a, b)) return 0f
+        val interArea = inter.width().toFloat() * inter.height()
+        val union = a.width().toFloat() * a.height() + b.width().toFloat() * b.height() - interArea
+        return if (union > 0f) interArea / union else 0f
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.snapshop;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * Detection status line for a TextView, e.g.
+ * "Detected 3 objects | 42ms | 23 FPS\ncup: 87.5% bottle: 61.0% ..."
+ *
+ * publish() takes DetectionSession frames, from any thread: it only stores
+ * the numbers. The text is formatted at most once per vsync on a
+ * Choreographer callback, and only when the count or labels changed: the
+ * timing and probabilities differ on almost every frame, changes to them alone
+ * refresh at most every VALUES_REFRESH_MS, with a trailing refresh when the
+ * window closes so the last values are shown even if no frame follows. After
+ * cancel() publish() is ignored until start(). The text is written into a reused
+ * char[] passed to TextView.setText(char[], int, int), so no String or
+ * formatter is allocated per frame. UI-thread time per update is
+ * logged every LOG_EVERY updates.
+ */
+public class StatusTextPublisher {
+
+    private static final String TAG = "StatusTextPublisher";
+
+    // labels listed after the counts, the rest is "..."
+    private static final int MAX_LABELS = 3;
+
+    private static final int LOG_EVERY = 100;
+
+    // ms / FPS / probabilities alone re-render at most this often
+    private static final long VALUES_REFRESH_MS = 500;
+
+    private final TextView textView;
+
+    // latest published values, written by the producer under the monitor
+    private int pendingCount;
+    private long pendingInferenceMs;
+    private final String[] pendingLabels = new String[MAX_LABELS];
+    private final int[] pendingProbs = new int[MAX_LABELS]; // tenths of a percent
+    private boolean pendingDirty = false;
+    private boolean frameScheduled = false;
+    private boolean active = true;
+
+    // delayed refresh for held-back values, UI thread only
+    private boolean trailingPosted = false;
+
+    // values on screen, UI thread only
+    private int shownCount = -1;
+    private long shownInferenceMs = -1;
+    private final String[] shownLabels = new String[MAX_LABELS];
+    private final int[] shownProbs = new int[MAX_LABELS];
+    private long valuesShownNanos;
+
+    private char[] text = new char[128];
+    private int length;
+
+    // stats, UI thread only
+    private long published;
+    private long rendered;
+    private long skipped;
+    private long uiNanos;
+
+    public StatusTextPublisher(TextView textView) {
+        this.textView = textView;
+    }
+
+    /**
+     * Store the latest detection result. Any thread, cheap.
+     */
+    public void publish(DetectionSession.DetectionFrame frame) {
+        List<DetectionSession.Box> boxes = frame.getBoxes();
+        int count = boxes.size();
+        boolean schedule;
+        synchronized (this) {
+            // a frame already in flight when detection stopped must not replace the stop text
+            if (!active) return;
+            pendingCount = count;
+            pendingInferenceMs = frame.getInferenceMs();
+            for (int i = 0; i < MAX_LABELS; i++) {
+                DetectionSession.Box box = i < count ? boxes.get(i) : null;
+                pendingLabels[i] = box != null ? box.getLabel() : null;
+                pendingProbs[i] = box != null ? Math.round(box.getProb() * 1000) : 0;
+            }
+            pendingDirty = true;
+
+            schedule = !frameScheduled;
+            frameScheduled = true;
+        }
+
+        // Choreographer is per looper, schedule from the UI thread
+        if (schedule) {
+            textView.post(scheduleFrame);
+        }
+    }
+
+    /**
+     * Accept publish() again after cancel(). UI thread.
+     */
+    public void start() {
+        synchronized (this) {
+            active = true;
+        }
+    }
+
+    /**
+     * Drop pending updates (the caller is about to set other text) and
+     * forget what is shown, so the next publish always renders. publish()
+     * is ignored until start(). UI thread.
+     */
+    public void cancel() {
+        synchronized (this) {
+            pendingDirty = false;
+            active = false;
+        }
+        if (trailingPosted) {
+            textView.removeCallbacks(trailingFlush);
+            trailingPosted = false;
+        }
+        shownCount = -1;
+        shownInferenceMs = -1;
+    }
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    // values held back by VALUES_REFRESH_MS and no newer frame since
+    private final Runnable trailingFlush = new Runnable() {
+        @Override
+        public void run() {
+            trailingPosted = false;
+            synchronized (StatusTextPublisher.this) {
+                if (!pendingDirty || !active || frameScheduled) return;
+                frameScheduled = true;
+            }
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            long start = SystemClock.elapsedRealtimeNanos();
+
+            boolean changed;
+            long holdMs = 0;
+            synchronized (StatusTextPublisher.this) {
+                frameScheduled = false;
+                if (!pendingDirty || !active) return;
+                pendingDirty = false;
+                published++;
+
+                changed = pendingCount != shownCount;
+                boolean valuesChanged = pendingInferenceMs != shownInferenceMs;
+                for (int i = 0; i < MAX_LABELS; i++) {
+                    if (!sameLabel(pendingLabels[i], shownLabels[i])) changed = true;
+                    if (pendingProbs[i] != shownProbs[i]) valuesChanged = true;
+                }
+                // new values ride along with changed detections, on their own only every VALUES_REFRESH_MS
+                long holdNanos = valuesShownNanos + VALUES_REFRESH_MS * 1_000_000L - frameTimeNanos;
+                if (valuesChanged && holdNanos <= 0) {
+                    changed = true;
+                } else if (valuesChanged && !changed) {
+                    // keep them pending, the trailing refresh shows them when the window closes
+                    pendingDirty = true;
+                    holdMs = holdNanos / 1_000_000L + 1;
+                }
+
+                if (changed) {
+                    for (int i = 0; i < MAX_LABELS; i++) {
+                        shownLabels[i] = pendingLabels[i];
+                        shownProbs[i] = pendingProbs[i];
+                    }
+                    shownCount = pendingCount;
+                    shownInferenceMs = pendingInferenceMs;
+                    valuesShownNanos = frameTimeNanos;
+                }
+            }
+
+            if (changed) {
+                format();
+                textView.setText(text, 0, length);
+                rendered++;
+            } else {
+                skipped++;
+                if (holdMs > 0 && !trailingPosted) {
+                    trailingPosted = true;
+                    textView.postDelayed(trailingFlush, holdMs);
+                }
+            }
+
+            uiNanos += SystemClock.elapsedRealtimeNanos() - start;
+            if (published % LOG_EVERY == 0) {
+                Log.d(TAG, "UI thread " + (uiNanos / published / 1000) + "us/update avg, "
+                        + rendered + " rendered, " + skipped + " unchanged");
+            }
+        }
+    };
+
+    private static boolean sameLabel(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // Same text as before: "Detected %d objects | %dms | %d FPS\n%s: %.1f%% ..." / "No objects detected | %dms | %d FPS"
+    private void format() {
+        length = 0;
+        long fps = 1000 / Math.max(shownInferenceMs, 1);
+
+        if (shownCount > 0) {
+            append("Detected ");
+            append(shownCount);
+            append(" objects | ");
+            append(shownInferenceMs);
+            append("ms | ");
+            append(fps);
+            append(" FPS\n");
+            for (int i = 0; i < Math.min(shownCount, MAX_LABELS); i++) {
+                if (shownLabels[i] != null) {
+                    append(shownLabels[i]);
+                    append(": ");
+                    append(shownProbs[i] / 10);
+                    append('.');
+                    append(shownProbs[i] % 10);
+                    append("% ");
+                }
+            }
+            if (shownCount > MAX_LABELS) {
+                append("...");
+            }
+        } else {
+            append("No objects detected | ");
+            append(shownInferenceMs);
+            append("ms | ");
+            append(fps);
+            append(" FPS");
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > text.length) {
+            char[] grown = new char[Math.max(text.length * 2, length + extra)];
+            System.arraycopy(text, 0, grown, 0, length);
+            text = grown;
+        }
+    }
+
+    private void append(char c) {
+        ensure(1);
+        text[length++] = c;
+    }
+
+    private void append(String s) {
+        ensure(s.length());
+        s.getChars(0, s.length(), text, length);
+        length += s.length();
+    }
+
+    private void append(long v) {
+        if (v < 0) {
+            append('-');
+            v = -v;
+        }
+        ensure(20);
+        int start = length;
+        do {
+            text[length++] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        // digits were written least significant first
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char t = text[i];
+            text[i] = text[j];
+            text[j] = t;
+        }
+    }
+}
@@ -8,11 +8,6 @@ import kotlinx.coroutines.withContext
 import org.json.JSONArray
 import org.json.JSONObject
 import java.io.ByteArrayOutputStream
-import java.io.BufferedReader
-import java.io.InputStreamReader
-import java.io.OutputStreamWriter
-import java.net.HttpURLConnection
-import java.net.URL
 
 /**
  * Google Cloud Vision API Helper
@@ -219,32 +214,11 @@ object VisionApiHelper {
      */
     private fun callVisionApi(requestBody: String): String? {
         try {
-            val url = URL(VISION_API_URL)
-            val connection = url.openConnection() as HttpURLConnection
-
-            connection.requestMethod = "POST"
-            connection.setRequestProperty("Content-Type", "application/json")
-            connection.doOutput = true
-            connection.connectTimeout = 15000
-            connection.readTimeout = 15000
-
-            // Send request
-            OutputStreamWriter(connection.outputStream).use { writer ->
-                writer.write(requestBody)
-                writer.flush()
-            }
-
-            val responseCode = connection.responseCode
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                return BufferedReader(InputStreamReader(connection.inputStream)).use { reader ->
-                    reader.readText()
-                }
+            val response = HttpStack.postJson(VISION_API_URL, requestBody, timeoutMs = 30000)
+            if (response.isSuccessful) {
+                return response.body
             } else {
-                val errorStream = connection.errorStream
-                if (errorStream != null) {
-                    val errorBody = BufferedReader(InputStreamReader(errorStream)).use { it.readText() }
-                    Log.e(TAG, "Vision API error $responseCode: $errorBody")
-                }
+                Log.e(TAG, "Vision API error ${response.code}: ${response.body}")
                 return null
             }
         } catch (e: Exception) {
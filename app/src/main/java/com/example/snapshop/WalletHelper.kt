@@ -4,6 +4,7 @@ import android.net.Uri
 import android.util.Log
 import androidx.appcompat.app.AppCompatActivity
 import androidx.lifecycle.lifecycleScope
+import com.example.snapshop.core.MemoJson
 import com.funkatronics.encoders.Base58
 import com.solana.mobilewalletadapter.clientlib.ActivityResultSender
 import com.solana.mobilewalletadapter.clientlib.ConnectionIdentity
@@ -20,11 +21,6 @@ import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import org.json.JSONArray
 import org.json.JSONObject
-import java.io.BufferedReader
-import java.io.InputStreamReader
-import java.io.OutputStreamWriter
-import java.net.HttpURLConnection
-import java.net.URL
 
 /**
  * Solana Wallet Helper for SnapShop
@@ -160,13 +156,13 @@ class WalletHelper(private val activity: AppCompatActivity) {
      * Detection data structure
      */
     data class DetectionData(
-        val label: String,      // class name
-        val confidence: Float,  // confidence score
-        val x: Float,           // top-left x
-        val y: Float,           // top-left y
-        val width: Float,       // width
-        val height: Float       // height
-    )
+        override val label: String,      // class name
+        override val confidence: Float,  // confidence score
+        override val x: Float,           // top-left x
+        override val y: Float,           // top-left y
+        override val width: Float,       // width
+        override val height: Float       // height
+    ) : MemoJson.Detection
 
     /**
      * Send detection results on-chain (Memo Program transaction)
@@ -198,13 +194,13 @@ class WalletHelper(private val activity: AppCompatActivity) {
                 callback.onMemoProgress("Building memo...")
 
                 // Build compact JSON format
-                var memoJson = buildMemoJson(detections)
+                var memoJson = MemoJson.build(detections)
                 Log.d(TAG, "Memo data: $memoJson (${memoJson.toByteArray().size} bytes)")
 
                 // Check memo length (Solana memo limit ~566 bytes)
                 if (memoJson.toByteArray(Charsets.UTF_8).size > 500) {
                     val truncatedDetections = detections.take(3)
-                    memoJson = buildMemoJson(truncatedDetections)
+                    memoJson = MemoJson.build(truncatedDetections)
                     Log.w(TAG, "Memo truncated to first 3 detections")
                 }
 
@@ -304,15 +300,6 @@ class WalletHelper(private val activity: AppCompatActivity) {
     private suspend fun getLatestBlockhash(): String? {
         return withContext(Dispatchers.IO) {
             try {
-                val url = URL(MAINNET_RPC)
-                val connection = url.openConnection() as HttpURLConnection
-
-                connection.requestMethod = "POST"
-                connection.setRequestProperty("Content-Type", "application/json")
-                connection.doOutput = true
-                connection.connectTimeout = 10000
-                connection.readTimeout = 10000
-
                 // RPC request: getLatestBlockhash
                 val requestBody = JSONObject().apply {
                     put("jsonrpc", "2.0")
@@ -325,23 +312,14 @@ class WalletHelper(private val activity: AppCompatActivity) {
                     })
                 }.toString()
 
-                OutputStreamWriter(connection.outputStream).use { writer ->
-                    writer.write(requestBody)
-                    writer.flush()
-                }
-
-                val responseCode = connection.responseCode
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    val response = BufferedReader(InputStreamReader(connection.inputStream)).use { reader ->
-                        reader.readText()
-                    }
-
-                    val jsonResponse = JSONObject(response)
+                val response = HttpStack.postJson(MAINNET_RPC, requestBody, timeoutMs = 20000)
+                if (response.isSuccessful) {
+                    val jsonResponse = JSONObject(response.body)
                     val result = jsonResponse.optJSONObject("result")
                     val value = result?.optJSONObject("value")
                     value?.optString("blockhash")
                 } else {
-                    Log.e(TAG, "RPC error: $responseCode")
+                    Log.e(TAG, "RPC error: ${response.code}")
                     null
                 }
             } catch (e: Exception) {
@@ -351,45 +329,6 @@ class WalletHelper(private val activity: AppCompatActivity) {
         }
     }
 
-    /**
-     * Build compact Memo JSON
-     * Format: {"t":"yolo26","v":1,"n":3,"d":[{"c":"person","p":0.95,"b":[10,20,100,200]},...]}
-     *
-     * Field description:
-     * - t: type (fixed as "yolo26")
-     * - v: version (protocol version)
-     * - n: count (number of detections)
-     * - d: detections array
-     *   - c: class (class name)
-     *   - p: probability (confidence)
-     *   - b: bbox [x, y, w, h]
-     */
-    private fun buildMemoJson(detections: List<DetectionData>): String {
-        val json = JSONObject().apply {
-            put("t", "yolo26")
-            put("v", 1)
-            put("n", detections.size)
-
-            val detectionsArray = JSONArray()
-            for (det in detections) {
-                val detObj = JSONObject().apply {
-                    put("c", det.label)
-                    put("p", String.format("%.2f", det.confidence).toDouble())
-                    put("b", JSONArray().apply {
-                        put(det.x.toInt())
-                        put(det.y.toInt())
-                        put(det.width.toInt())
-                        put(det.height.toInt())
-                    })
-                }
-                detectionsArray.put(detObj)
-            }
-            put("d", detectionsArray)
-        }
-
-        return json.toString()
-    }
-
     /**
      * Get USDC balance for the connected wallet
      * Returns balance in USDC (e.g., 10.50)
@@ -3,8 +3,108 @@ package com.example.snapshop;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Yolo26Ncnn {
 
+    // COCO class ids that are useful for shopping, the head is pruned to these at load time
+    public static final int[] SHOPPING_CLASSES = {
+            24, 25, 26, 27, 28,         // backpack, umbrella, handbag, tie, suitcase
+            32, 34, 35, 36, 38,         // sports ball, baseball bat/glove, skateboard, tennis racket
+            39, 40, 41, 42, 43, 44, 45, // bottle, wine glass, cup, fork, knife, spoon, bowl
+            56, 62, 63, 64, 65, 66, 67, // chair, tv, laptop, mouse, remote, keyboard, cell phone
+            68, 70, 73, 74, 75, 76,     // microwave, toaster, book, clock, vase, scissors
+            77, 78, 79                  // teddy bear, hair drier, toothbrush
+    };
+
+    // CPU precision modes (GPU always runs fp32)
+    public static final int PRECISION_FP32 = 0;
+    public static final int PRECISION_FP16_STORAGE = 1;     // fp16 weights and blobs, fp32 math
+    public static final int PRECISION_FP16_ARITHMETIC = 2;  // fp16 weights, blobs and math (ARMv8.2)
+    public static final int PRECISION_INT8 = 3;             // needs the yolo26n-int8 model in assets
+
+    /**
+     * Load options: ncnn runtime knobs and CPU precision.
+     * Defaults match the stock configuration (big cores, all kernels on, fp16 arithmetic).
+     * Picked per device by YoloAutotuner.
+     */
+    public static class RuntimeConfig {
+        public int numThreads = 0;    // 0 = one per big core
+        public int powersave = 2;     // 0 = all cores, 1 = little, 2 = big
+        public boolean packingLayout = true;
+        public boolean winograd = true;
+        public boolean sgemm = true;
+        public int precision = PRECISION_FP16_ARITHMETIC;
+
+        public RuntimeConfig copy() {
+            RuntimeConfig c = new RuntimeConfig();
+            c.numThreads = numThreads;
+            c.powersave = powersave;
+            c.packingLayout = packingLayout;
+            c.winograd = winograd;
+            c.sgemm = sgemm;
+            c.precision = precision;
+            return c;
+        }
+
+        /** Compact form for SharedPreferences, e.g. "4,2,1,1,1,2" */
+        public String encode() {
+            return numThreads + "," + powersave + "," + (packingLayout ? 1 : 0) + "," + (winograd ? 1 : 0) + ","
+                    + (sgemm ? 1 : 0) + "," + precision;
+        }
+
+        public static RuntimeConfig decode(String s) {
+            if (s == null) return null;
+            String[] parts = s.split(",");
+            if (parts.length != 6) return null;
+            try {
+                RuntimeConfig c = new RuntimeConfig();
+                c.numThreads = Integer.parseInt(parts[0]);
+                c.powersave = Integer.parseInt(parts[1]);
+                c.packingLayout = "1".equals(parts[2]);
+                c.winograd = "1".equals(parts[3]);
+                c.sgemm = "1".equals(parts[4]);
+                c.precision = Integer.parseInt(parts[5]);
+                return c;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public static String precisionName(int precision) {
+            switch (precision) {
+                case PRECISION_FP32: return "fp32";
+                case PRECISION_FP16_STORAGE: return "fp16-storage";
+                case PRECISION_FP16_ARITHMETIC: return "fp16-arithmetic";
+                case PRECISION_INT8: return "int8";
+                default: return "unknown";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "threads=" + numThreads + " powersave=" + powersave + " pack=" + packingLayout
+                    + " winograd=" + winograd + " sgemm=" + sgemm + " precision=" + precisionName(precision);
+        }
+    }
+
+    /**
+     * Filled by detectTiled: tiles include the full-frame pass.
+     */
+    public static class TileStats {
+        public int tiles;
+        public int workers;
+        public float elapsedMs;
+        public float tilesPerSecond;
+
+        @Override
+        public String toString() {
+            return tiles + " tiles on " + workers + " workers in " + String.format("%.1f", elapsedMs) + "ms ("
+                    + String.format("%.1f", tilesPerSecond) + " tiles/s)";
+        }
+    }
+
     public class Obj {
         public float x;
         public float y;
@@ -14,9 +114,57 @@ public class Yolo26Ncnn {
         public float prob;
     }
 
-    public native boolean loadModel(AssetManager mgr, int modelid, int useGpu);
+    public boolean loadModel(AssetManager mgr, int modelid, int useGpu) {
+        return loadModel(mgr, modelid, useGpu, null, null);
+    }
+
+    public boolean loadModel(AssetManager mgr, int modelid, int useGpu, int[] classSubset) {
+        return loadModel(mgr, modelid, useGpu, classSubset, null);
+    }
+
+    // classSubset: COCO class ids to keep, null for all classes
+    // config: runtime knobs, null for defaults
+    public native boolean loadModel(AssetManager mgr, int modelid, int useGpu, int[] classSubset, RuntimeConfig config);
     public native Obj[] detect(Bitmap bitmap);
 
+    public Obj[] detectTiled(Bitmap bitmap) {
+        return detectTiled(bitmap, 0, 0.2f, 2, null);
+    }
+
+    // High-resolution shelf photos: the full frame plus overlapping tiles, merged with cross-tile NMS
+    // tileSize: tile edge in bitmap pixels, 0 = model input size
+    // overlap: fraction of tileSize shared by neighbouring tiles
+    // workers: tiles detected concurrently (max 4), the thread budget is split between them
+    // stats: optional, receives tile count and tiles per second
+    public native Obj[] detectTiled(Bitmap bitmap, int tileSize, float overlap, int workers, TileStats stats);
+
+    // Gallery / offline scans: images are decoded on a worker pool while the detector runs,
+    // results stream back through the callback on the detect thread (see YoloBatch)
+    public YoloBatch.Handle detectBatch(List<? extends YoloBatch.Source> sources, YoloBatch.Callback callback) {
+        return YoloBatch.start(this, new ArrayList<YoloBatch.Source>(sources), callback);
+    }
+
+    public YoloBatch.Handle detectBatchFiles(List<String> paths, YoloBatch.Callback callback) {
+        List<YoloBatch.Source> sources = new ArrayList<>();
+        for (String path : paths) {
+            sources.add(new YoloBatch.FileSource(path));
+        }
+        return YoloBatch.start(this, sources, callback);
+    }
+
+    // Runs detect on a fixed synthetic frame, returns per-loop times in ms
+    public native float[] benchmark(int warmup, int loops);
+
+    // powersave: 0 = all cores, 1 = little, 2 = big
+    public static native int getCpuCount(int powersave);
+
+    // Identification upload straight from a camera frame (YuvBitmapConverter.Frame): crop, downsample,
+    // rotate/mirror and JPEG-encode in one native pass, null on failure
+    // crop: left, top, right, bottom in upright pixels, null for the whole frame
+    // maxSize: longest side of the result; quality: JPEG quality
+    public static native byte[] encodeUploadJpeg(byte[] nv21, int width, int height, int rotation, boolean mirror,
+                                                 int[] crop, int maxSize, int quality);
+
     static {
         System.loadLibrary("yolo26ncnn");
     }
@@ -0,0 +1,336 @@
+package com.example.snapshop
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.os.Build
+import android.util.Log
+
+/**
+ * One-time ncnn runtime autotuner for Yolo26Ncnn
+ *
+ * Benchmarks candidate RuntimeConfig values on this device and stores the
+ * fastest stable one per model in SharedPreferences. Later loads reuse the
+ * stored choice; an OS update (new build fingerprint) triggers a re-tune.
+ * A stored reduced precision that fails to load (int8 without the quantized
+ * model) is dropped, and one tuned without reference frames is checked
+ * against fp32 (verifyStored) once frames are available.
+ *
+ * The search is staged instead of exhaustive (~12 loads instead of ~192):
+ *   Stage 1: thread count × core set (big cores / all cores)
+ *   Stage 2: each kernel option toggled on top of the best so far
+ *            (packing layout, winograd, sgemm)
+ *   Stage 3: CPU precision (fp16 arithmetic, fp16 storage, fp32, int8);
+ *            reduced precisions must match fp32 boxes on reference frames
+ *            (YoloPrecisionVerifier). Without reference frames only the
+ *            fp16 modes ncnn enables by default are considered.
+ *
+ * A candidate is "stable" when its p90 time is within 30% of its median,
+ * so configurations that thermal-throttle or fight for cores are skipped.
+ */
+object YoloAutotuner {
+
+    private const val TAG = "YoloAutotuner"
+    private const val PREFS_NAME = "yolo_autotune"
+
+    private const val WARMUP = 2
+    private const val LOOPS = 8
+
+    // p90 / median above this → unstable
+    private const val MAX_SPREAD = 1.3f
+
+    // Stage 2 toggles must be ≥3% faster to be kept (below that is noise)
+    private const val MIN_GAIN = 0.97f
+
+    private data class Measurement(
+        val config: Yolo26Ncnn.RuntimeConfig,
+        val medianMs: Float,
+        val p90Ms: Float
+    )
+
+    /**
+     * Preferences key for a model + class subset (a pruned head is a different network)
+     */
+    @JvmStatic
+    fun modelKey(modelid: Int, classSubset: IntArray?): String {
+        return if (classSubset == null) "model$modelid" else "model${modelid}_sub${classSubset.contentHashCode()}"
+    }
+
+    /**
+     * Stored configuration for this model, or null if the device was never tuned
+     */
+    @JvmStatic
+    fun getStoredConfig(context: Context, modelKey: String): Yolo26Ncnn.RuntimeConfig? {
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        if (prefs.getString("${modelKey}_fingerprint", null) != Build.FINGERPRINT) {
+            return null
+        }
+        return Yolo26Ncnn.RuntimeConfig.decode(prefs.getString(modelKey, null))
+    }
+
+    /**
+     * Load with the stored configuration, ncnn defaults if the device was never tuned.
+     * A stored reduced precision that no longer loads (int8 with no quantized model in
+     * assets) is dropped and the defaults are loaded instead, so the next run re-tunes.
+     */
+    @JvmStatic
+    fun loadStored(context: Context, yolo: Yolo26Ncnn, modelid: Int, classSubset: IntArray?): Boolean {
+        val key = modelKey(modelid, classSubset)
+        val stored = getStoredConfig(context, key)
+        if (yolo.loadModel(context.assets, modelid, 0, classSubset, stored)) return true
+        if (stored == null || stored.precision == Yolo26Ncnn.PRECISION_FP32) return false
+
+        Log.w(TAG, "Stored ${Yolo26Ncnn.RuntimeConfig.precisionName(stored.precision)} config for $key " +
+                "failed to load, falling back to defaults")
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .remove(key)
+            .remove("${key}_fingerprint")
+            .remove("${key}_verified")
+            .apply()
+        return yolo.loadModel(context.assets, modelid, 0, classSubset, null)
+    }
+
+    /**
+     * Work left after [loadStored]: a first-run tune, a fp32 check of a stored reduced
+     * precision that was tuned without reference frames, or null when there is none
+     */
+    @JvmStatic
+    fun pendingWork(context: Context, yolo: Yolo26Ncnn, modelid: Int, classSubset: IntArray?): PendingTune? {
+        val key = modelKey(modelid, classSubset)
+        val stored = getStoredConfig(context, key) ?: return PendingTune(context, yolo, modelid, classSubset)
+        if (stored.precision == Yolo26Ncnn.PRECISION_FP32) return null
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        if (prefs.getBoolean("${key}_verified", false)) return null
+        return PendingTune(context, yolo, modelid, classSubset, stored)
+    }
+
+    // Frames with detections to collect before tuning, and how long to wait for them
+    private const val REFERENCE_FRAMES = 3
+    private const val MAX_OFFERED_FRAMES = 30
+
+    /**
+     * Collects camera frames with detections as precision references,
+     * then runs [tune] (or [verifyStored] for [verify]) on the calling (analyzer) thread.
+     */
+    class PendingTune @JvmOverloads constructor(
+        private val context: Context,
+        private val yolo: Yolo26Ncnn,
+        private val modelid: Int,
+        private val classSubset: IntArray?,
+        private val verify: Yolo26Ncnn.RuntimeConfig? = null
+    ) {
+        private val frames = mutableListOf<Bitmap>()
+        private var offered = 0
+
+        /**
+         * Offer an analyzed frame. Returns true once tuning has run.
+         */
+        fun offer(bitmap: Bitmap, objects: Array<Yolo26Ncnn.Obj>?): Boolean {
+            offered++
+            if (objects != null && objects.isNotEmpty() && frames.size < REFERENCE_FRAMES) {
+                frames.add(bitmap.copy(bitmap.config, false))
+            }
+            if (frames.size < REFERENCE_FRAMES && offered < MAX_OFFERED_FRAMES) return false
+
+            try {
+                if (verify != null) {
+                    verifyStored(context, yolo, modelid, classSubset, verify, frames)
+                } else {
+                    tune(context, yolo, modelid, classSubset, frames)
+                }
+            } finally {
+                frames.forEach { it.recycle() }
+                frames.clear()
+            }
+            return true
+        }
+    }
+
+    /**
+     * Benchmark candidates, store the winner and leave the model loaded with it.
+     * Takes several seconds and reloads the shared detector repeatedly:
+     * run on the analyzer thread so no detect call interleaves.
+     */
+    @JvmStatic
+    fun tune(
+        context: Context,
+        yolo: Yolo26Ncnn,
+        modelid: Int,
+        classSubset: IntArray?,
+        referenceFrames: List<Bitmap>
+    ): Yolo26Ncnn.RuntimeConfig {
+        val startTime = System.currentTimeMillis()
+
+        val bigCores = Yolo26Ncnn.getCpuCount(2).coerceAtLeast(1)
+        val allCores = Yolo26Ncnn.getCpuCount(0).coerceAtLeast(1)
+
+        // Stage 1: (threads, powersave)
+        val coreCandidates = linkedSetOf(bigCores to 2, 1 to 2)
+        if (bigCores > 2) coreCandidates.add(bigCores / 2 to 2)
+        if (allCores > bigCores) {
+            coreCandidates.add(allCores to 0)
+            coreCandidates.add(bigCores to 0)
+        }
+
+        var best: Measurement? = null
+        for ((threads, powersave) in coreCandidates) {
+            val config = Yolo26Ncnn.RuntimeConfig()
+            config.numThreads = threads
+            config.powersave = powersave
+            val m = measure(context, yolo, modelid, classSubset, config) ?: continue
+            if (best == null || m.medianMs < best.medianMs) best = m
+        }
+
+        // Stage 2: kernel options, greedy on top of the best core setup
+        val toggles = listOf<(Yolo26Ncnn.RuntimeConfig) -> Unit>(
+            { it.packingLayout = false },
+            { it.winograd = false },
+            { it.sgemm = false }
+        )
+        if (best != null) {
+            for (toggle in toggles) {
+                val config = best!!.config.copy()
+                toggle(config)
+                if (config.encode() == best.config.encode()) continue
+
+                val m = measure(context, yolo, modelid, classSubset, config) ?: continue
+                if (m.medianMs < best.medianMs * MIN_GAIN) best = m
+            }
+        }
+
+        // Stage 3: precision, fastest one that matches fp32
+        if (best != null) {
+            best = tunePrecision(context, yolo, modelid, classSubset, best, referenceFrames)
+        }
+
+        val winner = best?.config ?: Yolo26Ncnn.RuntimeConfig()
+        val key = modelKey(modelid, classSubset)
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(key, winner.encode())
+            .putString("${key}_fingerprint", Build.FINGERPRINT)
+            // without reference frames a reduced precision was picked unchecked
+            .putBoolean("${key}_verified", referenceFrames.isNotEmpty())
+            .apply()
+
+        yolo.loadModel(context.assets, modelid, 0, classSubset, winner)
+
+        Log.d(TAG, "Tuned $key in ${System.currentTimeMillis() - startTime}ms: $winner " +
+                "(median=${best?.medianMs ?: -1f}ms, p90=${best?.p90Ms ?: -1f}ms)")
+        return winner
+    }
+
+    /**
+     * Check the stored reduced precision [config] against fp32 on [frames]
+     * (YoloPrecisionVerifier.verify). One that does not match, or no longer
+     * loads, is replaced by fp32 with the same runtime knobs. Reloads the
+     * shared detector: run on the analyzer thread. Leaves the model loaded
+     * with the configuration kept.
+     */
+    @JvmStatic
+    fun verifyStored(
+        context: Context,
+        yolo: Yolo26Ncnn,
+        modelid: Int,
+        classSubset: IntArray?,
+        config: Yolo26Ncnn.RuntimeConfig,
+        frames: List<Bitmap>
+    ): Yolo26Ncnn.RuntimeConfig {
+        // no detections to compare, check again next launch
+        if (frames.isEmpty()) return config
+
+        val key = modelKey(modelid, classSubset)
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val report = YoloPrecisionVerifier.verify(yolo, context.assets, modelid, classSubset, config, frames)
+        if (report != null && report.passed) {
+            prefs.edit().putBoolean("${key}_verified", true).apply()
+            return config
+        }
+
+        val fp32 = config.copy()
+        fp32.precision = Yolo26Ncnn.PRECISION_FP32
+        Log.w(TAG, "${Yolo26Ncnn.RuntimeConfig.precisionName(config.precision)} " +
+                (if (report == null) "failed to load" else "does not match fp32") + " for $key, using fp32")
+        prefs.edit()
+            .putString(key, fp32.encode())
+            .putBoolean("${key}_verified", true)
+            .apply()
+        yolo.loadModel(context.assets, modelid, 0, classSubset, fp32)
+        return fp32
+    }
+
+    private fun tunePrecision(
+        context: Context,
+        yolo: Yolo26Ncnn,
+        modelid: Int,
+        classSubset: IntArray?,
+        current: Measurement,
+        referenceFrames: List<Bitmap>
+    ): Measurement {
+        val precisions = if (referenceFrames.isEmpty()) {
+            listOf(Yolo26Ncnn.PRECISION_FP16_STORAGE, Yolo26Ncnn.PRECISION_FP16_ARITHMETIC)
+        } else {
+            listOf(
+                Yolo26Ncnn.PRECISION_FP32,
+                Yolo26Ncnn.PRECISION_FP16_STORAGE,
+                Yolo26Ncnn.PRECISION_FP16_ARITHMETIC,
+                Yolo26Ncnn.PRECISION_INT8
+            )
+        }
+
+        // int8 fails to load when the quantized model is not bundled → skipped
+        val measured = mutableListOf(current)
+        for (precision in precisions) {
+            if (precision == current.config.precision) continue
+            val config = current.config.copy()
+            config.precision = precision
+            measure(context, yolo, modelid, classSubset, config)?.let { measured.add(it) }
+        }
+        measured.sortBy { it.medianMs }
+        if (referenceFrames.isEmpty()) return measured.first()
+
+        // fp32 detections on the reference frames, computed once
+        val fp32 = current.config.copy()
+        fp32.precision = Yolo26Ncnn.PRECISION_FP32
+        if (!yolo.loadModel(context.assets, modelid, 0, classSubset, fp32)) return current
+        val reference = YoloPrecisionVerifier.detectAll(yolo, referenceFrames)
+
+        // the model is left loaded with the measurement returned
+        for (m in measured) {
+            if (m.config.precision == Yolo26Ncnn.PRECISION_FP32) {
+                yolo.loadModel(context.assets, modelid, 0, classSubset, m.config)
+                return m
+            }
+            if (!yolo.loadModel(context.assets, modelid, 0, classSubset, m.config)) continue
+            val candidate = YoloPrecisionVerifier.detectAll(yolo, referenceFrames)
+            if (YoloPrecisionVerifier.compare(reference, candidate, m.config.precision).passed) return m
+        }
+
+        // fp32 was unstable and nothing reduced matches it: fp32 anyway, with its own timings
+        return measure(context, yolo, modelid, classSubset, fp32, requireStable = false) ?: current
+    }
+
+    /**
+     * Load with [config] and time detect on the fixed benchmark frame.
+     * Returns null if loading failed or the timings were unstable (and [requireStable]).
+     */
+    private fun measure(
+        context: Context,
+        yolo: Yolo26Ncnn,
+        modelid: Int,
+        classSubset: IntArray?,
+        config: Yolo26Ncnn.RuntimeConfig,
+        requireStable: Boolean = true
+    ): Measurement? {
+        if (!yolo.loadModel(context.assets, modelid, 0, classSubset, config)) return null
+        val times = yolo.benchmark(WARMUP, LOOPS) ?: return null
+        if (times.isEmpty()) return null
+
+        times.sort()
+        val median = times[times.size / 2]
+        val p90 = times[(times.size * 9 / 10).coerceAtMost(times.size - 1)]
+        val stable = p90 <= median * MAX_SPREAD
+
+        Log.d(TAG, "$config → median=${"%.1f".format(median)}ms p90=${"%.1f".format(p90)}ms" +
+                if (stable) "" else " (unstable)")
+        return if (stable || !requireStable) Measurement(config, median, p90) else null
+    }
+}
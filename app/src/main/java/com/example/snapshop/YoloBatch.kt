@@ -0,0 +1,287 @@
+package com.example.snapshop
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Matrix
+import android.media.ExifInterface
+import android.net.Uri
+import android.util.Log
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Batch detection for gallery / offline workloads (Yolo26Ncnn.detectBatch)
+ *
+ * Pipeline:
+ *   decode pool (N threads): decode + EXIF rotate + downscale to ≤ maxSide
+ *   detect thread (1):       Yolo26Ncnn.detect on each decoded bitmap
+ *
+ * The decode pool runs ahead of the detector by at most [QUEUE_DEPTH]
+ * images per decode thread, so the extractor always has the next image
+ * ready while memory stays bounded. Results are streamed in completion
+ * order on the detect thread; post to the main thread for UI work.
+ */
+object YoloBatch {
+
+    private const val TAG = "YoloBatch"
+
+    // Decoded images waiting for the detector, per decode thread
+    private const val QUEUE_DEPTH = 2
+
+    // Decoded size limit: the model letterboxes to 640, larger only costs decode time
+    const val DEFAULT_MAX_SIDE = 1280
+
+    /**
+     * One image of the batch
+     */
+    interface Source {
+        val id: String
+
+        /** Decode to an ARGB_8888 bitmap no larger than [maxSide], null if unreadable */
+        fun decode(maxSide: Int): Bitmap?
+    }
+
+    /**
+     * Image file on disk, EXIF orientation applied
+     */
+    class FileSource(private val path: String) : Source {
+        override val id: String get() = path
+
+        override fun decode(maxSide: Int): Bitmap? {
+            val bounds = BitmapFactory.Options()
+            bounds.inJustDecodeBounds = true
+            BitmapFactory.decodeFile(path, bounds)
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+
+            val options = BitmapFactory.Options()
+            options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, maxSide)
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888
+            val bitmap = BitmapFactory.decodeFile(path, options) ?: return null
+
+            val rotation = try {
+                when (ExifInterface(path).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                    ExifInterface.ORIENTATION_ROTATE_90 -> 90
+                    ExifInterface.ORIENTATION_ROTATE_180 -> 180
+                    ExifInterface.ORIENTATION_ROTATE_270 -> 270
+                    else -> 0
+                }
+            } catch (e: Exception) {
+                0
+            }
+            return fit(bitmap, maxSide, rotation)
+        }
+    }
+
+    /**
+     * content:// image (MediaStore), [rotation] from the ORIENTATION column
+     */
+    class UriSource(
+        private val resolver: ContentResolver,
+        val uri: Uri,
+        private val rotation: Int = 0
+    ) : Source {
+        override val id: String get() = uri.toString()
+
+        override fun decode(maxSide: Int): Bitmap? {
+            val bounds = BitmapFactory.Options()
+            bounds.inJustDecodeBounds = true
+            resolver.openInputStream(uri)?.use { BitmapFactory.decodeStream(it, null, bounds) } ?: return null
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+
+            val options = BitmapFactory.Options()
+            options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, maxSide)
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888
+            val bitmap = resolver.openInputStream(uri)?.use { BitmapFactory.decodeStream(it, null, options) } ?: return null
+            return fit(bitmap, maxSide, rotation)
+        }
+    }
+
+    /**
+     * Bitmap already in memory, the caller keeps ownership
+     */
+    class BitmapSource(override val id: String, private val bitmap: Bitmap) : Source {
+        override fun decode(maxSide: Int): Bitmap? {
+            return bitmap.copy(Bitmap.Config.ARGB_8888, false)?.let { fit(it, maxSide, 0) }
+        }
+    }
+
+    interface Callback {
+        /**
+         * Called on the detect thread for every decoded image, in completion order.
+         * Boxes are in pixels of the decoded image, [width] x [height].
+         */
+        fun onResult(index: Int, source: Source, objects: Array<Yolo26Ncnn.Obj>, width: Int, height: Int)
+
+        /** Called on the detect thread when an image cannot be decoded */
+        fun onError(index: Int, source: Source, error: Exception)
+
+        /** Called once on the detect thread, also after cancel */
+        fun onComplete(stats: Stats)
+    }
+
+    data class Stats(
+        val images: Int,
+        val failed: Int,
+        val elapsedMs: Long,
+        val imagesPerSecond: Float,
+        val cancelled: Boolean
+    )
+
+    class Handle internal constructor() {
+        internal val cancelled = AtomicBoolean(false)
+
+        /** Stop after the image currently being detected */
+        fun cancel() {
+            cancelled.set(true)
+        }
+
+        val isCancelled: Boolean get() = cancelled.get()
+    }
+
+    private class Decoded(val index: Int, val bitmap: Bitmap?, val error: Exception?)
+
+    /**
+     * Start a batch. Returns immediately; use [Handle.cancel] to stop early.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun start(
+        yolo: Yolo26Ncnn,
+        sources: List<Source>,
+        callback: Callback,
+        decodeThreads: Int = defaultDecodeThreads(),
+        maxSide: Int = DEFAULT_MAX_SIDE
+    ): Handle {
+        val handle = Handle()
+        val threads = decodeThreads.coerceAtLeast(1)
+        val decodePool = Executors.newFixedThreadPool(threads)
+        val ready = LinkedBlockingQueue<Decoded>()
+        val permits = Semaphore(threads * QUEUE_DEPTH)
+
+        for (index in sources.indices) {
+            decodePool.execute {
+                try {
+                    permits.acquire()
+                } catch (e: InterruptedException) {
+                    return@execute
+                }
+                if (handle.isCancelled) {
+                    ready.put(Decoded(index, null, null))
+                    return@execute
+                }
+                val decoded = try {
+                    val bitmap = sources[index].decode(maxSide)
+                    if (bitmap != null) Decoded(index, bitmap, null)
+                    else Decoded(index, null, IllegalArgumentException("Unreadable image"))
+                } catch (e: Exception) {
+                    Decoded(index, null, e)
+                } catch (e: OutOfMemoryError) {
+                    Decoded(index, null, RuntimeException("Out of memory decoding image", e))
+                }
+                ready.put(decoded)
+            }
+        }
+        decodePool.shutdown()
+
+        Thread({ runDetect(yolo, sources, callback, handle, decodePool, ready, permits) }, "YoloBatch-detect").start()
+        return handle
+    }
+
+    private fun runDetect(
+        yolo: Yolo26Ncnn,
+        sources: List<Source>,
+        callback: Callback,
+        handle: Handle,
+        decodePool: ExecutorService,
+        ready: LinkedBlockingQueue<Decoded>,
+        permits: Semaphore
+    ) {
+        val startTime = System.currentTimeMillis()
+        var images = 0
+        var failed = 0
+
+        for (n in sources.indices) {
+            if (handle.isCancelled) break
+            val item = ready.take()
+            try {
+                val bitmap = item.bitmap
+                if (bitmap == null) {
+                    if (item.error != null) {
+                        failed++
+                        callback.onError(item.index, sources[item.index], item.error)
+                    }
+                    continue
+                }
+                val objects = yolo.detect(bitmap) ?: emptyArray()
+                val width = bitmap.width
+                val height = bitmap.height
+                bitmap.recycle()
+                images++
+                callback.onResult(item.index, sources[item.index], objects, width, height)
+            } catch (e: Exception) {
+                Log.e(TAG, "Batch callback failed", e)
+            } finally {
+                permits.release()
+            }
+        }
+
+        if (handle.isCancelled) {
+            decodePool.shutdownNow()
+            try {
+                decodePool.awaitTermination(5, TimeUnit.SECONDS)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+            }
+            generateSequence { ready.poll() }.forEach { it.bitmap?.recycle() }
+        }
+
+        val elapsed = System.currentTimeMillis() - startTime
+        val stats = Stats(
+            images = images,
+            failed = failed,
+            elapsedMs = elapsed,
+            imagesPerSecond = if (elapsed > 0) images * 1000f / elapsed else 0f,
+            cancelled = handle.isCancelled
+        )
+        Log.d(TAG, "Batch done: $stats")
+        callback.onComplete(stats)
+    }
+
+    /**
+     * Decode on the little cores, the detector runs on the big ones
+     */
+    @JvmStatic
+    fun defaultDecodeThreads(): Int {
+        val all = Yolo26Ncnn.getCpuCount(0)
+        val big = Yolo26Ncnn.getCpuCount(2)
+        return (all - big).coerceIn(1, 4)
+    }
+
+    /** Largest power-of-two subsample that keeps the long side ≥ maxSide */
+    internal fun sampleSize(width: Int, height: Int, maxSide: Int): Int {
+        var sample = 1
+        while (maxOf(width, height) / (sample * 2) >= maxSide) {
+            sample *= 2
+        }
+        return sample
+    }
+
+    /** Rotate and scale so the long side is ≤ maxSide, recycles [bitmap] if a new one is made */
+    internal fun fit(bitmap: Bitmap, maxSide: Int, rotation: Int): Bitmap {
+        val longSide = maxOf(bitmap.width, bitmap.height)
+        val scale = if (longSide > maxSide) maxSide.toFloat() / longSide else 1f
+        if (scale == 1f && rotation == 0) return bitmap
+
+        val matrix = Matrix()
+        matrix.postScale(scale, scale)
+        matrix.postRotate(rotation.toFloat())
+        val result = Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
+        if (result !== bitmap) bitmap.recycle()
+        return result
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.snapshop
+
+import android.content.res.AssetManager
+import android.graphics.Bitmap
+import android.util.Log
+
+/**
+ * Checks that a reduced CPU precision (fp16 / int8) still produces the
+ * same boxes as fp32 on a set of reference frames.
+ *
+ * Boxes are matched greedily by label and IoU. A precision passes when
+ * ≥90% of the fp32 boxes are found again, there are at most 10% extra
+ * boxes, and the matched boxes overlap with mean IoU ≥ 0.85.
+ */
+object YoloPrecisionVerifier {
+
+    private const val TAG = "YoloPrecisionVerifier"
+
+    private const val MATCH_IOU = 0.5f
+    private const val MIN_RECALL = 0.9f
+    private const val MAX_EXTRA = 0.1f
+    private const val MIN_MEAN_IOU = 0.85f
+
+    data class Report(
+        val precision: Int,
+        val referenceBoxes: Int,
+        val matchedBoxes: Int,
+        val extraBoxes: Int,
+        val meanIou: Float,
+        val passed: Boolean
+    )
+
+    /**
+     * Run the currently loaded model over all frames
+     */
+    @JvmStatic
+    fun detectAll(yolo: Yolo26Ncnn, frames: List<Bitmap>): List<Array<Yolo26Ncnn.Obj>> {
+        return frames.map { yolo.detect(it) ?: emptyArray() }
+    }
+
+    /**
+     * Compare candidate detections against fp32 reference detections, frame by frame
+     */
+    @JvmStatic
+    fun compare(
+        reference: List<Array<Yolo26Ncnn.Obj>>,
+        candidate: List<Array<Yolo26Ncnn.Obj>>,
+        precision: Int
+    ): Report {
+        var referenceBoxes = 0
+        var candidateBoxes = 0
+        var matched = 0
+        var iouSum = 0f
+
+        for (f in reference.indices) {
+            val ref = reference[f]
+            val cand = candidate.getOrElse(f) { emptyArray() }
+            referenceBoxes += ref.size
+            candidateBoxes += cand.size
+
+            val used = BooleanArray(cand.size)
+            for (r in ref) {
+                var bestIou = MATCH_IOU
+                var bestIndex = -1
+                for (c in cand.indices) {
+                    if (used[c] || cand[c].label != r.label) continue
+                    val iou = iou(r, cand[c])
+                    if (iou >= bestIou) {
+                        bestIou = iou
+                        bestIndex = c
+                    }
+                }
+                if (bestIndex >= 0) {
+                    used[bestIndex] = true
+                    matched++
+                    iouSum += bestIou
+                }
+            }
+        }
+
+        val extra = candidateBoxes - matched
+        val recall = if (referenceBoxes > 0) matched.toFloat() / referenceBoxes else 1f
+        val meanIou = if (matched > 0) iouSum / matched else 1f
+        val passed = recall >= MIN_RECALL &&
+                extra <= referenceBoxes * MAX_EXTRA &&
+                meanIou >= MIN_MEAN_IOU
+
+        val report = Report(precision, referenceBoxes, matched, extra, meanIou, passed)
+        Log.d(TAG, "${Yolo26Ncnn.RuntimeConfig.precisionName(precision)} vs fp32: " +
+                "matched $matched/$referenceBoxes, extra $extra, mean IoU ${"%.3f".format(meanIou)} → " +
+                if (passed) "pass" else "FAIL")
+        return report
+    }
+
+    /**
+     * Load fp32 and [config], detect on [frames] with both and compare.
+     * Leaves the model loaded with [config].
+     */
+    @JvmStatic
+    fun verify(
+        yolo: Yolo26Ncnn,
+        assets: AssetManager,
+        modelid: Int,
+        classSubset: IntArray?,
+        config: Yolo26Ncnn.RuntimeConfig,
+        frames: List<Bitmap>
+    ): Report? {
+        val fp32 = config.copy()
+        fp32.precision = Yolo26Ncnn.PRECISION_FP32
+        if (!yolo.loadModel(assets, modelid, 0, classSubset, fp32)) return null
+        val reference = detectAll(yolo, frames)
+
+        if (!yolo.loadModel(assets, modelid, 0, classSubset, config)) return null
+        return compare(reference, detectAll(yolo, frames), config.precision)
+    }
+
+    private fun iou(a: Yolo26Ncnn.Obj, b: Yolo26Ncnn.Obj): Float {
+        val x0 = maxOf(a.x, b.x)
+        val y0 = maxOf(a.y, b.y)
+        val x1 = minOf(a.x + a.w, b.x + b.w)
+        val y1 = minOf(a.y + a.h, b.y + b.h)
+        val inter = maxOf(0f, x1 - x0) * maxOf(0f, y1 - y0)
+        val union = a.w * a.h + b.w * b.h - inter
+        return if (union > 0f) inter / union else 0f
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.snapshop;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import com.example.snapshop.core.Nv21Packer;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * CameraPipeline convert stage: YUV_420_888 ImageProxy → NV21 → JPEG → upright Bitmap.
+ * Rotation from the ImageInfo is applied, and a horizontal mirror on request.
+ * The NV21 of the last converted frame stays available (latestFrame) for the native upload encoder.
+ */
+public class YuvBitmapConverter implements CameraPipeline.Converter {
+
+    private static final String TAG = "YuvBitmapConverter";
+
+    /**
+     * A converted frame as the sensor delivered it, before rotation and mirror
+     */
+    public static class Frame {
+        public final byte[] nv21;
+        public final int width;
+        public final int height;
+        public final int rotation;
+        public final boolean mirror;
+
+        Frame(byte[] nv21, int width, int height, int rotation, boolean mirror) {
+            this.nv21 = nv21;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.mirror = mirror;
+        }
+    }
+
+    private final int jpegQuality;
+
+    // every frame packs into a new array, so keeping it needs no copy
+    private volatile Frame latestFrame;
+
+    public YuvBitmapConverter(int jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    /** NV21 of the Bitmap last returned by convert, null before the first frame */
+    public Frame latestFrame() {
+        return latestFrame;
+    }
+
+    @Override
+    public Bitmap convert(ImageProxy image, boolean mirror) {
+        try {
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            int width = image.getWidth();
+            int height = image.getHeight();
+
+            byte[] nv21 = new byte[Nv21Packer.nv21Size(width, height)];
+            Nv21Packer.pack(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    width, height, nv21);
+
+            // Use YuvImage to convert to JPEG, then decode to Bitmap
+            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), jpegQuality, out);
+            byte[] imageBytes = out.toByteArray();
+
+            Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+
+            // Rotate image
+            Matrix matrix = new Matrix();
+            int rotationDegrees = image.getImageInfo().getRotationDegrees();
+            latestFrame = new Frame(nv21, width, height, rotationDegrees, mirror);
+            if (rotationDegrees != 0) {
+                matrix.postRotate(rotationDegrees);
+            }
+
+            // Mirror flip for front camera
+            if (mirror) {
+                matrix.postScale(-1, 1);
+            }
+
+            if (rotationDegrees != 0 || mirror) {
+                Bitmap rotatedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+                if (rotatedBitmap != bitmap) {
+                    bitmap.recycle();
+                }
+                return rotatedBitmap;
+            }
+
+            return bitmap;
+
+        } catch (Exception e) {
+            Log.e(TAG, "Image conversion failed", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+// Reader for FrameRecorder.java recordings, and the same YUV -> RGB path the app runs per frame
+
+#include "frame_replay.h"
+
+#include <opencv2/core/core.hpp>
+
+#include <mat.h>
+
+#include <algorithm>
+#include <cstring>
+
+static const char FRAME_RECORDING_MAGIC[4] = {'S', 'S', 'F', 'R'};
+
+// recordings are little-endian, so are all hosts we build for (x86_64, arm64)
+static bool read_i32(FILE* fp, int& v)
+{
+    return fread(&v, sizeof(int), 1, fp) == 1;
+}
+
+static bool read_i64(FILE* fp, long long& v)
+{
+    return fread(&v, sizeof(long long), 1, fp) == 1;
+}
+
+FrameReader::FrameReader() : fp(0), first_frame_offset(0)
+{
+}
+
+FrameReader::~FrameReader()
+{
+    close();
+}
+
+int FrameReader::open(const char* path)
+{
+    close();
+
+    fp = fopen(path, "rb");
+    if (!fp)
+        return -1;
+
+    char magic[4];
+    int version = 0;
+    if (fread(magic, 1, 4, fp) != 4 || memcmp(magic, FRAME_RECORDING_MAGIC, 4) != 0
+            || !read_i32(fp, version) || version != FRAME_RECORDING_VERSION)
+    {
+        close();
+        return -1;
+    }
+
+    first_frame_offset = ftell(fp);
+    return 0;
+}
+
+int FrameReader::read(RecordedFrame& frame)
+{
+    if (!fp)
+        return -1;
+
+    if (!read_i64(fp, frame.timestamp_ns))
+        return feof(fp) ? 1 : -1;
+
+    if (!read_i32(fp, frame.width) || !read_i32(fp, frame.height) || !read_i32(fp, frame.rotation) || !read_i32(fp, frame.flags))
+        return -1;
+
+    if (frame.width <= 0 || frame.height <= 0)
+        return -1;
+
+    for (int i = 0; i < 3; i++)
+    {
+        RecordedPlane& plane = frame.planes[i];
+        int length = 0;
+        if (!read_i32(fp, plane.row_stride) || !read_i32(fp, plane.pixel_stride) || !read_i32(fp, length) || length < 0)
+            return -1;
+
+        plane.data.resize(length);
+        if (length > 0 && fread(&plane.data[0], 1, length, fp) != (size_t)length)
+            return -1;
+    }
+
+    return 0;
+}
+
+int FrameReader::rewind()
+{
+    if (!fp)
+        return -1;
+
+    return fseek(fp, first_frame_offset, SEEK_SET);
+}
+
+void FrameReader::close()
+{
+    if (fp)
+    {
+        fclose(fp);
+        fp = 0;
+    }
+}
+
+static inline unsigned char plane_at(const RecordedPlane& plane, size_t index)
+{
+    // CameraX buffers usually stop right after the last pixel, not at a full row stride
+    return index < plane.data.size() ? plane.data[index] : 0;
+}
+
+void recorded_frame_to_nv21(const RecordedFrame& frame, std::vector<unsigned char>& nv21)
+{
+    const int width = frame.width;
+    const int height = frame.height;
+    const RecordedPlane& y = frame.planes[0];
+    const RecordedPlane& u = frame.planes[1];
+    const RecordedPlane& v = frame.planes[2];
+
+    nv21.assign(width * height + width * height / 2, 0);
+
+    // Y plane
+    if (y.row_stride == width && y.pixel_stride == 1)
+    {
+        // contiguous
+        size_t n = std::min(y.data.size(), (size_t)width * height);
+        if (n > 0)
+            memcpy(&nv21[0], &y.data[0], n);
+    }
+    else
+    {
+        unsigned char* p = &nv21[0];
+        for (int row = 0; row < height; row++)
+        {
+            for (int col = 0; col < width; col++)
+            {
+                *p++ = plane_at(y, (size_t)row * y.row_stride + (size_t)col * y.pixel_stride);
+            }
+        }
+    }
+
+    // VU interleaved
+    unsigned char* p = &nv21[width * height];
+    if (u.pixel_stride == 2 && u.row_stride == width)
+    {
+        // V plane is already interleaved VUVU, one byte short of a full plane
+        size_t n = std::min(v.data.size(), (size_t)width * height / 2);
+        if (n > 0)
+            memcpy(p, &v.data[0], n);
+    }
+    else
+    {
+        for (int row = 0; row < height / 2; row++)
+        {
+            for (int col = 0; col < width / 2; col++)
+            {
+                size_t index = (size_t)row * u.row_stride + (size_t)col * u.pixel_stride;
+                *p++ = plane_at(v, index);
+                *p++ = plane_at(u, index);
+            }
+        }
+    }
+}
+
+void recorded_frame_to_rgb(const RecordedFrame& frame, cv::Mat& rgb)
+{
+    std::vector<unsigned char> nv21;
+    recorded_frame_to_nv21(frame, nv21);
+
+    cv::Mat sensor(frame.height, frame.width, CV_8UC3);
+    ncnn::yuv420sp2rgb(&nv21[0], frame.width, frame.height, sensor.data);
+
+    // clockwise, like Matrix.postRotate on the device
+    switch (frame.rotation)
+    {
+    case 90:
+        cv::rotate(sensor, rgb, cv::ROTATE_90_CLOCKWISE);
+        break;
+    case 180:
+        cv::rotate(sensor, rgb, cv::ROTATE_180);
+        break;
+    case 270:
+        cv::rotate(sensor, rgb, cv::ROTATE_90_COUNTERCLOCKWISE);
+        break;
+    default:
+        rgb = sensor;
+        break;
+    }
+
+    if (frame.flags & RECORDED_FRAME_MIRROR)
+    {
+        cv::Mat mirrored;
+        cv::flip(rgb, mirrored, 1);
+        rgb = mirrored;
+    }
+}
@@ -0,0 +1,62 @@
+#ifndef FRAME_REPLAY_H
+#define FRAME_REPLAY_H
+
+#include <opencv2/core/core.hpp>
+
+#include <cstdio>
+#include <vector>
+
+// Recorded camera frames, written by FrameRecorder.java
+//
+// file:  "SSFR" int32 version
+// frame: int64 timestamp_ns int32 width int32 height int32 rotation int32 flags
+//        3 x { int32 row_stride int32 pixel_stride int32 length uint8 data[length] }
+// all little-endian, planes are Y U V exactly as CameraX handed them over (padding included)
+
+#define FRAME_RECORDING_VERSION 1
+
+enum {
+    RECORDED_FRAME_MIRROR = 1   // flip horizontally after rotation (front camera)
+};
+
+struct RecordedPlane {
+    int row_stride;
+    int pixel_stride;
+    std::vector<unsigned char> data;
+};
+
+struct RecordedFrame {
+    long long timestamp_ns;
+    int width;
+    int height;
+    int rotation;
+    int flags;
+    RecordedPlane planes[3];
+};
+
+class FrameReader {
+public:
+    FrameReader();
+    ~FrameReader();
+
+    // 0 on success, -1 if the file is missing or not a recording
+    int open(const char* path);
+    // 0 = frame read, 1 = end of file, -1 = truncated or corrupt
+    int read(RecordedFrame& frame);
+    // back to the first frame
+    int rewind();
+    void close();
+
+private:
+    FILE* fp;
+    long first_frame_offset;
+};
+
+// YUV_420_888 planes -> NV21, packed exactly like YuvBitmapConverter.java
+void recorded_frame_to_nv21(const RecordedFrame& frame, std::vector<unsigned char>& nv21);
+
+// NV21 -> RGB, then the recorded rotation and mirror; rgb is upright like the analyzer bitmap
+// the on-device JPEG round trip is not reproduced, boxes may differ slightly from the phone
+void recorded_frame_to_rgb(const RecordedFrame& frame, cv::Mat& rgb);
+
+#endif // FRAME_REPLAY_H
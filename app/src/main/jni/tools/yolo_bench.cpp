@@ -0,0 +1,522 @@
+// Detector benchmark and regression check on a host build
+//
+//   yolo_bench <modeltype> <input>... [--threads N] [--classes 0,39,41] [--tiled] [--loops N]
+//                                     [--golden FILE] [--update-golden] [--tolerance PX]
+//
+// inputs are images (.jpg .jpeg .png .bmp), FrameRecorder recordings (.ssfr, every frame)
+// or directories of those, taken in name order
+// prints per-stage timings (decode/convert, detect) and throughput over all loops
+// --golden compares the boxes of the first loop against FILE and exits 2 on any change:
+// a box must keep its label and stay within --tolerance pixels (default 1) and 0.01 prob
+// --update-golden writes FILE instead
+//
+// inputs are matched to golden entries by name and reported as NEW, MISSING or CHANGED
+// golden file: one line per input "<name> <count>" (the name may contain spaces), then count lines "<label> <prob> <x> <y> <w> <h>"
+
+#include "yolo.h"
+#include "frame_replay.h"
+
+#include <opencv2/core/core.hpp>
+#include <opencv2/highgui/highgui.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+
+#include <benchmark.h>
+
+#include <dirent.h>
+#include <sys/stat.h>
+
+#include <algorithm>
+#include <cctype>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <map>
+#include <string>
+#include <vector>
+
+struct BenchInput {
+    std::string name;       // path, "#frame" appended for recording frames
+    std::string path;
+    int frame;              // -1 for images
+};
+
+struct BenchResult {
+    std::string name;
+    std::vector<Object> objects;
+};
+
+static bool has_suffix(const std::string& s, const char* suffix)
+{
+    size_t n = strlen(suffix);
+    if (s.size() < n)
+        return false;
+
+    for (size_t i = 0; i < n; i++)
+    {
+        if (tolower(s[s.size() - n + i]) != suffix[i])
+            return false;
+    }
+    return true;
+}
+
+static bool is_image(const std::string& path)
+{
+    return has_suffix(path, ".jpg") || has_suffix(path, ".jpeg") || has_suffix(path, ".png") || has_suffix(path, ".bmp");
+}
+
+static bool is_recording(const std::string& path)
+{
+    return has_suffix(path, ".ssfr");
+}
+
+static void add_file(const std::string& path, std::vector<BenchInput>& inputs)
+{
+    if (is_image(path))
+    {
+        BenchInput input;
+        input.name = path;
+        input.path = path;
+        input.frame = -1;
+        inputs.push_back(input);
+    }
+    else if (is_recording(path))
+    {
+        FrameReader reader;
+        if (reader.open(path.c_str()) != 0)
+        {
+            fprintf(stderr, "%s: not a frame recording, skipped\n", path.c_str());
+            return;
+        }
+
+        RecordedFrame frame;
+        for (int i = 0; reader.read(frame) == 0; i++)
+        {
+            BenchInput input;
+            input.name = path + "#" + std::to_string(i);
+            input.path = path;
+            input.frame = i;
+            inputs.push_back(input);
+        }
+    }
+}
+
+static void collect_inputs(const std::string& path, std::vector<BenchInput>& inputs)
+{
+    struct stat st;
+    if (stat(path.c_str(), &st) != 0)
+    {
+        fprintf(stderr, "%s: not found\n", path.c_str());
+        return;
+    }
+
+    if (!S_ISDIR(st.st_mode))
+    {
+        add_file(path, inputs);
+        return;
+    }
+
+    DIR* dir = opendir(path.c_str());
+    if (!dir)
+        return;
+
+    std::vector<std::string> names;
+    while (struct dirent* entry = readdir(dir))
+    {
+        if (entry->d_name[0] != '.')
+            names.push_back(entry->d_name);
+    }
+    closedir(dir);
+
+    // readdir order is filesystem dependent, golden files need a stable one
+    std::sort(names.begin(), names.end());
+    for (size_t i = 0; i < names.size(); i++)
+    {
+        add_file(path + "/" + names[i], inputs);
+    }
+}
+
+// decode an image, or convert a recorded frame like the analyzer does
+static int load_input(const BenchInput& input, FrameReader& reader, std::string& open_recording, RecordedFrame& frame, cv::Mat& rgb)
+{
+    if (input.frame < 0)
+    {
+        cv::Mat bgr = cv::imread(input.path, 1);
+        if (bgr.empty())
+            return -1;
+
+        cv::cvtColor(bgr, rgb, cv::COLOR_BGR2RGB);
+        return 0;
+    }
+
+    // frames of one recording are listed in order, keep the reader open between them
+    if (open_recording != input.path)
+    {
+        if (reader.open(input.path.c_str()) != 0)
+            return -1;
+        open_recording = input.path;
+    }
+
+    if (input.frame == 0)
+        reader.rewind();
+
+    if (reader.read(frame) != 0)
+        return -1;
+
+    recorded_frame_to_rgb(frame, rgb);
+    return 0;
+}
+
+static int write_golden(const char* path, const std::vector<BenchResult>& results)
+{
+    FILE* fp = fopen(path, "wb");
+    if (!fp)
+        return -1;
+
+    for (size_t i = 0; i < results.size(); i++)
+    {
+        const std::vector<Object>& objects = results[i].objects;
+        fprintf(fp, "%s %d\n", results[i].name.c_str(), (int)objects.size());
+        for (size_t j = 0; j < objects.size(); j++)
+        {
+            const Object& obj = objects[j];
+            fprintf(fp, "%d %.4f %.2f %.2f %.2f %.2f\n", obj.label, obj.prob, obj.rect.x, obj.rect.y, obj.rect.width, obj.rect.height);
+        }
+    }
+
+    fclose(fp);
+    return 0;
+}
+
+// header line: the name may contain spaces, the count is the last field
+static bool parse_golden_header(char* line, std::string& name, int& count)
+{
+    size_t len = strlen(line);
+    while (len > 0 && (line[len - 1] == '\n' || line[len - 1] == '\r'))
+        line[--len] = '\0';
+
+    char* space = strrchr(line, ' ');
+    if (!space || space == line)
+        return false;
+
+    char* end = 0;
+    long value = strtol(space + 1, &end, 10);
+    if (end == space + 1 || *end != '\0' || value < 0)
+        return false;
+
+    name.assign(line, space - line);
+    count = (int)value;
+    return true;
+}
+
+static int read_golden(const char* path, std::vector<BenchResult>& results)
+{
+    FILE* fp = fopen(path, "rb");
+    if (!fp)
+        return -1;
+
+    char line[4096];
+    while (fgets(line, sizeof(line), fp))
+    {
+        if (line[0] == '\n' || line[0] == '\r')
+            continue;
+
+        BenchResult result;
+        int count = 0;
+        if (!parse_golden_header(line, result.name, count))
+        {
+            fclose(fp);
+            return -1;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            Object obj;
+            if (!fgets(line, sizeof(line), fp)
+                || sscanf(line, "%d %f %f %f %f %f", &obj.label, &obj.prob, &obj.rect.x, &obj.rect.y, &obj.rect.width, &obj.rect.height) != 6)
+            {
+                fclose(fp);
+                return -1;
+            }
+            result.objects.push_back(obj);
+        }
+        results.push_back(result);
+    }
+
+    fclose(fp);
+    return 0;
+}
+
+static bool same_box(const Object& a, const Object& b, float tolerance)
+{
+    return a.label == b.label
+           && fabs(a.prob - b.prob) <= 0.01f
+           && fabs(a.rect.x - b.rect.x) <= tolerance
+           && fabs(a.rect.y - b.rect.y) <= tolerance
+           && fabs(a.rect.width - b.rect.width) <= tolerance
+           && fabs(a.rect.height - b.rect.height) <= tolerance;
+}
+
+// every golden box has a distinct match and nothing is left over
+// matched greedily, near-equal areas may swap places in the sorted output
+static bool same_objects(const std::vector<Object>& golden, const std::vector<Object>& objects, float tolerance)
+{
+    if (golden.size() != objects.size())
+        return false;
+
+    std::vector<bool> used(objects.size(), false);
+    for (size_t i = 0; i < golden.size(); i++)
+    {
+        bool found = false;
+        for (size_t j = 0; j < objects.size(); j++)
+        {
+            if (!used[j] && same_box(golden[i], objects[j], tolerance))
+            {
+                used[j] = true;
+                found = true;
+                break;
+            }
+        }
+        if (!found)
+            return false;
+    }
+    return true;
+}
+
+static int check_golden(const char* path, const std::vector<BenchResult>& results, float tolerance)
+{
+    std::vector<BenchResult> golden;
+    if (read_golden(path, golden) != 0)
+    {
+        fprintf(stderr, "%s: cannot read golden file\n", path);
+        return -1;
+    }
+
+    // match by name, so an added or removed input does not shift every entry after it
+    std::map<std::string, const std::vector<Object>*> golden_objects;
+    for (size_t i = 0; i < golden.size(); i++)
+        golden_objects[golden[i].name] = &golden[i].objects;
+
+    int changed = 0;
+    size_t n = 0;
+    std::map<std::string, bool> seen;
+    for (size_t i = 0; i < results.size(); i++)
+    {
+        const BenchResult& result = results[i];
+        if (seen.count(result.name))
+            continue;
+        seen[result.name] = true;
+        n++;
+
+        std::map<std::string, const std::vector<Object>*>::const_iterator it = golden_objects.find(result.name);
+        if (it == golden_objects.end())
+        {
+            fprintf(stdout, "NEW      %s\n", result.name.c_str());
+            changed++;
+        }
+        else if (!same_objects(*it->second, result.objects, tolerance))
+        {
+            fprintf(stdout, "CHANGED  %s (%d -> %d boxes)\n", result.name.c_str(),
+                    (int)it->second->size(), (int)result.objects.size());
+            changed++;
+        }
+    }
+
+    // golden entries without a result, in golden file order
+    for (size_t i = 0; i < golden.size(); i++)
+    {
+        if (seen.count(golden[i].name))
+            continue;
+        seen[golden[i].name] = true;
+        n++;
+
+        fprintf(stdout, "MISSING  %s\n", golden[i].name.c_str());
+        changed++;
+    }
+
+    fprintf(stdout, "golden: %d of %d inputs changed\n", changed, (int)n);
+    return changed;
+}
+
+static void parse_classes(const char* arg, std::vector<int>& classes)
+{
+    const char* p = arg;
+    while (*p)
+    {
+        char* end = 0;
+        long id = strtol(p, &end, 10);
+        if (end == p)
+            break;
+        classes.push_back((int)id);
+        p = *end == ',' ? end + 1 : end;
+    }
+}
+
+static void print_usage(const char* argv0)
+{
+    fprintf(stderr, "usage: %s <modeltype> <input>... [--threads N] [--classes 0,39,41] [--tiled] [--loops N]\n"
+                    "       [--golden FILE] [--update-golden] [--tolerance PX]\n", argv0);
+}
+
+int main(int argc, char** argv)
+{
+    if (argc < 3)
+    {
+        print_usage(argv[0]);
+        return 1;
+    }
+
+    const char* modeltype = argv[1];
+    std::vector<std::string> paths;
+    std::vector<int> classes;
+    YoloOptions options;
+    bool tiled = false;
+    int loops = 1;
+    const char* golden = 0;
+    bool update_golden = false;
+    float tolerance = 1.f;
+
+    for (int i = 2; i < argc; i++)
+    {
+        if (strcmp(argv[i], "--threads") == 0 && i + 1 < argc)
+            options.num_threads = atoi(argv[++i]);
+        else if (strcmp(argv[i], "--classes") == 0 && i + 1 < argc)
+            parse_classes(argv[++i], classes);
+        else if (strcmp(argv[i], "--tiled") == 0)
+            tiled = true;
+        else if (strcmp(argv[i], "--loops") == 0 && i + 1 < argc)
+            loops = std::max(1, atoi(argv[++i]));
+        else if (strcmp(argv[i], "--golden") == 0 && i + 1 < argc)
+            golden = argv[++i];
+        else if (strcmp(argv[i], "--update-golden") == 0)
+            update_golden = true;
+        else if (strcmp(argv[i], "--tolerance") == 0 && i + 1 < argc)
+            tolerance = (float)atof(argv[++i]);
+        else if (argv[i][0] == '-')
+        {
+            print_usage(argv[0]);
+            return 1;
+        }
+        else
+            paths.push_back(argv[i]);
+    }
+
+    if (update_golden && !golden)
+    {
+        print_usage(argv[0]);
+        return 1;
+    }
+
+    std::vector<BenchInput> inputs;
+    for (size_t i = 0; i < paths.size(); i++)
+    {
+        collect_inputs(paths[i], inputs);
+    }
+
+    if (inputs.empty())
+    {
+        fprintf(stderr, "no images or recordings found\n");
+        return 1;
+    }
+
+    Yolo yolo;
+    double t_load = ncnn::get_current_time();
+    if (yolo.load(modeltype, YOLO26_TARGET_SIZE, YOLO26_MEAN_VALS, YOLO26_NORM_VALS, false, classes, options) != 0)
+    {
+        fprintf(stderr, "failed to load model %s\n", modeltype);
+        return 1;
+    }
+    fprintf(stderr, "model %s loaded in %.1f ms, %d inputs, %d loops%s\n", modeltype, ncnn::get_current_time() - t_load,
+            (int)inputs.size(), loops, tiled ? ", tiled" : "");
+
+    std::vector<BenchResult> results;
+    double decode_total = 0.0;
+    double detect_total = 0.0;
+    double detect_min = 1e9;
+    double detect_max = 0.0;
+    int processed = 0;
+    int failed = 0;
+
+    FrameReader reader;
+    std::string open_recording;
+    RecordedFrame frame;
+
+    const double start = ncnn::get_current_time();
+
+    for (int loop = 0; loop < loops; loop++)
+    {
+        for (size_t i = 0; i < inputs.size(); i++)
+        {
+            const double t0 = ncnn::get_current_time();
+
+            cv::Mat rgb;
+            if (load_input(inputs[i], reader, open_recording, frame, rgb) != 0)
+            {
+                if (loop == 0)
+                {
+                    fprintf(stderr, "%s: cannot decode, skipped\n", inputs[i].name.c_str());
+                    failed++;
+                }
+                continue;
+            }
+
+            const double t1 = ncnn::get_current_time();
+
+            std::vector<Object> objects;
+            if (tiled)
+                yolo.detect_tiled(rgb, objects);
+            else
+                yolo.detect(rgb, objects);
+
+            const double t2 = ncnn::get_current_time();
+
+            decode_total += t1 - t0;
+            detect_total += t2 - t1;
+            detect_min = std::min(detect_min, t2 - t1);
+            detect_max = std::max(detect_max, t2 - t1);
+            processed++;
+
+            if (loop == 0)
+            {
+                BenchResult result;
+                result.name = inputs[i].name;
+                result.objects = objects;
+                results.push_back(result);
+
+                fprintf(stdout, "%-48s %dx%d  decode %6.2f ms  detect %7.2f ms  %d boxes\n", inputs[i].name.c_str(),
+                        rgb.cols, rgb.rows, t1 - t0, t2 - t1, (int)objects.size());
+            }
+        }
+    }
+
+    const double elapsed = ncnn::get_current_time() - start;
+
+    if (processed == 0)
+    {
+        fprintf(stderr, "nothing decoded\n");
+        return 1;
+    }
+
+    // the first loop includes allocator warm-up, pass --loops > 1 for steady-state numbers
+    fprintf(stdout, "%d inputs x %d loops: %d detections (%d failed) in %.1f ms, %.2f per second\n",
+            (int)inputs.size(), loops, processed, failed, elapsed, processed * 1000.0 / elapsed);
+    fprintf(stdout, "decode avg %.2f ms  detect avg %.2f ms  min %.2f ms  max %.2f ms\n",
+            decode_total / processed, detect_total / processed, detect_min, detect_max);
+
+    if (golden && update_golden)
+    {
+        if (write_golden(golden, results) != 0)
+        {
+            fprintf(stderr, "%s: cannot write golden file\n", golden);
+            return 1;
+        }
+        fprintf(stdout, "golden: wrote %d inputs to %s\n", (int)results.size(), golden);
+    }
+    else if (golden)
+    {
+        int changed = check_golden(golden, results, tolerance);
+        if (changed != 0)
+            return changed < 0 ? 1 : 2;
+    }
+
+    return 0;
+}
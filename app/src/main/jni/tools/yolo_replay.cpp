@@ -0,0 +1,189 @@
+// Replay a FrameRecorder recording through the detector on a host build
+//
+//   yolo_replay <modeltype> <recording.ssfr> [--realtime] [--loops N] [--threads N] [--tiled]
+//
+// modeltype is the model path prefix, e.g. assets/yolo26n (loads yolo26n.ncnn.param/.bin)
+// frames are loaded up front, so file I/O is not part of the timings
+// default: as fast as possible, throughput = frames / wall time
+// --realtime: frames are released at their recorded cadence; like ImageAnalysis
+//             STRATEGY_KEEP_ONLY_LATEST, a frame that is superseded before the detector
+//             is free is dropped, latency = result time - frame arrival time
+
+#include "yolo.h"
+#include "frame_replay.h"
+
+#include <benchmark.h>
+
+#include <algorithm>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <vector>
+
+static double percentile(std::vector<double> values, double p)
+{
+    if (values.empty())
+        return 0.0;
+
+    std::sort(values.begin(), values.end());
+    size_t index = (size_t)(p * (values.size() - 1) + 0.5);
+    return values[index];
+}
+
+static void print_usage(const char* argv0)
+{
+    fprintf(stderr, "usage: %s <modeltype> <recording.ssfr> [--realtime] [--loops N] [--threads N] [--tiled]\n", argv0);
+}
+
+int main(int argc, char** argv)
+{
+    if (argc < 3)
+    {
+        print_usage(argv[0]);
+        return 1;
+    }
+
+    const char* modeltype = argv[1];
+    const char* recording = argv[2];
+    bool realtime = false;
+    bool tiled = false;
+    int loops = 1;
+    YoloOptions options;
+
+    for (int i = 3; i < argc; i++)
+    {
+        if (strcmp(argv[i], "--realtime") == 0)
+            realtime = true;
+        else if (strcmp(argv[i], "--tiled") == 0)
+            tiled = true;
+        else if (strcmp(argv[i], "--loops") == 0 && i + 1 < argc)
+            loops = std::max(1, atoi(argv[++i]));
+        else if (strcmp(argv[i], "--threads") == 0 && i + 1 < argc)
+            options.num_threads = atoi(argv[++i]);
+        else
+        {
+            print_usage(argv[0]);
+            return 1;
+        }
+    }
+
+    FrameReader reader;
+    if (reader.open(recording) != 0)
+    {
+        fprintf(stderr, "%s: not a frame recording\n", recording);
+        return 1;
+    }
+
+    std::vector<RecordedFrame> frames;
+    for (;;)
+    {
+        RecordedFrame frame;
+        int ret = reader.read(frame);
+        if (ret == 1)
+            break;
+        if (ret != 0)
+        {
+            fprintf(stderr, "%s: truncated after %d frames, replaying those\n", recording, (int)frames.size());
+            break;
+        }
+        frames.push_back(frame);
+    }
+    reader.close();
+
+    if (frames.empty())
+    {
+        fprintf(stderr, "%s: no frames\n", recording);
+        return 1;
+    }
+
+    Yolo yolo;
+    if (yolo.load(modeltype, YOLO26_TARGET_SIZE, YOLO26_MEAN_VALS, YOLO26_NORM_VALS, false, std::vector<int>(), options) != 0)
+    {
+        fprintf(stderr, "failed to load model %s\n", modeltype);
+        return 1;
+    }
+
+    const long long first_ts = frames.front().timestamp_ns;
+    const double recorded_ms = (frames.back().timestamp_ns - first_ts) / 1e6;
+    fprintf(stderr, "%d frames, %dx%d, %.0f ms recorded, %s%s\n", (int)frames.size(), frames[0].width, frames[0].height,
+            recorded_ms, realtime ? "realtime" : "as fast as possible", tiled ? ", tiled" : "");
+
+    // warm up allocators and caches, not measured
+    {
+        cv::Mat rgb;
+        recorded_frame_to_rgb(frames[0], rgb);
+        std::vector<Object> objects;
+        yolo.detect(rgb, objects);
+    }
+
+    for (int loop = 0; loop < loops; loop++)
+    {
+        std::vector<double> convert_ms;
+        std::vector<double> detect_ms;
+        std::vector<double> latency_ms;
+        int dropped = 0;
+        int boxes = 0;
+
+        const double start = ncnn::get_current_time();
+
+        for (size_t i = 0; i < frames.size(); i++)
+        {
+            const double arrival = start + (frames[i].timestamp_ns - first_ts) / 1e6;
+
+            if (realtime)
+            {
+                // the next frame already arrived while we were busy: this one was never delivered
+                if (i + 1 < frames.size() && ncnn::get_current_time() >= start + (frames[i + 1].timestamp_ns - first_ts) / 1e6)
+                {
+                    dropped++;
+                    continue;
+                }
+
+                double wait = arrival - ncnn::get_current_time();
+                if (wait > 0)
+                    ncnn::sleep((unsigned long long)wait);
+            }
+
+            const double t0 = ncnn::get_current_time();
+
+            cv::Mat rgb;
+            recorded_frame_to_rgb(frames[i], rgb);
+
+            const double t1 = ncnn::get_current_time();
+
+            std::vector<Object> objects;
+            if (tiled)
+                yolo.detect_tiled(rgb, objects);
+            else
+                yolo.detect(rgb, objects);
+
+            const double t2 = ncnn::get_current_time();
+
+            convert_ms.push_back(t1 - t0);
+            detect_ms.push_back(t2 - t1);
+            latency_ms.push_back(realtime ? t2 - arrival : t2 - t0);
+            boxes += (int)objects.size();
+        }
+
+        const double elapsed = ncnn::get_current_time() - start;
+        const int processed = (int)detect_ms.size();
+
+        double convert_total = 0.0;
+        double detect_total = 0.0;
+        for (int i = 0; i < processed; i++)
+        {
+            convert_total += convert_ms[i];
+            detect_total += detect_ms[i];
+        }
+
+        fprintf(stdout, "loop %d: %d frames (%d dropped) in %.1f ms, %.2f fps, %d boxes\n",
+                loop, processed, dropped, elapsed, processed * 1000.0 / elapsed, boxes);
+        fprintf(stdout, "  convert avg %.2f ms  detect avg %.2f ms\n",
+                convert_total / processed, detect_total / processed);
+        fprintf(stdout, "  latency p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  max %.2f ms\n",
+                percentile(latency_ms, 0.50), percentile(latency_ms, 0.90), percentile(latency_ms, 0.99),
+                percentile(latency_ms, 1.0));
+    }
+
+    return 0;
+}
@@ -0,0 +1,140 @@
+// Crop / downsample / rotate / encode of the identification upload, straight from NV21
+
+#include "upload_jpeg.h"
+
+#include <opencv2/core/core.hpp>
+#include <opencv2/imgproc/imgproc.hpp>
+#include <opencv2/highgui/highgui.hpp>
+
+#include <mat.h>
+
+#include <algorithm>
+#include <cstring>
+
+// upright rect -> sensor rect, undoing the mirror (applied last) and then the clockwise rotation
+static void upright_to_sensor(int width, int height, int rotation, bool mirror, const int* crop,
+                              int& x0, int& y0, int& x1, int& y1)
+{
+    const int upright_w = (rotation == 90 || rotation == 270) ? height : width;
+
+    int l = crop[0];
+    int t = crop[1];
+    int r = crop[2];
+    int b = crop[3];
+    if (mirror)
+    {
+        int ml = upright_w - r;
+        r = upright_w - l;
+        l = ml;
+    }
+
+    switch (rotation)
+    {
+    case 90:
+        x0 = t;
+        x1 = b;
+        y0 = height - r;
+        y1 = height - l;
+        break;
+    case 180:
+        x0 = width - r;
+        x1 = width - l;
+        y0 = height - b;
+        y1 = height - t;
+        break;
+    case 270:
+        x0 = width - b;
+        x1 = width - t;
+        y0 = l;
+        y1 = r;
+        break;
+    default:
+        x0 = l;
+        x1 = r;
+        y0 = t;
+        y1 = b;
+        break;
+    }
+}
+
+int encode_upload_jpeg(const unsigned char* nv21, int width, int height, int rotation, bool mirror,
+                       const int* crop, int max_size, int quality,
+                       std::vector<unsigned char>& jpeg)
+{
+    if (!nv21 || width < 2 || height < 2 || max_size <= 0)
+        return -1;
+
+    int x0 = 0;
+    int y0 = 0;
+    int x1 = width;
+    int y1 = height;
+    if (crop)
+        upright_to_sensor(width, height, rotation, mirror, crop, x0, y0, x1, y1);
+
+    // even bounds: one VU pair covers 2x2 luma pixels
+    x0 = std::max(0, std::min(x0, width - 2)) & ~1;
+    y0 = std::max(0, std::min(y0, height - 2)) & ~1;
+    x1 = std::min(width, std::max(x1, x0 + 2) + 1) & ~1;
+    y1 = std::min(height, std::max(y1, y0 + 2) + 1) & ~1;
+    const int cw = x1 - x0;
+    const int ch = y1 - y0;
+
+    // only the crop is converted: gather its rows into a contiguous NV21
+    std::vector<unsigned char> sub(cw * ch + cw * ch / 2);
+    for (int y = 0; y < ch; y++)
+    {
+        memcpy(&sub[y * cw], nv21 + (y0 + y) * width + x0, cw);
+    }
+    const unsigned char* vu = nv21 + width * height;
+    for (int y = 0; y < ch / 2; y++)
+    {
+        memcpy(&sub[cw * ch + y * cw], vu + (y0 / 2 + y) * width + x0, cw);
+    }
+
+    cv::Mat rgb(ch, cw, CV_8UC3);
+    ncnn::yuv420sp2rgb(&sub[0], cw, ch, rgb.data);
+
+    // downsample before rotating, fewer pixels to move; area averaging like a box filter
+    const float scale = std::min(1.f, (float)max_size / std::max(cw, ch));
+    if (scale < 1.f)
+    {
+        cv::Mat small;
+        cv::resize(rgb, small, cv::Size(std::max(1, (int)(cw * scale)), std::max(1, (int)(ch * scale))), 0, 0, cv::INTER_AREA);
+        rgb = small;
+    }
+
+    cv::Mat upright;
+    switch (rotation)
+    {
+    case 90:
+        cv::rotate(rgb, upright, cv::ROTATE_90_CLOCKWISE);
+        break;
+    case 180:
+        cv::rotate(rgb, upright, cv::ROTATE_180);
+        break;
+    case 270:
+        cv::rotate(rgb, upright, cv::ROTATE_90_COUNTERCLOCKWISE);
+        break;
+    default:
+        upright = rgb;
+        break;
+    }
+    if (mirror)
+    {
+        cv::Mat mirrored;
+        cv::flip(upright, mirrored, 1);
+        upright = mirrored;
+    }
+
+    // the encoder takes BGR
+    cv::Mat bgr;
+    cv::cvtColor(upright, bgr, cv::COLOR_RGB2BGR);
+
+    std::vector<int> params;
+    params.push_back(cv::IMWRITE_JPEG_QUALITY);
+    params.push_back(quality);
+    if (!cv::imencode(".jpg", bgr, jpeg, params))
+        return -1;
+
+    return 0;
+}
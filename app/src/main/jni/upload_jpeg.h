@@ -0,0 +1,18 @@
+#ifndef UPLOAD_JPEG_H
+#define UPLOAD_JPEG_H
+
+#include <vector>
+
+// Identification upload straight from the camera frame: crop, downsample, rotate and
+// one JPEG encode, instead of NV21 -> JPEG -> Bitmap -> rotate -> scale -> JPEG in Java
+//
+// nv21:     width x height sensor frame, packed like YuvBitmapConverter.java
+// rotation: clockwise degrees to upright (0, 90, 180, 270), mirror flips after rotating
+// crop:     left, top, right, bottom in upright pixels, or null for the whole frame
+// max_size: longest side of the result, smaller crops are not upscaled
+// returns 0 on success, -1 on bad arguments or encoder failure
+int encode_upload_jpeg(const unsigned char* nv21, int width, int height, int rotation, bool mirror,
+                       const int* crop, int max_size, int quality,
+                       std::vector<unsigned char>& jpeg);
+
+#endif // UPLOAD_JPEG_H
@@ -2,23 +2,53 @@
 // out0: dims=2, w=8400, h=84  => [84 rows, 8400 cols]
 // row 0..3 : cx, cy, w, h (decoded in 640x640 coords)
 // row 4..83: 80 class probs (sigmoid already in graph)
+// with a class subset the head is pruned at load time => h = 4 + subset size
+// custom models may export [8400 rows, 4+nc cols] or channel-first [4+nc, 1, 8400],
+// the layout is resolved per frame and read in place through strides
+// class count and names come from <modeltype>.metadata.yaml (ultralytics export format)
 
 #include "yolo.h"
 
 #include <opencv2/core/core.hpp>
 #include <opencv2/imgproc/imgproc.hpp>
 
+#include <benchmark.h>
 #include <cpu.h>
 #include <layer.h>
 
+#if __ANDROID__
 #include <android/log.h>
+#endif
 #include <cfloat>
+#include <cstdio>
+#include <cstring>
+#include <sstream>
+#include <string>
 #include <vector>
+#include <thread>
 #include <algorithm>
 #include <cmath>
 
 #define TAG "YOLO26"
+#if __ANDROID__
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, TAG, __VA_ARGS__)
+#else
+// host builds (replay, benchmarks) log to stderr
+#define LOGD(...) do { fprintf(stderr, TAG ": " __VA_ARGS__); fputc('\n', stderr); } while (0)
+#endif
+
+// COCO 80类名称, used when the model has no metadata sidecar
+static const char* coco_class_names[] = {
+    "person", "bicycle", "car", "motorcycle", "airplane", "bus", "train", "truck", "boat", "traffic light",
+    "fire hydrant", "stop sign", "parking meter", "bench", "bird", "cat", "dog", "horse", "sheep", "cow",
+    "elephant", "bear", "zebra", "giraffe", "backpack", "umbrella", "handbag", "tie", "suitcase", "frisbee",
+    "skis", "snowboard", "sports ball", "kite", "baseball bat", "baseball glove", "skateboard", "surfboard",
+    "tennis racket", "bottle", "wine glass", "cup", "fork", "knife", "spoon", "bowl", "banana", "apple",
+    "sandwich", "orange", "broccoli", "carrot", "hot dog", "pizza", "donut", "cake", "chair", "couch",
+    "potted plant", "bed", "dining table", "toilet", "tv", "laptop", "mouse", "remote", "keyboard", "cell phone",
+    "microwave", "oven", "toaster", "sink", "refrigerator", "book", "clock", "vase", "scissors", "teddy bear",
+    "hair drier", "toothbrush"
+};
 
 static inline float intersection_area(const Object& a, const Object& b)
 {
@@ -91,61 +121,145 @@ static void nms_sorted_bboxes(const std::vector<Object>& objects, std::vector<in
     }
 }
 
+// view of the prediction blob: feature f of proposal i is data[f * feat_step + i * prop_step]
+struct PredLayout
+{
+    const float* data;
+    int num_proposals;
+    int num_feat;
+    size_t feat_step;
+    size_t prop_step;
+};
+
+// num_feat: expected 4 + num_class, 0 if unknown (the shorter axis is taken as features)
+static int resolve_pred_layout(const ncnn::Mat& pred, int num_feat, PredLayout& layout)
+{
+    int rows;
+    int cols;
+    size_t row_step;
+
+    if (pred.dims == 2 || (pred.dims == 3 && pred.c == 1))
+    {
+        // [rows, cols], contiguous rows
+        rows = pred.h;
+        cols = pred.w;
+        row_step = pred.w;
+    }
+    else if (pred.dims == 3 && pred.h == 1)
+    {
+        // channel-first [c, 1, w], one channel per row
+        rows = pred.c;
+        cols = pred.w;
+        row_step = pred.cstep;
+    }
+    else
+    {
+        return -1;
+    }
+
+    bool feat_major;
+    if (num_feat > 0)
+    {
+        if (rows == num_feat)
+            feat_major = true;
+        else if (cols == num_feat && pred.dims == 2)
+            feat_major = false;
+        else
+            return -1;
+    }
+    else
+    {
+        feat_major = rows <= cols || pred.dims != 2;
+    }
+
+    layout.data = (const float*)pred.data;
+    if (feat_major)
+    {
+        layout.num_feat = rows;
+        layout.num_proposals = cols;
+        layout.feat_step = row_step;
+        layout.prop_step = 1;
+    }
+    else
+    {
+        layout.num_feat = cols;
+        layout.num_proposals = rows;
+        layout.feat_step = 1;
+        layout.prop_step = row_step;
+    }
+
+    return 0;
+}
+
 static void generate_proposals_yolo26(const ncnn::Mat& pred,
                                       float prob_threshold,
+                                      int num_class_expected,
+                                      const std::vector<int>& class_map,
+                                      bool head_pruned,
                                       std::vector<Object>& objects,
                                       float* out_global_max = nullptr)
 {
     objects.clear();
 
-    if (pred.dims != 2)
+    // pruned head: row k is class_map[k]
+    // full head with subset: only rows class_map[k] are scanned
+    const int num_feat_expected = head_pruned ? 4 + (int)class_map.size() : (num_class_expected > 0 ? 4 + num_class_expected : 0);
+
+    PredLayout layout;
+    if (resolve_pred_layout(pred, num_feat_expected, layout) != 0)
     {
-        LOGD("generate_proposals: unexpected pred.dims=%d (expected 2)", pred.dims);
+        LOGD("generate_proposals: unexpected pred dims=%d w=%d h=%d c=%d (expected %d features)",
+             pred.dims, pred.w, pred.h, pred.c, num_feat_expected);
         if (out_global_max) *out_global_max = 0.f;
         return;
     }
 
-    const int num_proposals = pred.w;        // 8400
-    const int num_feat      = pred.h;        // 84
-    const int num_class     = num_feat - 4;  // 80
+    const int num_proposals = layout.num_proposals; // 8400
+    const int num_class     = layout.num_feat - 4;
 
-    if (num_feat != 84)
+    if (num_class <= 0)
     {
-        LOGD("generate_proposals: unexpected pred.h=%d (expected 84=4+80)", num_feat);
+        LOGD("generate_proposals: unexpected feature count %d (expected 4+num_class)", layout.num_feat);
         if (out_global_max) *out_global_max = 0.f;
         return;
     }
 
-    const float* ptr_cx = pred.row(0);
-    const float* ptr_cy = pred.row(1);
-    const float* ptr_w  = pred.row(2);
-    const float* ptr_h  = pred.row(3);
+    const int num_scan = class_map.empty() ? num_class : (int)class_map.size();
+
+    const float* ptr = layout.data;
+    const size_t fs = layout.feat_step;
+    const size_t ps = layout.prop_step;
 
     float global_max = 0.f;
 
     for (int i = 0; i < num_proposals; i++)
     {
+        const float* p = ptr + i * ps;
+
         int label = -1;
         float score = 0.f;
 
-        for (int k = 0; k < num_class; k++)
+        for (int k = 0; k < num_scan; k++)
         {
-            const float* row_cls = pred.row(4 + k);
-            float s = row_cls[i]; // already sigmoid
+            const int row = (class_map.empty() || head_pruned) ? k : class_map[k];
+            if (row >= num_class)
+                continue;
+
+            float s = p[(4 + row) * fs]; // already sigmoid
             if (s > score)
             {
                 score = s;
-                label = k;
+                label = class_map.empty() ? k : class_map[k];
             }
         }
 
         if (score > global_max) global_max = score;
         if (score < prob_threshold) continue;
 
-        float cx = ptr_cx[i];
-        float cy = ptr_cy[i];
-        float bw = ptr_w[i];
-        float bh = ptr_h[i];
+        float cx = p[0];
+        float cy = p[fs];
+        float bw = p[2 * fs];
+        float bh = p[3 * fs];
 
         float x0 = cx - bw * 0.5f;
         float y0 = cy - bh * 0.5f;
@@ -163,6 +277,583 @@ static void generate_proposals_yolo26(const ncnn::Mat& pred,
     if (out_global_max) *out_global_max = global_max;
 }
 
+static std::string trim_yaml_value(const std::string& value)
+{
+    size_t b = value.find_first_not_of(" \t\r");
+    size_t e = value.find_last_not_of(" \t\r");
+    if (b == std::string::npos)
+        return std::string();
+
+    std::string v = value.substr(b, e - b + 1);
+    if (v.size() >= 2 && (v[0] == '\'' || v[0] == '"') && v[v.size() - 1] == v[0])
+        v = v.substr(1, v.size() - 2);
+    return v;
+}
+
+// minimal reader for the ultralytics metadata.yaml block layout
+//   imgsz:
+//   - 640
+//   - 640
+//   names:
+//     0: person
+static int parse_metadata(const std::vector<char>& text, std::vector<std::string>& names, int& imgsz)
+{
+    names.clear();
+    imgsz = 0;
+
+    std::istringstream ss(std::string(text.begin(), text.end()));
+    std::string section;
+    std::string line;
+    while (std::getline(ss, line))
+    {
+        if (line.empty() || line[0] == '#')
+            continue;
+
+        bool indented = line[0] == ' ' || line[0] == '-';
+        if (!indented)
+        {
+            size_t colon = line.find(':');
+            if (colon == std::string::npos)
+                continue;
+
+            section = line.substr(0, colon);
+            std::string value = trim_yaml_value(line.substr(colon + 1));
+            if (section == "imgsz" && !value.empty() && value[0] != '[')
+                imgsz = atoi(value.c_str());
+            continue;
+        }
+
+        std::string item = trim_yaml_value(line);
+        if (section == "imgsz" && item.size() > 1 && item[0] == '-')
+        {
+            // square input, first entry wins
+            if (imgsz == 0)
+                imgsz = atoi(item.c_str() + 1);
+        }
+        else if (section == "names")
+        {
+            size_t colon = item.find(':');
+            if (colon == std::string::npos)
+                continue;
+
+            int id = atoi(item.substr(0, colon).c_str());
+            if (id < 0 || id > 65535)
+                continue;
+
+            if ((int)names.size() <= id)
+                names.resize(id + 1);
+            names[id] = trim_yaml_value(item.substr(colon + 1));
+        }
+    }
+
+    return names.empty() ? -1 : 0;
+}
+
+// ncnn param text, one entry per layer line
+struct ParamLayer
+{
+    std::string type;
+    std::string name;
+    std::vector<std::string> bottoms;
+    std::vector<std::string> tops;
+    std::vector<std::pair<int, std::string> > params; // id=value as written
+};
+
+static int param_int(const ParamLayer& layer, int id, int def)
+{
+    for (size_t i = 0; i < layer.params.size(); i++)
+    {
+        if (layer.params[i].first == id)
+            return atoi(layer.params[i].second.c_str());
+    }
+    return def;
+}
+
+static void set_param_int(ParamLayer& layer, int id, int value)
+{
+    char buf[32];
+    sprintf(buf, "%d", value);
+    for (size_t i = 0; i < layer.params.size(); i++)
+    {
+        if (layer.params[i].first == id)
+        {
+            layer.params[i].second = buf;
+            return;
+        }
+    }
+    layer.params.push_back(std::make_pair(id, std::string(buf)));
+}
+
+static int parse_param(const std::vector<char>& text, std::vector<ParamLayer>& layers, int& blob_count)
+{
+    std::istringstream ss(std::string(text.begin(), text.end()));
+
+    int magic = 0;
+    int layer_count = 0;
+    ss >> magic >> layer_count >> blob_count;
+    if (magic != 7767517 || layer_count <= 0)
+        return -1;
+
+    layers.resize(layer_count);
+    for (int i = 0; i < layer_count; i++)
+    {
+        ParamLayer& layer = layers[i];
+
+        int bottom_count = 0;
+        int top_count = 0;
+        ss >> layer.type >> layer.name >> bottom_count >> top_count;
+        if (!ss)
+            return -1;
+
+        layer.bottoms.resize(bottom_count);
+        for (int j = 0; j < bottom_count; j++) ss >> layer.bottoms[j];
+        layer.tops.resize(top_count);
+        for (int j = 0; j < top_count; j++) ss >> layer.tops[j];
+
+        std::string line;
+        std::getline(ss, line);
+        std::istringstream ls(line);
+        std::string kv;
+        while (ls >> kv)
+        {
+            size_t eq = kv.find('=');
+            if (eq == std::string::npos)
+                return -1;
+            layer.params.push_back(std::make_pair(atoi(kv.substr(0, eq).c_str()), kv.substr(eq + 1)));
+        }
+    }
+
+    return 0;
+}
+
+static std::string write_param(const std::vector<ParamLayer>& layers, int blob_count)
+{
+    std::ostringstream ss;
+    ss << 7767517 << "\n" << layers.size() << " " << blob_count << "\n";
+    for (size_t i = 0; i < layers.size(); i++)
+    {
+        const ParamLayer& layer = layers[i];
+        ss << layer.type << " " << layer.name << " " << layer.bottoms.size() << " " << layer.tops.size();
+        for (size_t j = 0; j < layer.bottoms.size(); j++) ss << " " << layer.bottoms[j];
+        for (size_t j = 0; j < layer.tops.size(); j++) ss << " " << layer.tops[j];
+        for (size_t j = 0; j < layer.params.size(); j++) ss << " " << layer.params[j].first << "=" << layer.params[j].second;
+        ss << "\n";
+    }
+    return ss.str();
+}
+
+static int find_producer(const std::vector<ParamLayer>& layers, const std::string& blob)
+{
+    for (int i = (int)layers.size() - 1; i >= 0; i--)
+    {
+        for (size_t j = 0; j < layers[i].tops.size(); j++)
+        {
+            if (layers[i].tops[j] == blob)
+                return i;
+        }
+    }
+    return -1;
+}
+
+static int count_consumers(const std::vector<ParamLayer>& layers, const std::string& blob)
+{
+    int count = 0;
+    for (size_t i = 0; i < layers.size(); i++)
+    {
+        for (size_t j = 0; j < layers[i].bottoms.size(); j++)
+        {
+            if (layers[i].bottoms[j] == blob)
+                count++;
+        }
+    }
+    return count;
+}
+
+// out0 = Concat(box, Sigmoid(Concat(Reshape(Convolution) x 3)))
+// collect the per-stride classification convolutions and their reshapes
+static int find_class_head(const std::vector<ParamLayer>& layers, std::vector<int>& convs, std::vector<int>& reshapes)
+{
+    convs.clear();
+    reshapes.clear();
+
+    int out = find_producer(layers, "out0");
+    if (out < 0 || layers[out].type != "Concat" || layers[out].bottoms.size() != 2)
+        return -1;
+
+    int sigmoid = find_producer(layers, layers[out].bottoms[1]);
+    if (sigmoid < 0 || layers[sigmoid].type != "Sigmoid")
+        return -1;
+
+    int concat = find_producer(layers, layers[sigmoid].bottoms[0]);
+    if (concat < 0 || layers[concat].type != "Concat")
+        return -1;
+
+    for (size_t i = 0; i < layers[concat].bottoms.size(); i++)
+    {
+        int reshape = find_producer(layers, layers[concat].bottoms[i]);
+        if (reshape < 0 || layers[reshape].type != "Reshape")
+            return -1;
+
+        int conv = find_producer(layers, layers[reshape].bottoms[0]);
+        if (conv < 0 || layers[conv].type != "Convolution")
+            return -1;
+
+        // head output must not be shared with another branch
+        if (count_consumers(layers, layers[conv].tops[0]) != 1)
+            return -1;
+
+        if (param_int(layers[reshape], 1, 0) != param_int(layers[conv], 0, 0))
+            return -1;
+
+        convs.push_back(conv);
+        reshapes.push_back(reshape);
+    }
+
+    return convs.empty() ? -1 : 0;
+}
+
+// ncnn weight blob: 4 byte tag + fp32 (tag 0) or fp16 (tag 0x01306B47) data
+static int weight_blob_size(const std::vector<char>& model, size_t offset, int count, int& elemsize)
+{
+    if (offset + 4 > model.size())
+        return -1;
+
+    unsigned int tag;
+    memcpy(&tag, &model[offset], 4);
+
+    if (tag == 0)
+    {
+        elemsize = 4;
+        return 4 + count * 4;
+    }
+    if (tag == 0x01306B47)
+    {
+        elemsize = 2;
+        return 4 + ((count * 2 + 3) & ~3);
+    }
+
+    // quantized weights are not handled
+    return -1;
+}
+
+// compute the byte offset of each layer's weights in the model file
+// only the layer types exported for yolo26 are known, anything else aborts
+static int locate_weights(const std::vector<ParamLayer>& layers, const std::vector<char>& model, std::vector<size_t>& offsets)
+{
+    static const char* weightless_types[] = {
+        "BinaryOp", "Concat", "Crop", "Eltwise", "Flatten", "Input", "Interp", "MatMul", "Noop",
+        "Permute", "Pooling", "ReLU", "Reshape", "Sigmoid", "Slice", "Softmax", "Split", "Swish", "UnaryOp"
+    };
+
+    offsets.resize(layers.size() + 1);
+
+    size_t offset = 0;
+    for (size_t i = 0; i < layers.size(); i++)
+    {
+        const ParamLayer& layer = layers[i];
+        offsets[i] = offset;
+
+        if (layer.type == "Convolution" || layer.type == "ConvolutionDepthWise")
+        {
+            if (param_int(layer, 8, 0) != 0 || param_int(layer, 19, 0) != 0)
+                return -1;
+
+            int elemsize = 0;
+            int size = weight_blob_size(model, offset, param_int(layer, 6, 0), elemsize);
+            if (size < 0)
+                return -1;
+
+            offset += size;
+            if (param_int(layer, 5, 0))
+                offset += param_int(layer, 0, 0) * 4;
+        }
+        else if (layer.type == "MemoryData")
+        {
+            int w = param_int(layer, 0, 0);
+            int h = param_int(layer, 1, 0);
+            int d = param_int(layer, 11, 0);
+            int c = param_int(layer, 2, 0);
+            offset += (size_t)w * std::max(h, 1) * std::max(d, 1) * std::max(c, 1) * 4;
+        }
+        else
+        {
+            bool known = false;
+            for (size_t j = 0; j < sizeof(weightless_types) / sizeof(weightless_types[0]); j++)
+            {
+                if (layer.type == weightless_types[j])
+                {
+                    known = true;
+                    break;
+                }
+            }
+            if (!known)
+            {
+                LOGD("prune: unknown layer type %s", layer.type.c_str());
+                return -1;
+            }
+        }
+
+        if (offset > model.size())
+            return -1;
+    }
+    offsets[layers.size()] = offset;
+
+    return 0;
+}
+
+// keep only the class_subset output channels of the classification head
+static int prune_class_head(const std::vector<char>& param, const std::vector<char>& model, const std::vector<int>& class_subset,
+                            std::string& pruned_param, std::vector<unsigned char>& pruned_model)
+{
+    std::vector<ParamLayer> layers;
+    int blob_count = 0;
+    if (parse_param(param, layers, blob_count) != 0)
+    {
+        LOGD("prune: failed to parse param");
+        return -1;
+    }
+
+    std::vector<int> convs;
+    std::vector<int> reshapes;
+    if (find_class_head(layers, convs, reshapes) != 0)
+    {
+        LOGD("prune: classification head not found");
+        return -1;
+    }
+
+    const int num_class = param_int(layers[convs[0]], 0, 0);
+    for (size_t i = 0; i < class_subset.size(); i++)
+    {
+        if (class_subset[i] < 0 || class_subset[i] >= num_class)
+        {
+            LOGD("prune: class %d out of range (num_class=%d)", class_subset[i], num_class);
+            return -1;
+        }
+    }
+
+    std::vector<size_t> offsets;
+    if (locate_weights(layers, model, offsets) != 0)
+    {
+        LOGD("prune: unsupported weight layout");
+        return -1;
+    }
+
+    const int keep = (int)class_subset.size();
+
+    pruned_model.clear();
+    pruned_model.reserve(model.size());
+
+    size_t copied = 0;
+    for (size_t i = 0; i < convs.size(); i++)
+    {
+        ParamLayer& conv = layers[convs[i]];
+        const size_t offset = offsets[convs[i]];
+
+        const int num_output = param_int(conv, 0, 0);
+        const int weight_data_size = param_int(conv, 6, 0);
+        const int per_output = weight_data_size / num_output;
+
+        // everything up to this layer is copied verbatim
+        pruned_model.insert(pruned_model.end(), model.begin() + copied, model.begin() + offset);
+
+        int elemsize = 0;
+        int size = weight_blob_size(model, offset, weight_data_size, elemsize);
+
+        // tag, then the kept output rows of the [outch][inch][kh][kw] weights
+        pruned_model.insert(pruned_model.end(), model.begin() + offset, model.begin() + offset + 4);
+        const char* weights = &model[offset + 4];
+        for (int k = 0; k < keep; k++)
+        {
+            const char* row = weights + (size_t)class_subset[k] * per_output * elemsize;
+            pruned_model.insert(pruned_model.end(), row, row + (size_t)per_output * elemsize);
+        }
+        while (pruned_model.size() % 4)
+            pruned_model.push_back(0);
+
+        size_t bias_offset = offset + size;
+        if (param_int(conv, 5, 0))
+        {
+            const char* bias = &model[bias_offset];
+            for (int k = 0; k < keep; k++)
+            {
+                const char* b = bias + (size_t)class_subset[k] * 4;
+                pruned_model.insert(pruned_model.end(), b, b + 4);
+            }
+            bias_offset += num_output * 4;
+        }
+        copied = bias_offset;
+
+        set_param_int(conv, 0, keep);
+        set_param_int(conv, 6, keep * per_output);
+        set_param_int(layers[reshapes[i]], 1, keep);
+    }
+    pruned_model.insert(pruned_model.end(), model.begin() + copied, model.end());
+
+    pruned_param = write_param(layers, blob_count);
+
+    LOGD("prune: class head %d -> %d classes, model %zu -> %zu bytes", num_class, keep, model.size(), pruned_model.size());
+
+    return 0;
+}
+
+static int read_file(const char* path, std::vector<char>& data)
+{
+    FILE* fp = fopen(path, "rb");
+    if (!fp)
+        return -1;
+
+    fseek(fp, 0, SEEK_END);
+    long size = ftell(fp);
+    fseek(fp, 0, SEEK_SET);
+
+    data.resize(size);
+    size_t nread = size > 0 ? fread(&data[0], 1, size, fp) : 0;
+    fclose(fp);
+
+    return nread == (size_t)size ? 0 : -1;
+}
+
+#if __ANDROID_API__ >= 9
+static int read_asset(AAssetManager* mgr, const char* path, std::vector<char>& data)
+{
+    AAsset* asset = AAssetManager_open(mgr, path, AASSET_MODE_BUFFER);
+    if (!asset)
+        return -1;
+
+    off_t size = AAsset_getLength(asset);
+    data.resize(size);
+    int nread = size > 0 ? AAsset_read(asset, &data[0], size) : 0;
+    AAsset_close(asset);
+
+    return nread == (int)size ? 0 : -1;
+}
+#endif // __ANDROID_API__ >= 9
+
+static void normalize_class_subset(const std::vector<int>& class_subset, std::vector<int>& sorted)
+{
+    sorted = class_subset;
+    std::sort(sorted.begin(), sorted.end());
+    sorted.erase(std::unique(sorted.begin(), sorted.end()), sorted.end());
+}
+
+// intersection over the smaller box above this merges tiled boxes (a cut-off part inside the whole object)
+static const float TILE_MERGE_IOS = 0.7f;
+
+// boxes this close to an inner tile border are cut off, a neighbouring tile sees them whole
+static const float TILE_EDGE_MARGIN = 2.f;
+
+static void clamp_rect(cv::Rect_<float>& rect, int w, int h)
+{
+    float x0 = std::max(std::min(rect.x, (float)(w - 1)), 0.f);
+    float y0 = std::max(std::min(rect.y, (float)(h - 1)), 0.f);
+    float x1 = std::max(std::min(rect.x + rect.width, (float)(w - 1)), 0.f);
+    float y1 = std::max(std::min(rect.y + rect.height, (float)(h - 1)), 0.f);
+
+    rect.x = x0;
+    rect.y = y0;
+    rect.width = x1 - x0;
+    rect.height = y1 - y0;
+}
+
+static void sort_by_area_desc(std::vector<Object>& objects)
+{
+    struct
+    {
+        bool operator()(const Object& a, const Object& b) const
+        {
+            return a.rect.area() > b.rect.area();
+        }
+    } objects_area_greater;
+
+    std::sort(objects.begin(), objects.end(), objects_area_greater);
+}
+
+// tile origins along one axis: tiles of size tile cover [0, length), neighbours share at least overlap pixels
+static void tile_origins(int length, int tile, int overlap, std::vector<int>& origins)
+{
+    origins.clear();
+    if (length <= tile)
+    {
+        origins.push_back(0);
+        return;
+    }
+
+    const int stride = std::max(tile - overlap, 1);
+    const int n = (length - tile + stride - 1) / stride + 1;
+
+    // spread evenly, first tile at 0 and last one flush with the far edge
+    for (int i = 0; i < n; i++)
+    {
+        origins.push_back((int)((long long)(length - tile) * i / (n - 1)));
+    }
+}
+
+// tile coords -> image coords, boxes cut by an inner tile border are dropped
+static void place_tile_proposals(std::vector<Object>& proposals, const cv::Rect& tile, int img_w, int img_h)
+{
+    const bool inner_left = tile.x > 0;
+    const bool inner_top = tile.y > 0;
+    const bool inner_right = tile.x + tile.width < img_w;
+    const bool inner_bottom = tile.y + tile.height < img_h;
+
+    size_t count = 0;
+    for (size_t i = 0; i < proposals.size(); i++)
+    {
+        Object obj = proposals[i];
+        clamp_rect(obj.rect, tile.width, tile.height);
+
+        if (inner_left && obj.rect.x < TILE_EDGE_MARGIN) continue;
+        if (inner_top && obj.rect.y < TILE_EDGE_MARGIN) continue;
+        if (inner_right && obj.rect.x + obj.rect.width > tile.width - 1 - TILE_EDGE_MARGIN) continue;
+        if (inner_bottom && obj.rect.y + obj.rect.height > tile.height - 1 - TILE_EDGE_MARGIN) continue;
+
+        obj.rect.x += tile.x;
+        obj.rect.y += tile.y;
+        proposals[count++] = obj;
+    }
+
+    proposals.resize(count);
+}
+
+// class-aware NMS over sorted boxes from all tiles, suppresses by IoU or by intersection over the smaller box
+static void merge_tiled_bboxes(const std::vector<Object>& objects, std::vector<int>& picked, float nms_threshold, float ios_threshold)
+{
+    picked.clear();
+
+    const int n = (int)objects.size();
+    std::vector<float> areas(n);
+    for (int i = 0; i < n; i++)
+        areas[i] = objects[i].rect.area();
+
+    for (int i = 0; i < n; i++)
+    {
+        const Object& a = objects[i];
+
+        int keep = 1;
+        for (int j = 0; j < (int)picked.size(); j++)
+        {
+            const Object& b = objects[picked[j]];
+
+            if (a.label != b.label)
+                continue;
+
+            float inter_area = intersection_area(a, b);
+            float union_area = areas[i] + areas[picked[j]] - inter_area;
+            float min_area = std::min(areas[i], areas[picked[j]]);
+            float iou = union_area > 0.f ? (inter_area / union_area) : 0.f;
+            float ios = min_area > 0.f ? (inter_area / min_area) : 0.f;
+
+            if (iou > nms_threshold || ios > ios_threshold)
+            {
+                keep = 0;
+                break;
+            }
+        }
+
+        if (keep) picked.push_back(i);
+    }
+}
+
 // helpers: detect cv::Mat channel format robustly
 static int pick_pixel_type_for_ncnn(const cv::Mat& img)
 {
@@ -182,10 +873,28 @@ static int pick_pixel_type_for_ncnn(const cv::Mat& img)
     return ncnn::Mat::PIXEL_BGR2RGB;
 }
 
+YoloOptions::YoloOptions()
+{
+    num_threads = 0;
+    powersave = 2;
+    use_packing_layout = true;
+    use_winograd_convolution = true;
+    use_sgemm_convolution = true;
+    precision = PRECISION_FP16_ARITHMETIC;
+}
+
 Yolo::Yolo()
 {
+    head_pruned = false;
+
     blob_pool_allocator.set_size_compare_ratio(0.f);
     workspace_pool_allocator.set_size_compare_ratio(0.f);
+
+    for (int i = 0; i < MAX_TILE_WORKERS; i++)
+    {
+        tile_blob_allocators[i].set_size_compare_ratio(0.f);
+        tile_workspace_allocators[i].set_size_compare_ratio(0.f);
+    }
 }
 
 Yolo::~Yolo()
@@ -193,17 +902,76 @@ Yolo::~Yolo()
     yolo.clear();
 }
 
-int Yolo::load(const char* modeltype, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu)
+void Yolo::load_metadata(const std::vector<char>& text)
 {
-    yolo.clear();
-    blob_pool_allocator.clear();
-    workspace_pool_allocator.clear();
+    int imgsz = 0;
+    if (text.empty() || parse_metadata(text, class_names, imgsz) != 0)
+    {
+        // no sidecar: class count follows the output blob, names fall back to COCO
+        class_names.clear();
+        return;
+    }
+
+    if (imgsz > 0 && imgsz != target_size)
+    {
+        LOGD("metadata: imgsz %d overrides target_size %d", imgsz, target_size);
+        target_size = imgsz;
+    }
+
+    LOGD("metadata: %zu classes", class_names.size());
+}
 
-    ncnn::set_cpu_powersave(2);
-    ncnn::set_omp_num_threads(ncnn::get_big_cpu_count());
+const char* Yolo::get_class_name(int label) const
+{
+    if (class_names.empty())
+    {
+        const int num_coco = sizeof(coco_class_names) / sizeof(coco_class_names[0]);
+        return (label >= 0 && label < num_coco) ? coco_class_names[label] : "unknown";
+    }
+
+    if (label < 0 || label >= (int)class_names.size() || class_names[label].empty())
+        return "unknown";
+    return class_names[label].c_str();
+}
+
+int Yolo::load_pruned(const std::vector<char>& param, const std::vector<char>& model, const std::vector<int>& class_subset)
+{
+    std::string pruned_param;
+    if (prune_class_head(param, model, class_subset, pruned_param, model_data) != 0)
+    {
+        model_data.clear();
+        return -1;
+    }
+
+    if (yolo.load_param_mem(pruned_param.c_str()) != 0)
+        return -1;
+
+    // weights are referenced in place, model_data stays alive until the next load
+    if (yolo.load_model(model_data.data()) <= 0)
+        return -1;
+
+    return 0;
+}
+
+void Yolo::apply_options(bool use_gpu, const YoloOptions& options)
+{
+    const int powersave = options.powersave;
+    const int num_threads = options.num_threads > 0 ? options.num_threads : ncnn::get_big_cpu_count();
+
+    ncnn::set_cpu_powersave(powersave);
+    ncnn::set_omp_num_threads(num_threads);
 
     yolo.opt = ncnn::Option();
 
+    yolo.opt.use_packing_layout = options.use_packing_layout;
+    yolo.opt.use_winograd_convolution = options.use_winograd_convolution;
+    yolo.opt.use_sgemm_convolution = options.use_sgemm_convolution;
+    yolo.opt.use_fp16_packed = options.precision >= PRECISION_FP16_STORAGE;
+    yolo.opt.use_fp16_storage = options.precision >= PRECISION_FP16_STORAGE;
+    yolo.opt.use_fp16_arithmetic = options.precision >= PRECISION_FP16_ARITHMETIC;
+    yolo.opt.use_bf16_storage = false;
+    yolo.opt.use_int8_inference = options.precision == PRECISION_INT8;
+
 #if NCNN_VULKAN
     yolo.opt.use_vulkan_compute = use_gpu;
     if (use_gpu)
@@ -215,17 +983,62 @@ int Yolo::load(const char* modeltype, int _target_size, const float* _mean_vals,
     }
 #endif
 
-    yolo.opt.num_threads = ncnn::get_big_cpu_count();
+    yolo.opt.num_threads = num_threads;
     yolo.opt.blob_allocator = &blob_pool_allocator;
     yolo.opt.workspace_allocator = &workspace_pool_allocator;
+}
+
+int Yolo::load(const char* modeltype, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu,
+               const std::vector<int>& class_subset, const YoloOptions& options)
+{
+    yolo.clear();
+    model_data.clear();
+    blob_pool_allocator.clear();
+    workspace_pool_allocator.clear();
+    for (int i = 0; i < MAX_TILE_WORKERS; i++)
+    {
+        tile_blob_allocators[i].clear();
+        tile_workspace_allocators[i].clear();
+    }
+
+    apply_options(use_gpu, options);
 
     char parampath[256];
     char modelpath[256];
-    sprintf(parampath, "%s.ncnn.param", modeltype);
-    sprintf(modelpath, "%s.ncnn.bin", modeltype);
+    char metapath[256];
+    // int8 weights live in a separately quantized model, metadata is shared
+    const char* suffix = options.precision == PRECISION_INT8 ? "-int8" : "";
+    sprintf(parampath, "%s%s.ncnn.param", modeltype, suffix);
+    sprintf(modelpath, "%s%s.ncnn.bin", modeltype, suffix);
+    sprintf(metapath, "%s.metadata.yaml", modeltype);
+
+    normalize_class_subset(class_subset, class_map);
+    head_pruned = false;
+
+    if (!class_map.empty())
+    {
+        std::vector<char> param;
+        std::vector<char> model;
+        if (read_file(parampath, param) == 0 && read_file(modelpath, model) == 0 && load_pruned(param, model, class_map) == 0)
+        {
+            head_pruned = true;
+        }
+        else
+        {
+            // keep the subset as a decode-time filter on the full head
+            LOGD("class head pruning failed, loading full model");
+            yolo.clear();
+        }
+    }
 
-    yolo.load_param(parampath);
-    yolo.load_model(modelpath);
+    if (!head_pruned)
+    {
+        if (yolo.load_param(parampath) != 0 || yolo.load_model(modelpath) != 0)
+        {
+            LOGD("failed to load %s", parampath);
+            return -1;
+        }
+    }
 
     target_size = _target_size;
 
@@ -236,42 +1049,66 @@ int Yolo::load(const char* modeltype, int _target_size, const float* _mean_vals,
     norm_vals[1] = _norm_vals[1];
     norm_vals[2] = _norm_vals[2];
 
+    std::vector<char> metadata;
+    if (read_file(metapath, metadata) != 0)
+        metadata.clear();
+    load_metadata(metadata);
+
     return 0;
 }
 
-int Yolo::load(AAssetManager* mgr, const char* modeltype, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu)
+#if __ANDROID_API__ >= 9
+int Yolo::load(AAssetManager* mgr, const char* modeltype, int _target_size, const float* _mean_vals, const float* _norm_vals, bool use_gpu,
+               const std::vector<int>& class_subset, const YoloOptions& options)
 {
     yolo.clear();
+    model_data.clear();
     blob_pool_allocator.clear();
     workspace_pool_allocator.clear();
-
-    ncnn::set_cpu_powersave(2);
-    ncnn::set_omp_num_threads(ncnn::get_big_cpu_count());
-
-    yolo.opt = ncnn::Option();
-
-#if NCNN_VULKAN
-    yolo.opt.use_vulkan_compute = use_gpu;
-    if (use_gpu)
+    for (int i = 0; i < MAX_TILE_WORKERS; i++)
     {
-        // Force FP32 for better accuracy on GPU
-        yolo.opt.use_fp16_packed = false;
-        yolo.opt.use_fp16_storage = false;
-        yolo.opt.use_fp16_arithmetic = false;
+        tile_blob_allocators[i].clear();
+        tile_workspace_allocators[i].clear();
     }
-#endif
 
-    yolo.opt.num_threads = ncnn::get_big_cpu_count();
-    yolo.opt.blob_allocator = &blob_pool_allocator;
-    yolo.opt.workspace_allocator = &workspace_pool_allocator;
+    apply_options(use_gpu, options);
 
     char parampath[256];
     char modelpath[256];
-    sprintf(parampath, "%s.ncnn.param", modeltype);
-    sprintf(modelpath, "%s.ncnn.bin", modeltype);
+    char metapath[256];
+    // int8 weights live in a separately quantized model, metadata is shared
+    const char* suffix = options.precision == PRECISION_INT8 ? "-int8" : "";
+    sprintf(parampath, "%s%s.ncnn.param", modeltype, suffix);
+    sprintf(modelpath, "%s%s.ncnn.bin", modeltype, suffix);
+    sprintf(metapath, "%s.metadata.yaml", modeltype);
+
+    normalize_class_subset(class_subset, class_map);
+    head_pruned = false;
+
+    if (!class_map.empty())
+    {
+        std::vector<char> param;
+        std::vector<char> model;
+        if (read_asset(mgr, parampath, param) == 0 && read_asset(mgr, modelpath, model) == 0 && load_pruned(param, model, class_map) == 0)
+        {
+            head_pruned = true;
+        }
+        else
+        {
+            // keep the subset as a decode-time filter on the full head
+            LOGD("class head pruning failed, loading full model");
+            yolo.clear();
+        }
+    }
 
-    yolo.load_param(mgr, parampath);
-    yolo.load_model(mgr, modelpath);
+    if (!head_pruned)
+    {
+        if (yolo.load_param(mgr, parampath) != 0 || yolo.load_model(mgr, modelpath) != 0)
+        {
+            LOGD("failed to load %s", parampath);
+            return -1;
+        }
+    }
 
     target_size = _target_size;
 
@@ -282,18 +1119,24 @@ int Yolo::load(AAssetManager* mgr, const char* modeltype, int _target_size, cons
     norm_vals[1] = _norm_vals[1];
     norm_vals[2] = _norm_vals[2];
 
+    std::vector<char> metadata;
+    if (read_asset(mgr, metapath, metadata) != 0)
+        metadata.clear();
+    load_metadata(metadata);
+
     return 0;
 }
+#endif // __ANDROID_API__ >= 9
 
-int Yolo::detect(const cv::Mat& input, std::vector<Object>& objects, float prob_threshold, float nms_threshold)
+int Yolo::infer(const cv::Mat& input, ncnn::Extractor& ex, float prob_threshold, std::vector<Object>& proposals) const
 {
-    objects.clear();
+    proposals.clear();
 
     const int img_w = input.cols;
     const int img_h = input.rows;
 
-    // Your model is fixed 640x640 (8400 points), so target_size MUST be 640
-    const int dst_size = target_size; // set to 640 in Java/C++ init
+    // Model input is square, 640 unless the metadata sidecar says otherwise
+    const int dst_size = target_size;
 
     // letterbox scale to dst_size x dst_size
     float scale = std::min(dst_size / (float)img_w, dst_size / (float)img_h);
@@ -316,10 +1159,12 @@ int Yolo::detect(const cv::Mat& input, std::vector<Object>& objects, float prob_
     LOGD("input: w=%d h=%d type=%d (CV_8UC3=%d CV_8UC4=%d)",
          img_w, img_h, input.type(), CV_8UC3, CV_8UC4);
 
+    // explicit stride, tiles are ROIs into a larger frame
     ncnn::Mat in = ncnn::Mat::from_pixels_resize(
             input.data,
             pixel_type,
             img_w, img_h,
+            (int)input.step[0],
             new_w, new_h
     );
 
@@ -337,9 +1182,6 @@ int Yolo::detect(const cv::Mat& input, std::vector<Object>& objects, float prob_
     const float norm_vals_ultra[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
     in_pad.substract_mean_normalize(mean_vals_ultra, norm_vals_ultra);
 
-    ncnn::Extractor ex = yolo.create_extractor();
-    ex.set_light_mode(true);
-
     ex.input("in0", in_pad);
 
     ncnn::Mat out;
@@ -348,8 +1190,38 @@ int Yolo::detect(const cv::Mat& input, std::vector<Object>& objects, float prob_
     LOGD("YOLO26 output: dims=%d, w=%d (proposals), h=%d (features), c=%d",
          out.dims, out.w, out.h, out.c);
 
+    generate_proposals_yolo26(out, prob_threshold, (int)class_names.size(), class_map, head_pruned, proposals, nullptr);
+
+    // Map from padded 640x640 coords back to input coords (unclamped)
+    for (size_t i = 0; i < proposals.size(); i++)
+    {
+        cv::Rect_<float>& rect = proposals[i].rect;
+        rect.x = (rect.x - (float)pad_left) / scale;
+        rect.y = (rect.y - (float)pad_top) / scale;
+        rect.width /= scale;
+        rect.height /= scale;
+    }
+
+    return 0;
+}
+
+ncnn::Extractor Yolo::create_extractor()
+{
+    // never with the thread count detect_tiled sets while it builds its extractors
+    ncnn::MutexLockGuard g(extractor_lock);
+    return yolo.create_extractor();
+}
+
+int Yolo::detect(const cv::Mat& input, std::vector<Object>& objects, float prob_threshold, float nms_threshold)
+{
+    objects.clear();
+
+    ncnn::Extractor ex = create_extractor();
+    ex.set_light_mode(true);
+
     std::vector<Object> proposals;
-    generate_proposals_yolo26(out, prob_threshold, proposals, nullptr);
+    if (infer(input, ex, prob_threshold, proposals) != 0)
+        return -1;
 
     if (proposals.empty())
         return 0;
@@ -375,34 +1247,144 @@ int Yolo::detect(const cv::Mat& input, std::vector<Object>& objects, float prob_
     for (int i = 0; i < count; i++)
     {
         objects[i] = proposals[picked[i]];
+        clamp_rect(objects[i].rect, input.cols, input.rows);
+    }
+
+    // sort by area desc (optional)
+    sort_by_area_desc(objects);
+
+    return 0;
+}
+
+int Yolo::detect_tiled(const cv::Mat& input, std::vector<Object>& objects, int tile_size, float overlap, int num_workers,
+                       float prob_threshold, float nms_threshold, YoloTileStats* stats)
+{
+    objects.clear();
+
+    const double start_time = ncnn::get_current_time();
+
+    const int img_w = input.cols;
+    const int img_h = input.rows;
 
-        // Map from padded 640x640 coords back to original image coords
-        float x0 = (objects[i].rect.x - (float)pad_left) / scale;
-        float y0 = (objects[i].rect.y - (float)pad_top) / scale;
-        float x1 = (objects[i].rect.x + objects[i].rect.width  - (float)pad_left) / scale;
-        float y1 = (objects[i].rect.y + objects[i].rect.height - (float)pad_top) / scale;
+    if (tile_size <= 0)
+        tile_size = target_size;
+    overlap = std::max(std::min(overlap, 0.5f), 0.f);
 
-        x0 = std::max(std::min(x0, (float)(img_w - 1)), 0.f);
-        y0 = std::max(std::min(y0, (float)(img_h - 1)), 0.f);
-        x1 = std::max(std::min(x1, (float)(img_w - 1)), 0.f);
-        y1 = std::max(std::min(y1, (float)(img_h - 1)), 0.f);
+    // full frame first: catches objects larger than the overlap that every tile cuts
+    std::vector<cv::Rect> tiles;
+    tiles.push_back(cv::Rect(0, 0, img_w, img_h));
+    if (img_w > tile_size || img_h > tile_size)
+    {
+        const int overlap_px = (int)(tile_size * overlap);
+        std::vector<int> xs;
+        std::vector<int> ys;
+        tile_origins(img_w, tile_size, overlap_px, xs);
+        tile_origins(img_h, tile_size, overlap_px, ys);
 
-        objects[i].rect.x = x0;
-        objects[i].rect.y = y0;
-        objects[i].rect.width  = x1 - x0;
-        objects[i].rect.height = y1 - y0;
+        for (size_t y = 0; y < ys.size(); y++)
+        {
+            for (size_t x = 0; x < xs.size(); x++)
+            {
+                tiles.push_back(cv::Rect(xs[x], ys[y], std::min(tile_size, img_w), std::min(tile_size, img_h)));
+            }
+        }
     }
 
-    // sort by area desc (optional)
-    struct
+    const int num_tiles = (int)tiles.size();
+    num_workers = std::max(std::min(std::min(num_workers, (int)MAX_TILE_WORKERS), num_tiles), 1);
+    if (yolo.opt.use_vulkan_compute)
+        num_workers = 1;
+
+    // split the thread budget between workers, extractors copy the option at creation
+    // (this ncnn has no per-extractor thread count): the reduced value is only ever
+    // visible under extractor_lock, which every create_extractor call takes
+    // tile i always runs on worker i % num_workers, so each worker owns its allocators
+    std::vector<ncnn::Extractor> extractors;
+    extractors.reserve(num_tiles);
     {
-        bool operator()(const Object& a, const Object& b) const
+        ncnn::MutexLockGuard g(extractor_lock);
+
+        const int num_threads = yolo.opt.num_threads;
+        yolo.opt.num_threads = std::max(num_threads / num_workers, 1);
+
+        for (int i = 0; i < num_tiles; i++)
         {
-            return a.rect.area() > b.rect.area();
+            extractors.push_back(yolo.create_extractor());
+            extractors.back().set_light_mode(true);
+            extractors.back().set_blob_allocator(&tile_blob_allocators[i % num_workers]);
+            extractors.back().set_workspace_allocator(&tile_workspace_allocators[i % num_workers]);
         }
-    } objects_area_greater;
 
-    std::sort(objects.begin(), objects.end(), objects_area_greater);
+        yolo.opt.num_threads = num_threads;
+    }
+
+    std::vector<std::vector<Object> > tile_proposals(num_tiles);
+    std::vector<int> tile_ret(num_tiles, 0);
+
+    struct TileWorker
+    {
+        static void run(const Yolo* self, const cv::Mat* input, const std::vector<cv::Rect>* tiles, std::vector<ncnn::Extractor>* extractors,
+                        float prob_threshold, int worker, int num_workers,
+                        std::vector<std::vector<Object> >* tile_proposals, std::vector<int>* tile_ret)
+        {
+            for (int i = worker; i < (int)tiles->size(); i += num_workers)
+            {
+                const cv::Rect& tile = (*tiles)[i];
+                (*tile_ret)[i] = self->infer((*input)(tile), (*extractors)[i], prob_threshold, (*tile_proposals)[i]);
+                place_tile_proposals((*tile_proposals)[i], tile, input->cols, input->rows);
+            }
+        }
+    };
+
+    std::vector<std::thread> threads;
+    for (int w = 1; w < num_workers; w++)
+    {
+        threads.push_back(std::thread(TileWorker::run, this, &input, &tiles, &extractors, prob_threshold, w, num_workers,
+                                      &tile_proposals, &tile_ret));
+    }
+    TileWorker::run(this, &input, &tiles, &extractors, prob_threshold, 0, num_workers, &tile_proposals, &tile_ret);
+    for (size_t i = 0; i < threads.size(); i++)
+        threads[i].join();
+
+    std::vector<Object> proposals;
+    for (int i = 0; i < num_tiles; i++)
+    {
+        if (tile_ret[i] != 0)
+            return -1;
+        proposals.insert(proposals.end(), tile_proposals[i].begin(), tile_proposals[i].end());
+    }
+
+    if (!proposals.empty())
+    {
+        qsort_descent_inplace(proposals);
+
+        // cross-tile NMS, also drops the partial box a tile keeps next to the full one
+        std::vector<int> picked;
+        if (nms_threshold > 0.f)
+            merge_tiled_bboxes(proposals, picked, nms_threshold, TILE_MERGE_IOS);
+        else
+        {
+            picked.resize(proposals.size());
+            for (int i = 0; i < (int)proposals.size(); i++) picked[i] = i;
+        }
+
+        objects.resize(picked.size());
+        for (size_t i = 0; i < picked.size(); i++)
+            objects[i] = proposals[picked[i]];
+
+        sort_by_area_desc(objects);
+    }
+
+    const float elapsed = (float)(ncnn::get_current_time() - start_time);
+    LOGD("tiled detect: %d tiles on %d workers, %zu objects, %.2fms", num_tiles, num_workers, objects.size(), elapsed);
+
+    if (stats)
+    {
+        stats->num_tiles = num_tiles;
+        stats->num_workers = num_workers;
+        stats->elapsed_ms = elapsed;
+        stats->tiles_per_second = elapsed > 0.f ? num_tiles * 1000.f / elapsed : 0.f;
+    }
 
     return 0;
 }
@@ -427,7 +1409,7 @@ int Yolo::draw(cv::Mat& rgb, const std::vector<Object>& objects)
         cv::rectangle(rgb, obj.rect, color, 2);
 
         char text[256];
-        const char* label_name = (obj.label >= 0 && obj.label < 80) ? class_names[obj.label] : "unknown";
+        const char* label_name = get_class_name(obj.label);
         sprintf(text, "%s %.1f%%", label_name, obj.prob * 100);
 
         int baseLine = 0;
@@ -4,45 +4,106 @@
 #include <opencv2/core/core.hpp>
 #include <net.h>
 
+#include <string>
+#include <vector>
+
 struct Object {
     cv::Rect_<float> rect;
     int label;
     float prob;
 };
 
+// YOLO26n 配置, shared by the JNI glue and the host tools
+static const int YOLO26_TARGET_SIZE = 640;
+static const float YOLO26_MEAN_VALS[3] = {0.f, 0.f, 0.f};
+static const float YOLO26_NORM_VALS[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
+
+// CPU precision, GPU always runs fp32
+enum YoloPrecision {
+    PRECISION_FP32 = 0,
+    PRECISION_FP16_STORAGE = 1,     // fp16 weights and blobs, fp32 math
+    PRECISION_FP16_ARITHMETIC = 2,  // fp16 weights, blobs and math (ARMv8.2)
+    PRECISION_INT8 = 3              // <modeltype>-int8 quantized model, fp16 elsewhere
+};
+
+// ncnn runtime knobs, the defaults match a plain ncnn::Option on the big cores
+struct YoloOptions {
+    YoloOptions();
+
+    int num_threads;    // 0 = one per big core
+    int powersave;      // 0 = all cores, 1 = little, 2 = big
+    bool use_packing_layout;
+    bool use_winograd_convolution;
+    bool use_sgemm_convolution;
+    int precision;      // YoloPrecision
+};
+
+// detect_tiled timing, tiles include the full-frame pass
+struct YoloTileStats {
+    int num_tiles;
+    int num_workers;
+    float elapsed_ms;
+    float tiles_per_second;
+};
+
 class Yolo {
 public:
     Yolo();
     ~Yolo();
 
-    int load(const char* modeltype, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
-    int load(AAssetManager* mgr, const char* modeltype, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false);
+    // class_subset: class ids to keep, the classification head is pruned to these channels at load time
+    int load(const char* modeltype, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false,
+             const std::vector<int>& class_subset = std::vector<int>(), const YoloOptions& options = YoloOptions());
+#if __ANDROID_API__ >= 9
+    int load(AAssetManager* mgr, const char* modeltype, int target_size, const float* mean_vals, const float* norm_vals, bool use_gpu = false,
+             const std::vector<int>& class_subset = std::vector<int>(), const YoloOptions& options = YoloOptions());
+#endif // __ANDROID_API__ >= 9
 
     // default prob_threshold raised to cut noisy low-confidence boxes
     int detect(const cv::Mat& rgb, std::vector<Object>& objects, float prob_threshold = 0.50f, float nms_threshold = 0.45f);
 
+    // high-resolution frames: full-frame pass plus overlapping tiles, merged with cross-tile NMS
+    // tile_size: tile edge in image pixels, 0 = model input size (tiles are not downscaled)
+    // overlap: fraction of tile_size shared by neighbouring tiles
+    // num_workers: tiles run concurrently, each worker with its own allocators and a share of the threads
+    int detect_tiled(const cv::Mat& rgb, std::vector<Object>& objects, int tile_size = 0, float overlap = 0.2f, int num_workers = 2,
+                     float prob_threshold = 0.50f, float nms_threshold = 0.45f, YoloTileStats* stats = 0);
+
     int draw(cv::Mat& rgb, const std::vector<Object>& objects);
 
+    // class names from <modeltype>.metadata.yaml, COCO names if the model has no sidecar
+    // class count is 0 when unknown, the output blob decides then
+    int get_num_class() const { return (int)class_names.size(); }
+    const char* get_class_name(int label) const;
+
 private:
+    void apply_options(bool use_gpu, const YoloOptions& options);
+    int load_pruned(const std::vector<char>& param, const std::vector<char>& model, const std::vector<int>& class_subset);
+    void load_metadata(const std::vector<char>& text);
+    // letterbox + forward + decode, proposals in rgb coords, not clamped or NMS'ed
+    int infer(const cv::Mat& rgb, ncnn::Extractor& ex, float prob_threshold, std::vector<Object>& proposals) const;
+    // extractor with the full thread budget, see extractor_lock
+    ncnn::Extractor create_extractor();
+
+    static const int MAX_TILE_WORKERS = 4;
+
     ncnn::Net yolo;
     int target_size;
+    std::vector<std::string> class_names;
+    // selected class ids, sorted; empty means all classes
+    std::vector<int> class_map;
+    // true if the head was rewritten so that output row k is class_map[k]
+    bool head_pruned;
+    // pruned weights referenced by yolo, must outlive it
+    std::vector<unsigned char> model_data;
     float mean_vals[3];
     float norm_vals[3];
     ncnn::UnlockedPoolAllocator blob_pool_allocator;
     ncnn::PoolAllocator workspace_pool_allocator;
-};
-
-// COCO 80类名称
-static const char* class_names[] = {
-    "person", "bicycle", "car", "motorcycle", "airplane", "bus", "train", "truck", "boat", "traffic light",
-    "fire hydrant", "stop sign", "parking meter", "bench", "bird", "cat", "dog", "horse", "sheep", "cow",
-    "elephant", "bear", "zebra", "giraffe", "backpack", "umbrella", "handbag", "tie", "suitcase", "frisbee",
-    "skis", "snowboard", "sports ball", "kite", "baseball bat", "baseball glove", "skateboard", "surfboard",
-    "tennis racket", "bottle", "wine glass", "cup", "fork", "knife", "spoon", "bowl", "banana", "apple",
-    "sandwich", "orange", "broccoli", "carrot", "hot dog", "pizza", "donut", "cake", "chair", "couch",
-    "potted plant", "bed", "dining table", "toilet", "tv", "laptop", "mouse", "remote", "keyboard", "cell phone",
-    "microwave", "oven", "toaster", "sink", "refrigerator", "book", "clock", "vase", "scissors", "teddy bear",
-    "hair drier", "toothbrush"
+    ncnn::UnlockedPoolAllocator tile_blob_allocators[MAX_TILE_WORKERS];
+    ncnn::PoolAllocator tile_workspace_allocators[MAX_TILE_WORKERS];
+    // held while extractors are created: detect_tiled lowers yolo.opt.num_threads for its own
+    ncnn::Mutex extractor_lock;
 };
 
 #endif // YOLO_H
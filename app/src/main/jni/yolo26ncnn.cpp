@@ -8,8 +8,10 @@
 
 #include <platform.h>
 #include <benchmark.h>
+#include <cpu.h>
 
 #include "yolo.h"
+#include "upload_jpeg.h"
 
 #include <opencv2/core/core.hpp>
 #include <opencv2/imgproc/imgproc.hpp>
@@ -21,11 +23,6 @@
 static Yolo* g_yolo = 0;
 static ncnn::Mutex lock;
 
-// YOLO26n 配置
-static const int YOLO26_TARGET_SIZE = 640;
-static const float YOLO26_MEAN_VALS[3] = {0.f, 0.f, 0.f};
-static const float YOLO26_NORM_VALS[3] = {1 / 255.f, 1 / 255.f, 1 / 255.f};
-
 extern "C" {
 
 JNIEXPORT jint JNI_OnLoad(JavaVM* vm, void* reserved) {
@@ -41,17 +38,47 @@ JNIEXPORT void JNI_OnUnload(JavaVM* vm, void* reserved) {
     g_yolo = 0;
 }
 
-JNIEXPORT jboolean JNICALL Java_com_example_snapshop_Yolo26Ncnn_loadModel(JNIEnv* env, jobject thiz, jobject assetManager, jint modelid, jint useGpu) {
+// Yolo26Ncnn.RuntimeConfig -> YoloOptions, null keeps the defaults
+static YoloOptions options_from_java(JNIEnv* env, jobject config) {
+    YoloOptions options;
+    if (!config) {
+        return options;
+    }
+
+    jclass cfgCls = env->GetObjectClass(config);
+    options.num_threads = env->GetIntField(config, env->GetFieldID(cfgCls, "numThreads", "I"));
+    options.powersave = env->GetIntField(config, env->GetFieldID(cfgCls, "powersave", "I"));
+    options.use_packing_layout = env->GetBooleanField(config, env->GetFieldID(cfgCls, "packingLayout", "Z"));
+    options.use_winograd_convolution = env->GetBooleanField(config, env->GetFieldID(cfgCls, "winograd", "Z"));
+    options.use_sgemm_convolution = env->GetBooleanField(config, env->GetFieldID(cfgCls, "sgemm", "Z"));
+    options.precision = env->GetIntField(config, env->GetFieldID(cfgCls, "precision", "I"));
+    env->DeleteLocalRef(cfgCls);
+
+    return options;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_example_snapshop_Yolo26Ncnn_loadModel(JNIEnv* env, jobject thiz, jobject assetManager, jint modelid, jint useGpu, jintArray classSubset, jobject config) {
     if (modelid < 0 || modelid > 0) {
         return JNI_FALSE;
     }
 
     AAssetManager* mgr = AAssetManager_fromJava(env, assetManager);
 
+    // Optional class subset, the detection head is pruned to these classes
+    std::vector<int> class_subset;
+    if (classSubset) {
+        jsize count = env->GetArrayLength(classSubset);
+        class_subset.resize(count);
+        if (count > 0) {
+            env->GetIntArrayRegion(classSubset, 0, count, (jint*)class_subset.data());
+        }
+    }
+
     __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "loadModel %p", mgr);
 
     const char* modeltype = "yolo26n";
     bool use_gpu = (useGpu == 1);
+    YoloOptions options = options_from_java(env, config);
 
     {
         ncnn::MutexLockGuard g(lock);
@@ -67,44 +94,47 @@ JNIEXPORT jboolean JNICALL Java_com_example_snapshop_Yolo26Ncnn_loadModel(JNIEnv
         }
 
         const char* device_name = use_gpu ? "GPU (FP32)" : "CPU";
-        __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "Loading model: %s on %s", modeltype, device_name);
-        g_yolo->load(mgr, modeltype, YOLO26_TARGET_SIZE, YOLO26_MEAN_VALS, YOLO26_NORM_VALS, use_gpu);
+        __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "Loading model: %s on %s, %zu classes selected, threads=%d powersave=%d pack=%d winograd=%d sgemm=%d precision=%d",
+                            modeltype, device_name, class_subset.size(), options.num_threads, options.powersave,
+                            options.use_packing_layout, options.use_winograd_convolution, options.use_sgemm_convolution,
+                            options.precision);
+        if (g_yolo->load(mgr, modeltype, YOLO26_TARGET_SIZE, YOLO26_MEAN_VALS, YOLO26_NORM_VALS, use_gpu, class_subset, options) != 0) {
+            __android_log_print(ANDROID_LOG_WARN, "Yolo26Ncnn", "Model load failed");
+            return JNI_FALSE;
+        }
         __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "Model loaded successfully");
     }
 
     return JNI_TRUE;
 }
 
-JNIEXPORT jobjectArray JNICALL Java_com_example_snapshop_Yolo26Ncnn_detect(JNIEnv* env, jobject thiz, jobject bitmap) {
-    double start_time = ncnn::get_current_time();
-
+// RGBA_8888 Bitmap -> BGR (model expects BGR input), false for other formats
+static bool bitmap_to_bgr(JNIEnv* env, jobject bitmap, cv::Mat& bgr) {
     AndroidBitmapInfo info;
     AndroidBitmap_getInfo(env, bitmap, &info);
     if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888)
-        return NULL;
+        return false;
 
     // Lock bitmap pixels
     void* indata;
     AndroidBitmap_lockPixels(env, bitmap, &indata);
 
-    // RGBA to BGR (model expects BGR input)
-    cv::Mat rgba(info.height, info.width, CV_8UC4, indata);
-    cv::Mat bgr;
+    cv::Mat rgba(info.height, info.width, CV_8UC4, indata, info.stride);
     cv::cvtColor(rgba, bgr, cv::COLOR_RGBA2BGR);
 
     AndroidBitmap_unlockPixels(env, bitmap);
+    return true;
+}
 
-    // Detection
-    std::vector<Object> objects;
-    {
-        ncnn::MutexLockGuard g(lock);
-
-        if (g_yolo) {
-            g_yolo->detect(bgr, objects);
-        }
+// Label names are resolved under the lock since a reload replaces them
+static void resolve_label_names(const std::vector<Object>& objects, std::vector<std::string>& label_names) {
+    label_names.resize(objects.size());
+    for (size_t i = 0; i < objects.size(); i++) {
+        label_names[i] = g_yolo->get_class_name(objects[i].label);
     }
+}
 
-    // Create result array
+static jobjectArray to_java_objects(JNIEnv* env, jobject thiz, const std::vector<Object>& objects, const std::vector<std::string>& label_names) {
     jclass objCls = env->FindClass("com/example/snapshop/Yolo26Ncnn$Obj");
     jmethodID objInit = env->GetMethodID(objCls, "<init>", "(Lcom/example/snapshop/Yolo26Ncnn;)V");
     jfieldID xId = env->GetFieldID(objCls, "x", "F");
@@ -124,19 +154,161 @@ JNIEXPORT jobjectArray JNICALL Java_com_example_snapshop_Yolo26Ncnn_detect(JNIEn
         env->SetFloatField(jObj, wId, objects[i].rect.width);
         env->SetFloatField(jObj, hId, objects[i].rect.height);
 
-        // 边界检查防止越界访问
-        int label = objects[i].label;
-        const char* label_name = (label >= 0 && label < 80) ? class_names[label] : "unknown";
-        env->SetObjectField(jObj, labelId, env->NewStringUTF(label_name));
+        jstring jLabel = env->NewStringUTF(label_names[i].c_str());
+        env->SetObjectField(jObj, labelId, jLabel);
         env->SetFloatField(jObj, probId, objects[i].prob);
 
         env->SetObjectArrayElement(jObjArray, i, jObj);
+
+        // tiled results can exceed the local reference table
+        env->DeleteLocalRef(jLabel);
+        env->DeleteLocalRef(jObj);
     }
 
+    env->DeleteLocalRef(objCls);
+    return jObjArray;
+}
+
+JNIEXPORT jobjectArray JNICALL Java_com_example_snapshop_Yolo26Ncnn_detect(JNIEnv* env, jobject thiz, jobject bitmap) {
+    double start_time = ncnn::get_current_time();
+
+    cv::Mat bgr;
+    if (!bitmap_to_bgr(env, bitmap, bgr))
+        return NULL;
+
+    std::vector<Object> objects;
+    std::vector<std::string> label_names;
+    {
+        ncnn::MutexLockGuard g(lock);
+
+        if (g_yolo) {
+            g_yolo->detect(bgr, objects);
+            resolve_label_names(objects, label_names);
+        }
+    }
+
+    jobjectArray jObjArray = to_java_objects(env, thiz, objects, label_names);
+
     double elasped = ncnn::get_current_time() - start_time;
     __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "%.2fms detect", elasped);
 
     return jObjArray;
 }
 
+JNIEXPORT jobjectArray JNICALL Java_com_example_snapshop_Yolo26Ncnn_detectTiled(JNIEnv* env, jobject thiz, jobject bitmap, jint tileSize, jfloat overlap, jint workers, jobject stats) {
+    cv::Mat bgr;
+    if (!bitmap_to_bgr(env, bitmap, bgr))
+        return NULL;
+
+    std::vector<Object> objects;
+    std::vector<std::string> label_names;
+    YoloTileStats tile_stats = {0, 0, 0.f, 0.f};
+    {
+        ncnn::MutexLockGuard g(lock);
+
+        if (g_yolo) {
+            g_yolo->detect_tiled(bgr, objects, tileSize, overlap, workers, 0.50f, 0.45f, &tile_stats);
+            resolve_label_names(objects, label_names);
+        }
+    }
+
+    // Optional Yolo26Ncnn.TileStats out-parameter
+    if (stats) {
+        jclass statsCls = env->GetObjectClass(stats);
+        env->SetIntField(stats, env->GetFieldID(statsCls, "tiles", "I"), tile_stats.num_tiles);
+        env->SetIntField(stats, env->GetFieldID(statsCls, "workers", "I"), tile_stats.num_workers);
+        env->SetFloatField(stats, env->GetFieldID(statsCls, "elapsedMs", "F"), tile_stats.elapsed_ms);
+        env->SetFloatField(stats, env->GetFieldID(statsCls, "tilesPerSecond", "F"), tile_stats.tiles_per_second);
+        env->DeleteLocalRef(statsCls);
+    }
+
+    __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "%.2fms detectTiled, %d tiles, %.1f tiles/s",
+                        tile_stats.elapsed_ms, tile_stats.num_tiles, tile_stats.tiles_per_second);
+
+    return to_java_objects(env, thiz, objects, label_names);
+}
+
+JNIEXPORT jfloatArray JNICALL Java_com_example_snapshop_Yolo26Ncnn_benchmark(JNIEnv* env, jobject thiz, jint warmup, jint loops) {
+    if (loops <= 0) {
+        return NULL;
+    }
+
+    // Fixed synthetic camera-sized frame so every configuration sees the same input
+    cv::Mat bgr(480, 640, CV_8UC3);
+    for (int y = 0; y < bgr.rows; y++) {
+        unsigned char* p = bgr.ptr<unsigned char>(y);
+        for (int x = 0; x < bgr.cols * 3; x++) {
+            p[x] = (unsigned char)((x * 7 + y * 13 + (x * y) % 31) & 0xff);
+        }
+    }
+
+    std::vector<float> times(loops);
+    {
+        ncnn::MutexLockGuard g(lock);
+
+        if (!g_yolo) {
+            return NULL;
+        }
+
+        std::vector<Object> objects;
+        for (int i = 0; i < warmup; i++) {
+            g_yolo->detect(bgr, objects);
+        }
+
+        for (int i = 0; i < loops; i++) {
+            double t0 = ncnn::get_current_time();
+            g_yolo->detect(bgr, objects);
+            times[i] = (float)(ncnn::get_current_time() - t0);
+        }
+    }
+
+    jfloatArray result = env->NewFloatArray(loops);
+    env->SetFloatArrayRegion(result, 0, loops, times.data());
+    return result;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_example_snapshop_Yolo26Ncnn_encodeUploadJpeg(JNIEnv* env, jclass clazz, jbyteArray nv21, jint width, jint height, jint rotation, jboolean mirror, jintArray crop, jint maxSize, jint quality) {
+    if (!nv21 || width <= 0 || height <= 0 || env->GetArrayLength(nv21) < width * height * 3 / 2) {
+        return NULL;
+    }
+    if (crop && env->GetArrayLength(crop) < 4) {
+        return NULL;
+    }
+
+    double start_time = ncnn::get_current_time();
+
+    int rect[4];
+    if (crop) {
+        env->GetIntArrayRegion(crop, 0, 4, rect);
+    }
+
+    std::vector<unsigned char> jpeg;
+    jbyte* data = env->GetByteArrayElements(nv21, NULL);
+    int ret = encode_upload_jpeg((const unsigned char*)data, width, height, rotation, mirror, crop ? rect : NULL,
+                                 maxSize, quality, jpeg);
+    env->ReleaseByteArrayElements(nv21, data, JNI_ABORT);
+
+    if (ret != 0) {
+        return NULL;
+    }
+
+    jbyteArray result = env->NewByteArray((jsize)jpeg.size());
+    env->SetByteArrayRegion(result, 0, (jsize)jpeg.size(), (const jbyte*)jpeg.data());
+
+    double elasped = ncnn::get_current_time() - start_time;
+    __android_log_print(ANDROID_LOG_DEBUG, "Yolo26Ncnn", "%.2fms upload jpeg %d bytes", elasped, (int)jpeg.size());
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_example_snapshop_Yolo26Ncnn_getCpuCount(JNIEnv* env, jclass clazz, jint powersave) {
+    if (powersave == 1) {
+        return ncnn::get_little_cpu_count();
+    }
+    if (powersave == 2) {
+        return ncnn::get_big_cpu_count();
+    }
+    return ncnn::get_cpu_count();
+}
+
 }
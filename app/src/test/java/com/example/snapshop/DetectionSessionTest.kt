@@ -0,0 +1,122 @@
+package com.example.snapshop
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import kotlinx.coroutines.withTimeoutOrNull
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DetectionSessionTest {
+
+    // no boxes: Yolo26Ncnn.Obj needs the native library, the flows only look at sequence numbers
+    private val noObjects = arrayOf<Yolo26Ncnn.Obj>()
+
+    private val bus = DetectionBus()
+    private val session = DetectionSession(bus)
+
+    @After
+    fun close() {
+        session.close()
+    }
+
+    private fun publish(count: Int) {
+        repeat(count) { bus.publish(noObjects, 640, 480, it * 1_000_000L, 20) }
+    }
+
+    /**
+     * Collect [flow] into a channel, the collector waits for [release] after the first frame.
+     * Unconfined start: the flow subscribes to the bus before this returns.
+     */
+    private fun CoroutineScope.collectHeld(
+        flow: Flow<DetectionSession.DetectionFrame>,
+        release: CompletableDeferred<Unit>
+    ): Channel<DetectionSession.DetectionFrame> {
+        val received = Channel<DetectionSession.DetectionFrame>(Channel.UNLIMITED)
+        launch(Dispatchers.Unconfined, CoroutineStart.UNDISPATCHED) {
+            flow.collect {
+                received.send(it)
+                release.await()
+            }
+        }
+        return received
+    }
+
+    @Test
+    fun frameCarriesSnapshot() = runBlocking {
+        val received = collectHeld(session.frames(), CompletableDeferred(Unit))
+        bus.publish(noObjects, 640, 480, 123L, 42)
+        val frame = withTimeout(1000) { received.receive() }
+        assertEquals(1L, frame.sequence)
+        assertEquals(123L, frame.frameTimestampNs)
+        assertEquals(640, frame.imageWidth)
+        assertEquals(480, frame.imageHeight)
+        assertEquals(42L, frame.inferenceMs)
+        assertTrue(frame.boxes.isEmpty())
+        coroutineContext.cancelChildren()
+    }
+
+    @Test
+    fun framesConflatedForSlowCollector() = runBlocking {
+        val release = CompletableDeferred<Unit>()
+        val received = collectHeld(session.frames(), release)
+        // the collector is stuck on the first frame, publishing never waits for it
+        publish(100)
+        assertEquals(1L, withTimeout(1000) { received.receive() }.sequence)
+        release.complete(Unit)
+        assertEquals(100L, withTimeout(1000) { received.receive() }.sequence)
+        assertNull(withTimeoutOrNull(200) { received.receive() })
+        coroutineContext.cancelChildren()
+    }
+
+    @Test
+    fun bufferedKeepsTheLatestFrames() = runBlocking {
+        val release = CompletableDeferred<Unit>()
+        val received = collectHeld(session.buffered(3), release)
+        publish(10)
+        assertEquals(1L, withTimeout(1000) { received.receive() }.sequence)
+        release.complete(Unit)
+        val rest = List(3) { withTimeout(1000) { received.receive() }.sequence }
+        assertEquals(listOf(8L, 9L, 10L), rest)
+        assertNull(withTimeoutOrNull(200) { received.receive() })
+        coroutineContext.cancelChildren()
+    }
+
+    @Test
+    fun sampledEmitsAtMostOncePerPeriod() = runBlocking {
+        val received = collectHeld(session.sampled(200), CompletableDeferred(Unit))
+        // ~1 s of frames every 10 ms
+        launch(Dispatchers.Default) {
+            repeat(100) {
+                bus.publish(noObjects, 640, 480, 0, 20)
+                Thread.sleep(10)
+            }
+        }.join()
+        delay(300)
+        val sequences = ArrayList<Long>()
+        while (true) sequences.add(received.tryReceive().getOrNull()?.sequence ?: break)
+        assertTrue("$sequences", sequences.size in 3..7)
+        assertEquals(sequences.sorted(), sequences)
+        coroutineContext.cancelChildren()
+    }
+
+    @Test
+    fun closedSessionEmitsNothing() = runBlocking {
+        val received = collectHeld(session.frames(), CompletableDeferred(Unit))
+        session.close()
+        publish(5)
+        assertNull(withTimeoutOrNull(200) { received.receive() })
+        coroutineContext.cancelChildren()
+    }
+}
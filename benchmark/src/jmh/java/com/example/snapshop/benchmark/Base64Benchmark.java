@@ -0,0 +1,47 @@
+package com.example.snapshop.benchmark;
+
+import com.example.snapshop.core.Base64Encoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64 of an upload JPEG. 24 KB is a typical ≤384px frame at quality 80,
+ * 200 KB a full 1280px frame. java.util.Base64 is the JDK reference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Base64Benchmark {
+
+    @Param({"24576", "204800"})
+    public int size;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setup() {
+        jpeg = new byte[size];
+        new Random(42).nextBytes(jpeg);
+    }
+
+    @Benchmark
+    public String encoder() {
+        return Base64Encoder.encodeToString(jpeg);
+    }
+
+    @Benchmark
+    public String jdk() {
+        return Base64.getEncoder().encodeToString(jpeg);
+    }
+}
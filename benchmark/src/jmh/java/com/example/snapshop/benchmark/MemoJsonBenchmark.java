@@ -0,0 +1,70 @@
+package com.example.snapshop.benchmark;
+
+import com.example.snapshop.core.MemoJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-chain memo JSON for 3 detections (the truncated memo) and 10
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MemoJsonBenchmark {
+
+    @Param({"3", "10"})
+    public int count;
+
+    private List<MemoJson.Detection> detections;
+
+    @Setup
+    public void setup() {
+        String[] labels = {"person", "cup", "cell phone", "laptop", "bottle"};
+        detections = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            detections.add(new Box(labels[i % labels.length], 0.5f + i * 0.037f,
+                    10 + i * 31, 20 + i * 17, 100 + i * 5, 200 - i * 7));
+        }
+    }
+
+    @Benchmark
+    public String build() {
+        return MemoJson.build(detections);
+    }
+
+    private static final class Box implements MemoJson.Detection {
+        private final String label;
+        private final float confidence;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+
+        Box(String label, float confidence, float x, float y, float width, float height) {
+            this.label = label;
+            this.confidence = confidence;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override public String getLabel() { return label; }
+        @Override public float getConfidence() { return confidence; }
+        @Override public float getX() { return x; }
+        @Override public float getY() { return y; }
+        @Override public float getWidth() { return width; }
+        @Override public float getHeight() { return height; }
+    }
+}
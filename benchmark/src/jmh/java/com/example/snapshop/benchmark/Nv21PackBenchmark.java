@@ -0,0 +1,81 @@
+package com.example.snapshop.benchmark;
+
+import com.example.snapshop.core.Nv21Packer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YUV_420_888 → NV21 for one 640x480 analysis frame.
+ *
+ * semiplanar: the common CameraX layout (rowStride == width, VU already interleaved), bulk copies
+ * planar:     I420-style planes (pixelStride 1) with row padding, the per-pixel loops
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Nv21PackBenchmark {
+
+    @Param({"semiplanar", "planar"})
+    public String layout;
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private ByteBuffer y;
+    private ByteBuffer u;
+    private ByteBuffer v;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+    private byte[] out;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        if (layout.equals("semiplanar")) {
+            yRowStride = WIDTH;
+            uvRowStride = WIDTH;
+            uvPixelStride = 2;
+            // U and V planes overlap one byte apart, each a full interleaved plane minus one byte
+            ByteBuffer uv = direct(random, WIDTH * HEIGHT / 2);
+            v = uv.duplicate();
+            v.limit(WIDTH * HEIGHT / 2 - 1);
+            uv.position(1);
+            u = uv.slice();
+        } else {
+            yRowStride = WIDTH + 64;
+            uvRowStride = WIDTH / 2 + 32;
+            uvPixelStride = 1;
+            u = direct(random, uvRowStride * (HEIGHT / 2));
+            v = direct(random, uvRowStride * (HEIGHT / 2));
+        }
+        y = direct(random, yRowStride * HEIGHT);
+        out = new byte[Nv21Packer.nv21Size(WIDTH, HEIGHT)];
+    }
+
+    private static ByteBuffer direct(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] pack() {
+        Nv21Packer.pack(y, yRowStride, 1, u, v, uvRowStride, uvPixelStride, WIDTH, HEIGHT, out);
+        return out;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.snapshop.benchmark;
+
+import com.example.snapshop.core.Base64Encoder;
+import com.example.snapshop.core.OpenRouterJson;
+import com.example.snapshop.core.OpenRouterRequestWriter;
+import com.example.snapshop.core.ProductInfo;
+import com.example.snapshop.core.ProductStreamParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenRouter request body with a ≤384px image (built as a String from the
+ * JPEG, or streamed by OpenRouterRequestWriter), and parsing of a typical
+ * identification response (fenced product JSON plus usage), whole or as
+ * streamed events
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpenRouterJsonBenchmark {
+
+    private String prompt;
+    private byte[] jpeg;
+    private String base64Image;
+    private OpenRouterRequestWriter writer;
+    private String response;
+    private List<String> streamEvents;
+
+    @Setup
+    public void setup() {
+        // same size and shape as the identification prompt: ~3.5 KB, newlines and quotes to escape
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 3500) {
+            sb.append("- Color: use the EXACT color you observe (e.g. \"desert titanium\", NOT \"gold\")\n");
+        }
+        prompt = sb.toString();
+
+        jpeg = new byte[24 * 1024];
+        new Random(42).nextBytes(jpeg);
+        base64Image = Base64Encoder.encodeToString(jpeg);
+        writer = new OpenRouterRequestWriter(prompt);
+
+        String product = "```json\\n{\\\"brand\\\": \\\"Apple\\\", \\\"model\\\": \\\"\\\", \\\"category\\\": \\\"smartphone\\\", "
+                + "\\\"key_attributes\\\": [\\\"desert titanium\\\", \\\"triple camera diagonal layout\\\", \\\"titanium frame\\\", "
+                + "\\\"USB-C\\\", \\\"large/max size\\\"], "
+                + "\\\"searchQuery\\\": \\\"Apple iPhone Pro Max Desert Titanium triple camera\\\", "
+                + "\\\"confidence\\\": 0.78, \\\"notes\\\": \\\"generation uncertain\\\"}\\n```";
+        response = "{\"id\":\"gen-1\",\"model\":\"google/gemini-2.5-flash-lite\",\"object\":\"chat.completion\","
+                + "\"choices\":[{\"index\":0,\"finish_reason\":\"stop\",\"message\":{\"role\":\"assistant\",\"content\":\""
+                + product + "\"}}],"
+                + "\"usage\":{\"prompt_tokens\":1143,\"completion_tokens\":96,\"total_tokens\":1239}}";
+
+        // the same content as SSE data, a few characters per delta like the real stream
+        streamEvents = new ArrayList<>();
+        for (int i = 0; i < product.length(); ) {
+            int end = Math.min(product.length(), i + 12);
+            // don't split an escape sequence across events
+            while (end < product.length() && product.charAt(end - 1) == '\\') end++;
+            streamEvents.add("{\"id\":\"gen-1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\""
+                    + product.substring(i, end) + "\"}}]}");
+            i = end;
+        }
+    }
+
+    @Benchmark
+    public String buildRequestBody() {
+        return OpenRouterJson.buildRequestBody(prompt, base64Image, "google/gemini-2.5-flash-lite");
+    }
+
+    /** What an upload used to cost: base64 String, JSON String, then the UTF-8 body */
+    @Benchmark
+    public byte[] buildRequestBytesFromJpeg() {
+        String base64 = Base64Encoder.encodeToString(jpeg);
+        return OpenRouterJson.buildRequestBody(prompt, base64, "google/gemini-2.5-flash-lite", true)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The same body streamed to the connection, here a sink that drops it */
+    @Benchmark
+    public long writeRequest() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        writer.writeTo(out, "google/gemini-2.5-flash-lite", jpeg, 0, jpeg.length);
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    @Benchmark
+    public OpenRouterJson.Parsed parseResponse() {
+        return OpenRouterJson.parseResponse(response, 1);
+    }
+
+    @Benchmark
+    public ProductInfo parseStreamed() {
+        ProductStreamParser parser = new ProductStreamParser(1);
+        for (String event : streamEvents) {
+            String content = OpenRouterJson.parseStreamChunk(event).getContent();
+            if (content != null) parser.feed(content);
+        }
+        return parser.snapshot();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.snapshop.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Standard base64 with padding and no line wrapping, the same output as
+ * android.util.Base64.NO_WRAP. java.util.Base64 needs API 26, minSdk is 24.
+ */
+public final class Base64Encoder {
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private Base64Encoder() {
+    }
+
+    public static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Encode input[offset, offset + length) into out at outOffset, returns the bytes written
+     */
+    public static int encode(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        int in = offset;
+        int end = offset + length - length % 3;
+        int o = outOffset;
+
+        while (in < end) {
+            int bits = (input[in] & 0xff) << 16 | (input[in + 1] & 0xff) << 8 | (input[in + 2] & 0xff);
+            in += 3;
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+
+        int remaining = offset + length - in;
+        if (remaining == 1) {
+            int bits = (input[in] & 0xff) << 16;
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = '=';
+            out[o++] = '=';
+        } else if (remaining == 2) {
+            int bits = (input[in] & 0xff) << 16 | (input[in + 1] & 0xff) << 8;
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = '=';
+        }
+
+        return o - outOffset;
+    }
+
+    /**
+     * Encode input[offset, offset + length) straight into out, through a 4 KB
+     * buffer instead of a full-size copy
+     */
+    public static void encodeTo(byte[] input, int offset, int length, OutputStream out) throws IOException {
+        // a multiple of 3 input bytes per chunk: padding only at the very end
+        final int chunk = 3 * 1024;
+        byte[] buffer = new byte[encodedLength(chunk)];
+        int end = offset + length;
+        for (int in = offset; in < end; in += chunk) {
+            int n = Math.min(chunk, end - in);
+            out.write(buffer, 0, encode(input, in, n, buffer, 0));
+        }
+    }
+
+    public static String encodeToString(byte[] input, int offset, int length) {
+        byte[] out = new byte[encodedLength(length)];
+        encode(input, offset, length, out, 0);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    public static String encodeToString(byte[] input) {
+        return encodeToString(input, 0, input.length);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.snapshop.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 planes → NV21 (Y plane, then interleaved VU).
+ *
+ * Plain buffers and strides, no ImageProxy, so the copy loops can be
+ * benchmarked off-device. Buffer positions are not modified.
+ */
+public final class Nv21Packer {
+
+    private Nv21Packer() {
+    }
+
+    public static int nv21Size(int width, int height) {
+        return width * height + (width * height / 2);
+    }
+
+    /**
+     * Pack into out (at least nv21Size bytes)
+     */
+    public static void pack(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                            ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                            int width, int height, byte[] out) {
+        // Copy Y plane
+        if (yRowStride == width && yPixelStride == 1) {
+            // Fast path: contiguous
+            ByteBuffer y = yBuffer.duplicate();
+            y.position(0);
+            y.get(out, 0, width * height);
+        } else {
+            int yPos = 0;
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    out[yPos++] = yBuffer.get(row * yRowStride + col * yPixelStride);
+                }
+            }
+        }
+
+        // Copy UV planes (NV21: VUVU...)
+        int uvHeight = height / 2;
+        int uvWidth = width / 2;
+        int uvPos = width * height;
+
+        if (uvPixelStride == 2 && uvRowStride == width) {
+            // Fast path: V plane is already interleaved VUVU
+            ByteBuffer v = vBuffer.duplicate();
+            v.position(0);
+            int uvSize = Math.min(v.remaining(), width * height / 2);
+            v.get(out, uvPos, uvSize);
+        } else {
+            // U and V are separate or strided planes, interleave by hand
+            for (int row = 0; row < uvHeight; row++) {
+                for (int col = 0; col < uvWidth; col++) {
+                    int uvIndex = row * uvRowStride + col * uvPixelStride;
+                    // NV21: V first, U second
+                    out[uvPos++] = vBuffer.get(uvIndex);  // V
+                    out[uvPos++] = uBuffer.get(uvIndex);  // U
+                }
+            }
+        }
+    }
+}
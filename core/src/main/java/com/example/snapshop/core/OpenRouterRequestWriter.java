@@ -0,0 +1,52 @@
+package com.example.snapshop.core;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streamed OpenRouter identification request body
+ *
+ * Writes the same JSON as OpenRouterJson.buildRequestBody(prompt, base64, model, true)
+ * straight to an OutputStream: the escaped prompt is serialized once per
+ * writer and the JPEG is base64-encoded into the stream chunk by chunk, so no
+ * base64 String, JSONObject or body String copy of the image is ever built.
+ * The length is known up front (no chunked upload) and writeTo can be
+ * repeated, so one writer and one JPEG serve every tier and retry.
+ */
+public final class OpenRouterRequestWriter {
+
+    private static final byte[] TAIL = "\"}}]}]}".getBytes(StandardCharsets.US_ASCII);
+
+    // everything between the model and the base64 image data
+    private final byte[] promptPart;
+
+    public OpenRouterRequestWriter(String prompt) {
+        String part = ",\"max_tokens\":500,\"temperature\":0.1,\"stream\":true,"
+                + "\"messages\":[{\"role\":\"user\",\"content\":["
+                + "{\"type\":\"text\",\"text\":" + JSONObject.quote(prompt) + "},"
+                + "{\"type\":\"image_url\",\"image_url\":{\"url\":\"data:image/jpeg;base64,";
+        promptPart = part.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Exact body size in bytes for a JPEG of jpegLength bytes */
+    public long contentLength(String model, int jpegLength) {
+        return modelPart(model).length + promptPart.length + (long) Base64Encoder.encodedLength(jpegLength) + TAIL.length;
+    }
+
+    /**
+     * Write the request for jpeg[offset, offset + length) to out
+     */
+    public void writeTo(OutputStream out, String model, byte[] jpeg, int offset, int length) throws IOException {
+        out.write(modelPart(model));
+        out.write(promptPart);
+        Base64Encoder.encodeTo(jpeg, offset, length, out);
+        out.write(TAIL);
+    }
+
+    private static byte[] modelPart(String model) {
+        return ("{\"model\":" + JSONObject.quote(model)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.snapshop.core
+
+/**
+ * When Tier 2 is started relative to Tier 1
+ */
+enum class CascadeMode {
+    /** Tier 2 only after Tier 1 came back uncertain: cheapest, slowest when upgrading */
+    SERIAL,
+    /** Both tiers at once; the first acceptable answer wins and the other call is cancelled */
+    PARALLEL,
+    /** Tier 1 alone, plus Tier 2 once Tier 1 runs past its usual latency; then as PARALLEL */
+    HEDGED;
+
+    companion object {
+        /** Mode named [name] (any case), SERIAL when unknown */
+        @JvmStatic
+        fun parse(name: String?): CascadeMode {
+            return values().firstOrNull { it.name.equals(name, ignoreCase = true) } ?: SERIAL
+        }
+    }
+}
+
+/**
+ * Cascade policy. HEDGED starts Tier 2 at [hedgePercentile] of recent Tier 1
+ * latencies, or after [defaultHedgeDelayMs] until [minHedgeSamples] were observed.
+ */
+data class CascadePolicy(
+    val mode: CascadeMode,
+    val hedgePercentile: Double = 0.9,
+    val minHedgeSamples: Int = 10,
+    val defaultHedgeDelayMs: Long = 4000
+)
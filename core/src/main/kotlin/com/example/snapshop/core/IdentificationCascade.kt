@@ -0,0 +1,601 @@
+package com.example.snapshop.core
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.selects.select
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withTimeoutOrNull
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.MediaType
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody
+import okhttp3.Response
+import okio.BufferedSink
+import java.io.IOException
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Tiered OpenRouter identification of one upload JPEG
+ *
+ *   Tier 1: [tier1Model] (cheap, fast, good for most products)
+ *   Tier 2: [tier2Model] for uncertain cases, per [CascadePolicy]
+ *
+ * Responses are streamed: the product JSON is parsed as it arrives, the caller
+ * hears about searchQuery / brand / confidence as soon as they are complete,
+ * and the stream is closed once only the "notes" field is left.
+ *
+ * No Android dependencies: LlmVisionHelper runs it against openrouter.ai, the
+ * :loadtest driver against the local mock server, so both exercise the same
+ * cascade, streaming and timeouts. [url] is the chat completions endpoint.
+ */
+class IdentificationCascade(
+    private val client: OkHttpClient,
+    private val url: String,
+    private val apiKey: String,
+    private val tier1Model: String = DEFAULT_TIER1_MODEL,
+    private val tier2Model: String,
+    private val timeoutMs: Long = 60000,
+    private val log: Log = Log.NONE
+) {
+
+    companion object {
+        const val DEFAULT_URL = "https://openrouter.ai/api/v1/chat/completions"
+
+        // Tier 1: cheap default model for most identifications
+        const val DEFAULT_TIER1_MODEL = "google/gemini-2.5-flash-lite"
+
+        // Confidence threshold — below this, auto-upgrade to Tier 2
+        const val CONFIDENCE_THRESHOLD = 0.6
+
+        // Gemini bills an upload with both sides ≤384px as 258 tokens
+        private const val IMAGE_TOKENS = 258
+
+        private val JSON = "application/json".toMediaType()
+    }
+
+    /**
+     * Log sink (android.util.Log in the app, stderr or nothing on the JVM)
+     */
+    interface Log {
+        fun d(message: String)
+        fun w(message: String)
+        fun e(message: String, error: Throwable? = null)
+
+        companion object {
+            @JvmField
+            val NONE = object : Log {
+                override fun d(message: String) {}
+                override fun w(message: String) {}
+                override fun e(message: String, error: Throwable?) {}
+            }
+        }
+    }
+
+    /**
+     * Hears every tier call end, on the calling coroutine
+     */
+    interface TierListener {
+        /**
+         * Tier [tier] ([model]) ended after [elapsedMs]: [result] is null when the
+         * call failed or, [cancelled], the cascade no longer needed it.
+         * [tokens] it billed, estimated when the stream closed before the usage event.
+         */
+        fun onTierDone(tier: Int, model: String, elapsedMs: Long, result: ProductInfo?, cancelled: Boolean, tokens: Int)
+    }
+
+    @Volatile
+    var tierListener: TierListener? = null
+
+    // Tier 1 call durations for the hedge deadline; failed and cancelled calls count
+    // as lower bounds, a deadline from successes only would hide the slow tail it cuts
+    private val tier1Latency = LatencyWindow()
+
+    // Since start: what running Tier 2 early bought and cost
+    private var identifications = 0
+    private var tier2Calls = 0
+    private var tier2Extra = 0  // started, but Tier 1 was good: serial would not have paid for them
+    private var savedMs = 0L    // Tier 2 head start on identifications that needed Tier 2
+    private val tierTokens = LongArray(2)
+    private var tier2ExtraTokens = 0L
+
+    // Prompt tokens last reported per tier, to estimate calls closed before the usage event
+    // (0 until one reported: estimated from the prompt text and the image)
+    private val promptTokens = IntArray(2)
+    private var estimatedCalls = 0
+
+    /**
+     * A tier call's answer and when it ended, in ms since the identification started
+     */
+    private class TierOutcome(val result: ProductInfo?, val endMs: Long)
+
+    /**
+     * A started Tier 2 call and when it started
+     */
+    private class Tier2Call(val startMs: Long, val deferred: Deferred<ProductInfo?>)
+
+    /**
+     * One identification: the result, Tier 1's outcome (no result if cancelled),
+     * when Tier 2 started (-1: never) and the total time
+     */
+    private class CascadeRun(val result: ProductInfo?, val tier1: TierOutcome, val tier2Start: Long, val totalMs: Long)
+
+    /**
+     * Run Tier 1 and, per [policy], Tier 2 on jpeg[0, length); returns the better
+     * acceptable result, null if no tier answered.
+     * Losing calls are cancelled, which cancels their HTTP requests.
+     *
+     * [progress] gets UI status messages, [partial] each tier's key fields
+     * (brand, searchQuery, confidence) while the rest still streams; the final
+     * result can still differ. [partial] runs on the OkHttp thread reading the
+     * stream, the two tiers' concurrently in parallel and hedged modes.
+     */
+    suspend fun identify(
+        jpeg: ByteArray,
+        length: Int,
+        policy: CascadePolicy,
+        progress: ((String) -> Unit)? = null,
+        partial: ((ProductInfo) -> Unit)? = null
+    ): ProductInfo? {
+        val startTime = System.currentTimeMillis()
+        fun elapsed() = System.currentTimeMillis() - startTime
+
+        // tokens per tier, added by the calls as they end (cancelled ones too)
+        val tokens = arrayOf(AtomicLong(), AtomicLong())
+
+        // the children hand their outcomes back through the deferreds, nothing else is shared
+        val run = coroutineScope {
+            progress?.invoke("AI analyzing product (fast scan)...")
+            log.d("Tier 1: calling $tier1Model (${policy.mode.name.lowercase()} cascade)")
+            val tier1 = async {
+                val result = try {
+                    callLlm(jpeg, length, tier1Model, tier = 1, partial, tokens[0])
+                } finally {
+                    tier1Latency.add(elapsed())
+                }
+                logTierResult(result, 1)
+                TierOutcome(result, elapsed())
+            }
+
+            fun startTier2(reason: String): Tier2Call {
+                log.d("Upgrading to Tier 2 ($tier2Model): $reason")
+                if (policy.mode != CascadeMode.PARALLEL) {
+                    progress?.invoke("Enhancing identification (deep scan)...")
+                }
+                return Tier2Call(elapsed(), async {
+                    val result = callLlm(jpeg, length, tier2Model, tier = 2, partial, tokens[1])
+                    logTierResult(result, 2)
+                    result
+                })
+            }
+
+            val hedge: Tier2Call? = when (policy.mode) {
+                CascadeMode.SERIAL -> null
+                CascadeMode.PARALLEL -> startTier2("parallel cascade")
+                CascadeMode.HEDGED -> {
+                    val hedgeDelay = tier1Latency.percentile(policy.hedgePercentile, policy.minHedgeSamples)
+                        ?: policy.defaultHedgeDelayMs
+                    if (withTimeoutOrNull(hedgeDelay) { tier1.join() } == null) {
+                        startTier2("Tier 1 slower than $hedgeDelay ms (hedge)")
+                    } else {
+                        null
+                    }
+                }
+            }
+
+            val result: ProductInfo?
+            val tier1Done: TierOutcome
+            var upgrade = hedge
+            if (hedge == null) {
+                // Tier 1 alone, then upgrade if it is uncertain
+                tier1Done = tier1.await()
+                val first = tier1Done.result
+                result = if (first == null || shouldUpgrade(first)) {
+                    val serial = startTier2(upgradeReason(first))
+                    upgrade = serial
+                    pickBetter(first, serial.deferred.await())
+                } else {
+                    first
+                }
+            } else {
+                // both running: an acceptable answer from either one ends the race
+                val tier2 = hedge.deferred
+                val tier1First = select<Boolean> {
+                    tier1.onAwait { true }
+                    tier2.onAwait { false }
+                }
+                if (tier1First) {
+                    tier1Done = tier1.await()
+                    val first = tier1Done.result
+                    result = if (first != null && !shouldUpgrade(first)) {
+                        tier2.cancel()
+                        first
+                    } else {
+                        pickBetter(first, tier2.await())
+                    }
+                } else {
+                    val upgraded = tier2.await()
+                    if (upgraded != null && !shouldUpgrade(upgraded)) {
+                        tier1Done = if (tier1.isActive) {
+                            tier1.cancel()
+                            TierOutcome(null, elapsed())
+                        } else {
+                            tier1.await()
+                        }
+                        result = upgraded
+                    } else {
+                        tier1Done = tier1.await()
+                        result = pickBetter(tier1Done.result, upgraded)
+                    }
+                }
+            }
+            CascadeRun(result, tier1Done, upgrade?.startMs ?: -1, elapsed())
+        }
+
+        // coroutineScope returned once cancelled calls ended, their tokens are in
+        recordCascade(policy, run, tokens[0].get(), tokens[1].get())
+        return run.result
+    }
+
+    /**
+     * Determine if a result is too uncertain to stop at (Tier 1 upgrades, Tier 2 doesn't win a race)
+     *
+     * A blank model alone is not enough: generic products (bottles, apparel) have
+     * none, and Tier 2 rarely finds one either. pickBetter still prefers a Tier 2
+     * answer that names the model when both tiers ran.
+     */
+    fun shouldUpgrade(result: ProductInfo): Boolean {
+        return result.confidence < CONFIDENCE_THRESHOLD ||
+                result.searchQuery.isBlank()
+    }
+
+    /**
+     * Account for one identification and log the running totals
+     *
+     * Saved latency: when Tier 2 was needed (Tier 1 uncertain, failed or still
+     * running), serial would only have started it when Tier 1 ended, so the head
+     * start is what the cascade saved (a lower bound if Tier 1 was cancelled).
+     * Extra cost: the tokens of a Tier 2 call started while Tier 1 turned out good
+     * enough; cancelled early, it still bills the prompt and image tokens.
+     */
+    private fun recordCascade(policy: CascadePolicy, run: CascadeRun, tier1Tokens: Long, tier2Tokens: Long) {
+        val tier1Result = run.tier1.result
+        val tier1Good = tier1Result != null && !shouldUpgrade(tier1Result)
+        val tier2Started = run.tier2Start >= 0
+
+        val saved = if (tier2Started && !tier1Good) (run.tier1.endMs - run.tier2Start).coerceAtLeast(0) else 0L
+
+        synchronized(this) {
+            identifications++
+            if (tier2Started) tier2Calls++
+            if (tier2Started && tier1Good) {
+                tier2Extra++
+                tier2ExtraTokens += tier2Tokens
+            }
+            savedMs += saved
+            tierTokens[0] += tier1Tokens
+            tierTokens[1] += tier2Tokens
+
+            log.d("Cascade ${policy.mode.name.lowercase()}: ${run.totalMs} ms, $tier1Tokens + $tier2Tokens tokens" +
+                    (if (saved > 0) ", Tier 2 head start $saved ms" else "") +
+                    (if (tier2Started && tier1Good) ", Tier 2 not needed" else "") +
+                    " | totals: $identifications identifications, $tier2Calls Tier 2 calls " +
+                    "($tier2Extra extra), $savedMs ms saved vs serial, " +
+                    "tokens ${tierTokens[0]} Tier 1 + ${tierTokens[1]} Tier 2 ($tier2ExtraTokens extra), " +
+                    "$estimatedCalls calls estimated")
+        }
+    }
+
+    /**
+     * Tier 2 result if it is better than Tier 1's, else Tier 1's
+     */
+    private fun pickBetter(result: ProductInfo?, upgraded: ProductInfo?): ProductInfo? {
+        if (upgraded == null) {
+            log.w("Tier 2 returned null, keeping Tier 1 result")
+            return result
+        }
+        if (result == null || upgraded.confidence > result.confidence ||
+            (upgraded.model.isNotBlank() && result.model.isBlank())) {
+            log.d("Using Tier 2 result (better)")
+            return upgraded
+        }
+        log.d("Keeping Tier 1 result (Tier 2 not better)")
+        return result
+    }
+
+    private fun upgradeReason(result: ProductInfo?): String {
+        return when {
+            result == null -> "Tier 1 failed"
+            result.confidence < CONFIDENCE_THRESHOLD -> "low confidence (${result.confidence})"
+            result.searchQuery.isBlank() -> "no search query"
+            else -> "unknown"
+        }
+    }
+
+    private fun logTierResult(result: ProductInfo?, tier: Int) {
+        if (result != null) {
+            log.d("Tier $tier result: brand='${result.brand}', model='${result.model}', " +
+                    "confidence=${result.confidence}, query='${result.searchQuery}'")
+        } else {
+            log.w("Tier $tier returned null")
+        }
+    }
+
+    // ==================== OpenRouter API ====================
+
+    /**
+     * Call LLM via OpenRouter API, streaming
+     *
+     * The product JSON is parsed incrementally. Once every field the cascade and
+     * the search query use is complete, the stream is closed: the remaining
+     * "notes" are the longest field and nothing reads them, so the result
+     * comes back without them (and without the usage of the final event).
+     * The tokens the call billed are added to [tokens], estimated without usage.
+     */
+    private suspend fun callLlm(
+        jpeg: ByteArray,
+        length: Int,
+        model: String,
+        tier: Int,
+        partial: ((ProductInfo) -> Unit)?,
+        tokens: AtomicLong
+    ): ProductInfo? {
+        val startTime = System.currentTimeMillis()
+        val parser = ProductStreamParser(tier)
+        var usage: OpenRouterJson.Usage? = null
+        // content characters so far, readable when a cancel interrupts the reading thread
+        val streamed = AtomicInteger()
+        try {
+            val requestBody = IdentificationBody(requestWriter(), model, jpeg, length)
+            var notified = false
+            var closedEarly = false
+
+            val ok = streamOpenRouter(requestBody) { data ->
+                val chunk = OpenRouterJson.parseStreamChunk(data)
+                chunk.usage?.let { usage = it }
+
+                val content = chunk.content
+                if (content != null) streamed.addAndGet(content.length)
+                if (content != null && parser.feed(content)) {
+                    if (!notified && parser.hasKeyFields()) {
+                        notified = true
+                        log.d("Tier $tier key fields after ${System.currentTimeMillis() - startTime} ms")
+                        partial?.invoke(parser.snapshot())
+                    }
+                    if (!parser.isComplete && hasAllButNotes(parser)) {
+                        closedEarly = true
+                        return@streamOpenRouter false
+                    }
+                }
+                // after the closing '}' keep reading: the last event carries the usage
+                true
+            }
+            if (!ok) {
+                log.e("OpenRouter returned no response for model $model")
+                tierDone(tier, model, startTime, null, cancelled = false, tokens, billed(tier, usage, streamed.get(), false))
+                return null
+            }
+
+            log.d("Tier $tier stream ${if (closedEarly) "closed before notes" else "done"} " +
+                    "after ${System.currentTimeMillis() - startTime} ms")
+            usage?.let {
+                log.d("Token usage: prompt=${it.promptTokens}, " +
+                        "completion=${it.completionTokens}, total=${it.totalTokens}")
+            }
+
+            val result = if (closedEarly) parser.snapshot() else parseContent(parser.text, tier)
+            tierDone(tier, model, startTime, result, cancelled = false, tokens, billed(tier, usage, streamed.get(), true))
+            return result
+        } catch (e: CancellationException) {
+            // the cascade no longer needs this tier; the HTTP call is already cancelled
+            log.d("Tier $tier call cancelled")
+            tierDone(tier, model, startTime, null, cancelled = true, tokens, billed(tier, null, streamed.get(), true))
+            throw e
+        } catch (e: Exception) {
+            log.e("LLM call failed for model $model", e)
+            tierDone(tier, model, startTime, null, cancelled = false, tokens, billed(tier, usage, streamed.get(), false))
+            return null
+        }
+    }
+
+    /**
+     * Tokens a call billed: its usage when the stream reached the final event.
+     * Otherwise (closed before the notes, cancelled) an estimate: the tier's last
+     * reported prompt tokens (or prompt text at ~4 characters per token plus the
+     * image), when the prompt reached the model, plus ~4 characters per completion
+     * token streamed so far. Failed calls bill nothing unless content arrived.
+     */
+    private fun billed(tier: Int, usage: OpenRouterJson.Usage?, streamed: Int, promptSent: Boolean): Int {
+        synchronized(this) {
+            if (usage != null) {
+                promptTokens[tier - 1] = usage.promptTokens
+                return usage.totalTokens
+            }
+            if (!promptSent && streamed == 0) return 0
+            estimatedCalls++
+            val prompt = promptTokens[tier - 1].takeIf { it > 0 } ?: (promptChars / 4 + IMAGE_TOKENS)
+            return prompt + streamed / 4
+        }
+    }
+
+    private fun tierDone(
+        tier: Int,
+        model: String,
+        startTime: Long,
+        result: ProductInfo?,
+        cancelled: Boolean,
+        tokens: AtomicLong,
+        billed: Int
+    ) {
+        tokens.addAndGet(billed.toLong())
+        tierListener?.onTierDone(tier, model, System.currentTimeMillis() - startTime, result, cancelled, billed)
+    }
+
+    private fun hasAllButNotes(parser: ProductStreamParser): Boolean {
+        return parser.hasKeyFields() && parser.has("model") &&
+                parser.has("category") && parser.has("key_attributes")
+    }
+
+    // Serialized prompt, rebuilt when the date injected into it changes
+    private var writerDate: String? = null
+    private var writer: OpenRouterRequestWriter? = null
+    private var promptChars = 0
+
+    @Synchronized
+    private fun requestWriter(): OpenRouterRequestWriter {
+        val today = SimpleDateFormat("yyyy-MM-dd", Locale.US).format(Date())
+        val cached = writer
+        if (cached != null && today == writerDate) return cached
+
+        val prompt = IdentificationPrompt.build(today)
+        return OpenRouterRequestWriter(prompt).also {
+            writer = it
+            writerDate = today
+            promptChars = prompt.length
+        }
+    }
+
+    /**
+     * Identification request streamed into the connection (OpenRouterRequestWriter),
+     * with a known length; OkHttp may write it again on a retry
+     */
+    private class IdentificationBody(
+        private val writer: OpenRouterRequestWriter,
+        private val model: String,
+        private val jpeg: ByteArray,
+        private val length: Int
+    ) : RequestBody() {
+        override fun contentType(): MediaType = JSON
+
+        override fun contentLength(): Long = writer.contentLength(model, length)
+
+        override fun writeTo(sink: BufferedSink) {
+            writer.writeTo(sink.outputStream(), model, jpeg, 0, length)
+        }
+    }
+
+    /**
+     * Send HTTP POST to OpenRouter API and hand each server-sent event's data
+     * to [onData] as it arrives; [onData] returns false to close the stream
+     *
+     * @return false (logged) on HTTP or network errors
+     */
+    private suspend fun streamOpenRouter(requestBody: RequestBody, onData: (String) -> Boolean): Boolean {
+        try {
+            val headers = mapOf(
+                "Authorization" to "Bearer $apiKey",
+                "HTTP-Referer" to "https://snapshop.app",
+                "X-Title" to "SnapShop"
+            )
+            val error = postEventStream(requestBody, headers) { line ->
+                when {
+                    // blank separators and ": OPENROUTER PROCESSING" keep-alive comments
+                    line.isEmpty() || line.startsWith(":") -> true
+                    !line.startsWith("data:") -> true
+                    else -> {
+                        val data = line.substring(5).trim()
+                        data != "[DONE]" && onData(data)
+                    }
+                }
+            }
+            if (error != null) {
+                log.e("OpenRouter error $error")
+                return false
+            }
+            return true
+        } catch (e: IOException) {
+            log.e("OpenRouter HTTP error", e)
+            return false
+        }
+    }
+
+    /**
+     * POST [body] and read a successful response line by line as it arrives
+     * (server-sent events), suspending. [onLine] runs on an OkHttp dispatcher
+     * thread and returns false to stop reading; the rest of the response is dropped.
+     *
+     * Cancelling the coroutine cancels the HTTP call, so a losing request
+     * stops downloading (and stops the model generating) right away.
+     *
+     * @return null on success, "<code>: <body>" for HTTP errors
+     * @throws IOException on network failure or timeout ([timeoutMs] bounds the whole call)
+     */
+    private suspend fun postEventStream(
+        body: RequestBody,
+        headers: Map<String, String>,
+        onLine: (String) -> Boolean
+    ): String? = suspendCancellableCoroutine { continuation ->
+        val builder = Request.Builder()
+            .url(url)
+            .post(body)
+            .header("Accept", "text/event-stream")
+        for ((name, value) in headers) {
+            builder.header(name, value)
+        }
+
+        val call = client.newCall(builder.build())
+        call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS)
+        continuation.invokeOnCancellation { call.cancel() }
+
+        call.enqueue(object : Callback {
+            override fun onResponse(call: Call, response: Response) {
+                // a resume after cancellation is ignored
+                try {
+                    continuation.resume(readLines(call, response, onLine))
+                } catch (e: Exception) {
+                    continuation.resumeWithException(e)
+                }
+            }
+
+            override fun onFailure(call: Call, e: IOException) {
+                continuation.resumeWithException(e)
+            }
+        })
+    }
+
+    private fun readLines(call: Call, response: Response, onLine: (String) -> Boolean): String? {
+        response.use {
+            val body = response.body ?: return if (response.isSuccessful) null else "${response.code}"
+            if (!response.isSuccessful) {
+                return "${response.code}: ${body.string()}"
+            }
+
+            val source = body.source()
+            while (true) {
+                val line = source.readUtf8Line() ?: break
+                if (!onLine(line)) {
+                    call.cancel()
+                    break
+                }
+            }
+            return null
+        }
+    }
+
+    // ==================== Response Parsing ====================
+
+    /**
+     * Parse the complete streamed message content → ProductInfo, null (logged) on malformed output
+     */
+    private fun parseContent(content: String, tier: Int): ProductInfo? {
+        try {
+            return OpenRouterJson.parseProduct(OpenRouterJson.stripCodeFences(content), tier)
+        } catch (e: Exception) {
+            log.e("Failed to parse LLM response", e)
+            // Log first 500 chars of response for debugging
+            log.e("Response preview: ${content.take(500)}")
+            return null
+        }
+    }
+}
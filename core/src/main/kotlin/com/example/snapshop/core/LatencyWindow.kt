@@ -0,0 +1,37 @@
+package com.example.snapshop.core
+
+/**
+ * Sliding window of the most recent latencies, for percentile-based deadlines
+ * (e.g. hedging a request that is slower than the usual p90)
+ *
+ * Thread-safe; percentile() sorts a copy, fine for windows of a few hundred samples.
+ */
+class LatencyWindow(private val capacity: Int = 100) {
+
+    private val samples = LongArray(capacity)
+    private var count = 0
+    private var next = 0
+
+    @Synchronized
+    fun add(latencyMs: Long) {
+        samples[next] = latencyMs
+        next = (next + 1) % capacity
+        if (count < capacity) count++
+    }
+
+    @Synchronized
+    fun size(): Int = count
+
+    /**
+     * Latency at percentile [p] (0.0 - 1.0), nearest rank;
+     * null until the window holds at least [minSamples]
+     */
+    @Synchronized
+    fun percentile(p: Double, minSamples: Int = 1): Long? {
+        if (count == 0 || count < minSamples) return null
+        val sorted = samples.copyOf(count)
+        sorted.sort()
+        val index = (p.coerceIn(0.0, 1.0) * (count - 1) + 0.5).toInt()
+        return sorted[index]
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.snapshop.core
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * Build compact Memo JSON
+ * Format: {"t":"yolo26","v":1,"n":3,"d":[{"c":"person","p":0.95,"b":[10,20,100,200]},...]}
+ *
+ * Field description:
+ * - t: type (fixed as "yolo26")
+ * - v: version (protocol version)
+ * - n: count (number of detections)
+ * - d: detections array
+ *   - c: class (class name)
+ *   - p: probability (confidence)
+ *   - b: bbox [x, y, w, h]
+ */
+object MemoJson {
+
+    /**
+     * One detection as it goes into the memo
+     */
+    interface Detection {
+        val label: String
+        val confidence: Float
+        val x: Float
+        val y: Float
+        val width: Float
+        val height: Float
+    }
+
+    @JvmStatic
+    fun build(detections: List<Detection>): String {
+        val json = JSONObject().apply {
+            put("t", "yolo26")
+            put("v", 1)
+            put("n", detections.size)
+
+            val detectionsArray = JSONArray()
+            for (det in detections) {
+                val detObj = JSONObject().apply {
+                    put("c", det.label)
+                    put("p", String.format("%.2f", det.confidence).toDouble())
+                    put("b", JSONArray().apply {
+                        put(det.x.toInt())
+                        put(det.y.toInt())
+                        put(det.width.toInt())
+                        put(det.height.toInt())
+                    })
+                }
+                detectionsArray.put(detObj)
+            }
+            put("d", detectionsArray)
+        }
+
+        return json.toString()
+    }
+}
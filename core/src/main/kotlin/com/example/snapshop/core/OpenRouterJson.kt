@@ -0,0 +1,186 @@
+package com.example.snapshop.core
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * OpenRouter chat completions request building and response parsing
+ * (OpenAI-compatible format with vision), no networking or logging
+ */
+object OpenRouterJson {
+
+    /**
+     * Token usage reported by OpenRouter, for logging
+     */
+    data class Usage(val promptTokens: Int, val completionTokens: Int, val totalTokens: Int)
+
+    data class Parsed(val productInfo: ProductInfo, val usage: Usage?)
+
+    /**
+     * One server-sent event of a streamed completion: a content delta and,
+     * in the last event, the usage
+     */
+    data class StreamChunk(val content: String?, val usage: Usage?)
+
+    /**
+     * Build OpenRouter chat completions request body
+     * Uses OpenAI-compatible format with vision (image_url)
+     *
+     * @param stream request server-sent events (parseStreamChunk) instead of one response
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun buildRequestBody(prompt: String, base64Image: String, model: String, stream: Boolean = false): String {
+        val request = JSONObject().apply {
+            put("model", model)
+            put("max_tokens", 500)
+            put("temperature", 0.1)  // Low temperature for deterministic identification
+            if (stream) put("stream", true)
+            put("messages", JSONArray().apply {
+                put(JSONObject().apply {
+                    put("role", "user")
+                    put("content", JSONArray().apply {
+                        // Text instruction (with current date injected)
+                        put(JSONObject().apply {
+                            put("type", "text")
+                            put("text", prompt)
+                        })
+                        // Image
+                        put(JSONObject().apply {
+                            put("type", "image_url")
+                            put("image_url", JSONObject().apply {
+                                put("url", "data:image/jpeg;base64,$base64Image")
+                            })
+                        })
+                    })
+                })
+            })
+        }
+        return request.toString()
+    }
+
+    /**
+     * Parse OpenRouter response → ProductInfo
+     *
+     * Expected response format (OpenAI-compatible):
+     * { "choices": [{ "message": { "content": "{...json...}" } }] }
+     *
+     * @throws IllegalStateException for an API error or a response without choices
+     * @throws org.json.JSONException if the response or the product JSON is malformed
+     */
+    @JvmStatic
+    fun parseResponse(responseJson: String, tier: Int): Parsed {
+        val json = JSONObject(responseJson)
+
+        // Check for API error
+        if (json.has("error")) {
+            val error = json.getJSONObject("error")
+            throw IllegalStateException("OpenRouter API error: ${error.optString("message")}")
+        }
+
+        val choices = json.optJSONArray("choices")
+        if (choices == null || choices.length() == 0) {
+            throw IllegalStateException("No choices in response")
+        }
+
+        val message = choices.getJSONObject(0).getJSONObject("message")
+        val content = stripCodeFences(message.getString("content"))
+
+        val productInfo = parseProduct(content, tier)
+
+        return Parsed(productInfo, parseUsage(json))
+    }
+
+    /**
+     * Parse the data of one streamed event
+     *
+     * Expected format: { "choices": [{ "delta": { "content": "..." } }], "usage": {...} }
+     * The caller skips SSE comments (": OPENROUTER PROCESSING") and the final "[DONE]".
+     *
+     * @throws IllegalStateException for an API error sent mid-stream
+     * @throws org.json.JSONException if the event is malformed
+     */
+    @JvmStatic
+    fun parseStreamChunk(data: String): StreamChunk {
+        val json = JSONObject(data)
+
+        if (json.has("error")) {
+            val error = json.getJSONObject("error")
+            throw IllegalStateException("OpenRouter API error: ${error.optString("message")}")
+        }
+
+        val delta = json.optJSONArray("choices")?.optJSONObject(0)?.optJSONObject("delta")
+        val content = if (delta != null && delta.has("content") && !delta.isNull("content")) {
+            delta.getString("content")
+        } else {
+            null
+        }
+
+        return StreamChunk(content, parseUsage(json))
+    }
+
+    private fun parseUsage(json: JSONObject): Usage? {
+        return json.optJSONObject("usage")?.let {
+            Usage(it.optInt("prompt_tokens"), it.optInt("completion_tokens"), it.optInt("total_tokens"))
+        }
+    }
+
+    /**
+     * Parse the product JSON the model returned in its message content
+     */
+    @JvmStatic
+    fun parseProduct(content: String, tier: Int): ProductInfo = productInfo(JSONObject(content), tier)
+
+    /**
+     * ProductInfo from a parsed product JSON, missing fields empty / 0.0; values of
+     * another type are coerced ("0.8" → 0.8, 42 → "42") as org.json's opt getters do
+     */
+    @JvmStatic
+    fun productInfo(productJson: JSONObject, tier: Int): ProductInfo {
+        val keyAttributes = mutableListOf<String>()
+        val attrs = productJson.optJSONArray("key_attributes")
+        if (attrs != null) {
+            for (i in 0 until attrs.length()) {
+                val attr = attrs.optString(i, "")
+                if (attr.isNotEmpty()) keyAttributes.add(attr)
+            }
+        }
+
+        return ProductInfo(
+            brand = productJson.optString("brand", ""),
+            model = productJson.optString("model", ""),
+            category = productJson.optString("category", ""),
+            keyAttributes = keyAttributes,
+            searchQuery = productJson.optString("searchQuery", ""),
+            confidence = productJson.optDouble("confidence", 0.0),
+            notes = productJson.optString("notes", ""),
+            tier = tier
+        )
+    }
+
+    /**
+     * Strip markdown code fences from LLM output
+     * Handles: ```json{...}```, ```{...}```, etc.
+     */
+    @JvmStatic
+    fun stripCodeFences(content: String): String {
+        var cleaned = content.trim()
+
+        // Remove leading ```json or ```
+        if (cleaned.startsWith("```")) {
+            val firstNewline = cleaned.indexOf('\n')
+            if (firstNewline > 0) {
+                cleaned = cleaned.substring(firstNewline + 1)
+            } else {
+                cleaned = cleaned.removePrefix("```json").removePrefix("```")
+            }
+        }
+
+        // Remove trailing ```
+        if (cleaned.endsWith("```")) {
+            cleaned = cleaned.substring(0, cleaned.length - 3)
+        }
+
+        return cleaned.trim()
+    }
+}
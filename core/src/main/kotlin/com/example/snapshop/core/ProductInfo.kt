@@ -0,0 +1,15 @@
+package com.example.snapshop.core
+
+/**
+ * Structured product identification result
+ */
+data class ProductInfo(
+    val brand: String,
+    val model: String,
+    val category: String,
+    val keyAttributes: List<String>,
+    val searchQuery: String,
+    val confidence: Double,
+    val notes: String,
+    val tier: Int  // 1 = default model, 2 = upgraded model
+)
@@ -0,0 +1,119 @@
+package com.example.snapshop.core
+
+import org.json.JSONObject
+import org.json.JSONTokener
+
+/**
+ * Incremental parser for the product JSON as it streams in (chat completion deltas)
+ *
+ * Scans each delta once, tracking only the top level of the object: a field
+ * is decoded as soon as its value is closed by the next ',' or the final '}',
+ * so searchQuery / brand / confidence are known while the model is still
+ * writing notes. Anything before the first '{' (a ```json fence) is skipped.
+ *
+ * Not thread-safe; feed it from the thread reading the stream.
+ */
+class ProductStreamParser(private val tier: Int) {
+
+    private val content = StringBuilder()
+    private val fields = HashMap<String, Any?>()
+
+    // scanner state, positions index into content
+    private var scanned = 0
+    private var depth = 0
+    private var inString = false
+    private var escape = false
+    private var keyStart = -1
+    private var key: String? = null
+    private var valueStart = -1
+
+    /** True once the top-level object is closed */
+    var isComplete = false
+        private set
+
+    /** Full message content received so far (fences included), for the final parse */
+    val text: String get() = content.toString()
+
+    /**
+     * Append a content delta
+     *
+     * @return true if this delta completed at least one field
+     */
+    fun feed(delta: CharSequence): Boolean {
+        content.append(delta)
+        var completed = false
+
+        while (scanned < content.length && !isComplete) {
+            val i = scanned++
+            val c = content[i]
+
+            if (inString) {
+                when {
+                    escape -> escape = false
+                    c == '\\' -> escape = true
+                    c == '"' -> {
+                        inString = false
+                        if (keyStart >= 0) {
+                            key = content.substring(keyStart, i)
+                            keyStart = -1
+                        }
+                    }
+                }
+                continue
+            }
+
+            when (c) {
+                '"' -> {
+                    inString = true
+                    if (depth == 1 && key == null) keyStart = i + 1
+                }
+                ':' -> if (depth == 1 && key != null && valueStart < 0) valueStart = i + 1
+                '{', '[' -> depth++
+                '}', ']' -> {
+                    if (depth == 1 && c == '}') {
+                        completed = completeField(i) || completed
+                        isComplete = true
+                    }
+                    if (depth > 0) depth--
+                }
+                ',' -> if (depth == 1) completed = completeField(i) || completed
+            }
+        }
+
+        return completed
+    }
+
+    /** True once [name] has a complete value */
+    fun has(name: String): Boolean = fields.containsKey(name)
+
+    /** True once brand, searchQuery and confidence are all complete, the fields the capture flow acts on */
+    fun hasKeyFields(): Boolean = has("brand") && has("searchQuery") && has("confidence")
+
+    /**
+     * ProductInfo from the fields completed so far, missing ones empty / 0.0,
+     * coerced exactly as OpenRouterJson.parseProduct does
+     */
+    fun snapshot(): ProductInfo {
+        val json = JSONObject()
+        for ((name, value) in fields) {
+            if (value != null) json.put(name, value)
+        }
+        return OpenRouterJson.productInfo(json, tier)
+    }
+
+    private fun completeField(end: Int): Boolean {
+        val name = key
+        val start = valueStart
+        key = null
+        valueStart = -1
+        if (name == null || start < 0) return false
+
+        fields[name] = try {
+            JSONTokener(content.substring(start, end).trim()).nextValue()
+        } catch (e: Exception) {
+            // malformed value: leave the field empty, the final parse reports it
+            null
+        }
+        return true
+    }
+}
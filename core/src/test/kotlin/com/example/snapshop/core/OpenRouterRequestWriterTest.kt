@@ -0,0 +1,80 @@
+package com.example.snapshop.core
+
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.util.Base64
+import java.util.Random
+
+class OpenRouterRequestWriterTest {
+
+    // quotes, backslashes, newlines and non-ASCII, all escaped by JSONObject.quote
+    private val prompt = "Identify the product.\nReturn JSON: {\"brand\": \"...\"}\tC:\\ é 日本 </script>"
+    private val model = "google/gemini-2.5-flash-lite"
+
+    // the 3-byte base64 groups around 0, a few bytes and Base64Encoder's 3 KB chunk
+    private val lengths = listOf(0, 1, 2, 3, 4, 5, 6, 7, 3071, 3072, 3073, 3074, 3075, 6143, 6144, 6145, 20000)
+
+    private fun jpeg(length: Int): ByteArray = ByteArray(length).also { Random(length.toLong()).nextBytes(it) }
+
+    private fun written(writer: OpenRouterRequestWriter, jpeg: ByteArray, offset: Int, length: Int): String {
+        val out = ByteArrayOutputStream()
+        writer.writeTo(out, model, jpeg, offset, length)
+        return out.toString("UTF-8")
+    }
+
+    @Test
+    fun sameRequestAsStringBuiltBody() {
+        val writer = OpenRouterRequestWriter(prompt)
+        for (length in lengths) {
+            val jpeg = jpeg(length)
+            val expected = OpenRouterJson.buildRequestBody(prompt, Base64Encoder.encodeToString(jpeg), model, true)
+            val body = written(writer, jpeg, 0, length)
+            // JSONObject does not keep key order, compare the parsed requests
+            assertTrue("length $length", JSONObject(expected).similar(JSONObject(body)))
+        }
+    }
+
+    @Test
+    fun imageIsStandardBase64() {
+        val writer = OpenRouterRequestWriter(prompt)
+        for (length in lengths) {
+            val jpeg = jpeg(length)
+            val url = JSONObject(written(writer, jpeg, 0, length))
+                .getJSONArray("messages").getJSONObject(0)
+                .getJSONArray("content").getJSONObject(1)
+                .getJSONObject("image_url").getString("url")
+            assertEquals("length $length",
+                "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(jpeg), url)
+        }
+    }
+
+    @Test
+    fun contentLengthIsBytesWritten() {
+        val writer = OpenRouterRequestWriter(prompt)
+        for (length in lengths) {
+            val out = ByteArrayOutputStream()
+            writer.writeTo(out, model, jpeg(length), 0, length)
+            assertEquals("length $length", writer.contentLength(model, length), out.size().toLong())
+        }
+    }
+
+    @Test
+    fun writesOnlyTheGivenRange() {
+        val writer = OpenRouterRequestWriter(prompt)
+        val buffer = jpeg(4000)
+        for (length in listOf(0, 1, 2, 3, 3072, 3073)) {
+            val copy = buffer.copyOfRange(7, 7 + length)
+            assertEquals("length $length", written(writer, copy, 0, length), written(writer, buffer, 7, length))
+        }
+    }
+
+    @Test
+    fun repeatableWrites() {
+        val writer = OpenRouterRequestWriter(prompt)
+        val jpeg = jpeg(3073)
+        assertEquals(written(writer, jpeg, 0, jpeg.size), written(writer, jpeg, 0, jpeg.size))
+    }
+}
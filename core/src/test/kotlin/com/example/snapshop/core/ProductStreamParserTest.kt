@@ -0,0 +1,111 @@
+package com.example.snapshop.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ProductStreamParserTest {
+
+    private val product = """{"brand":"Sony","model":"WH-1000XM5","category":"headphones",""" +
+            """"key_attributes":["black","over-ear","matte finish"],""" +
+            """"searchQuery":"Sony WH-1000XM5 black over-ear headphones","confidence":0.85,""" +
+            """"notes":"Generation year is not visible."}"""
+
+    private fun parse(vararg deltas: String): ProductStreamParser {
+        val parser = ProductStreamParser(1)
+        for (delta in deltas) parser.feed(delta)
+        return parser
+    }
+
+    @Test
+    fun wholeMessageMatchesParseProduct() {
+        val parser = parse(product)
+        assertTrue(parser.isComplete)
+        assertEquals(OpenRouterJson.parseProduct(product, 1), parser.snapshot())
+    }
+
+    @Test
+    fun tokensSplitAtEveryPosition() {
+        val expected = OpenRouterJson.parseProduct(product, 1)
+        for (i in 0..product.length) {
+            val parser = parse(product.substring(0, i), product.substring(i))
+            assertTrue("split at $i", parser.isComplete)
+            assertEquals("split at $i", expected, parser.snapshot())
+        }
+    }
+
+    @Test
+    fun oneCharacterPerDelta() {
+        val parser = parse(*product.map { it.toString() }.toTypedArray())
+        assertEquals(OpenRouterJson.parseProduct(product, 1), parser.snapshot())
+    }
+
+    @Test
+    fun escapesInsideStrings() {
+        // quotes, backslashes, and the characters the scanner acts on, all inside values
+        val content = """{"brand":"Say \"Hi\", {Co} [1]:","model":"C:\\path\\","category":"\u00e9t\u00e9",""" +
+                """"searchQuery":"a\\\"b","confidence":0.7,"notes":"x"}"""
+        val expected = OpenRouterJson.parseProduct(content, 1)
+        for (i in 0..content.length) {
+            val parser = parse(content.substring(0, i), content.substring(i))
+            assertEquals("split at $i", expected, parser.snapshot())
+        }
+        val info = parse(content).snapshot()
+        assertEquals("Say \"Hi\", {Co} [1]:", info.brand)
+        assertEquals("C:\\path\\", info.model)
+        assertEquals("été", info.category)
+        assertEquals("a\\\"b", info.searchQuery)
+    }
+
+    @Test
+    fun fieldsCompleteBeforeTheObjectCloses() {
+        val notesAt = product.indexOf("\"notes\"")
+        val parser = parse(product.substring(0, notesAt))
+        assertTrue(parser.hasKeyFields())
+        assertTrue(parser.has("key_attributes"))
+        assertFalse(parser.has("notes"))
+        assertFalse(parser.isComplete)
+
+        // an early close keeps what was complete, notes empty
+        val info = parser.snapshot()
+        assertEquals("Sony", info.brand)
+        assertEquals(listOf("black", "over-ear", "matte finish"), info.keyAttributes)
+        assertEquals(0.85, info.confidence, 0.0)
+        assertEquals("", info.notes)
+    }
+
+    @Test
+    fun valueIsIncompleteUntilTheNextComma() {
+        val parser = parse("""{"brand":"Sony","confidence":0.8""")
+        assertTrue(parser.has("brand"))
+        assertFalse(parser.has("confidence"))
+        assertTrue(parser.feed(","))
+        assertEquals(0.8, parser.snapshot().confidence, 0.0)
+    }
+
+    @Test
+    fun valuesCoercedLikeParseProduct() {
+        val content = """{"brand":"Acme","model":42,"searchQuery":"acme","confidence":"0.8"}"""
+        val expected = OpenRouterJson.parseProduct(content, 1)
+        val info = parse(content).snapshot()
+        assertEquals(expected, info)
+        assertEquals(0.8, info.confidence, 0.0)
+        assertEquals("42", info.model)
+    }
+
+    @Test
+    fun codeFenceSkipped() {
+        val parser = parse("```json\n", product, "\n```")
+        assertTrue(parser.isComplete)
+        assertEquals(OpenRouterJson.parseProduct(product, 1), parser.snapshot())
+    }
+
+    @Test
+    fun malformedValueLeftEmpty() {
+        val info = parse("""{"brand":"Sony","confidence":high,"searchQuery":"q"}""").snapshot()
+        assertEquals("Sony", info.brand)
+        assertEquals(0.0, info.confidence, 0.0)
+        assertEquals("q", info.searchQuery)
+    }
+}
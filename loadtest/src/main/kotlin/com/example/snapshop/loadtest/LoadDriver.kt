@@ -0,0 +1,282 @@
+package com.example.snapshop.loadtest
+
+import com.example.snapshop.core.CascadeMode
+import com.example.snapshop.core.CascadePolicy
+import com.example.snapshop.core.IdentificationCascade
+import com.example.snapshop.core.LatencyWindow
+import com.example.snapshop.core.ProductInfo
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import javax.imageio.IIOImage
+import javax.imageio.ImageIO
+import javax.imageio.ImageWriteParam
+import kotlin.system.exitProcess
+
+/**
+ * Replays captured images through IdentificationCascade (the app's Tier 1 /
+ * Tier 2 path) at a fixed concurrency and reports latency percentiles per tier
+ *
+ * Each worker identifies one image after the other (closed loop), cycling
+ * through the images until --requests identifications are done. Images are
+ * prepared like the app's upload: longest side ≤384 px, JPEG quality 80.
+ * The perceptual-hash cache is Android-side and not part of the replay.
+ *
+ * Options:
+ *   --images DIR         captured .jpg / .png files (required)
+ *   --requests N         identifications (default: one per image)
+ *   --concurrency N      identifications in flight (4)
+ *   --cascade MODE       serial, parallel or hedged (serial)
+ *   --hedge-percentile P, --hedge-delay-ms MS   HEDGED policy (0.9, 4000)
+ *   --url URL            chat completions endpoint (the mock server)
+ *   --api-key KEY        sent as the bearer token (mock)
+ *   --tier1-model M, --tier2-model M
+ *   --timeout-ms MS      per call (60000)
+ *   --verbose            cascade log on stderr
+ */
+object LoadDriver {
+
+    private const val MAX_IMAGE_SIZE = 384
+    private const val JPEG_QUALITY = 0.8f
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val options = parseOptions(args)
+        val images = options["images"]?.let { File(it) }
+        if (images == null || !images.isDirectory) usage("--images must be a directory")
+
+        val uploads = loadUploads(images)
+        if (uploads.isEmpty()) usage("no readable images in $images")
+
+        val requests = (options["requests"]?.toInt() ?: uploads.size).coerceAtLeast(1)
+        val concurrency = (options["concurrency"]?.toInt() ?: 4).coerceAtLeast(1)
+        val policy = CascadePolicy(
+            mode = CascadeMode.parse(options["cascade"]),
+            hedgePercentile = options["hedge-percentile"]?.toDouble() ?: 0.9,
+            defaultHedgeDelayMs = options["hedge-delay-ms"]?.toLong() ?: 4000
+        )
+
+        // both tiers of every identification may be in flight at once
+        val dispatcher = Dispatcher().apply {
+            maxRequests = concurrency * 2
+            maxRequestsPerHost = concurrency * 2
+        }
+        val client = OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(ConnectionPool(concurrency * 2, 5, TimeUnit.MINUTES))
+            .protocols(listOf(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectTimeout(15, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .writeTimeout(30, TimeUnit.SECONDS)
+            .build()
+
+        val cascade = IdentificationCascade(
+            client = client,
+            url = options["url"] ?: "http://127.0.0.1:8089${MockOpenRouterServer.PATH}",
+            apiKey = options["api-key"] ?: "mock",
+            tier1Model = options["tier1-model"] ?: IdentificationCascade.DEFAULT_TIER1_MODEL,
+            tier2Model = options["tier2-model"] ?: "google/gemini-3-flash-preview",
+            timeoutMs = options["timeout-ms"]?.toLong() ?: 60000,
+            log = if (options.containsKey("verbose")) StderrLog else IdentificationCascade.Log.NONE
+        )
+        val stats = Stats(requests)
+        cascade.tierListener = stats
+
+        println("Replaying ${uploads.size} images, $requests identifications at concurrency $concurrency, $policy")
+        val start = System.nanoTime()
+        runBlocking {
+            val next = AtomicInteger()
+            List(concurrency) {
+                launch(Dispatchers.IO) {
+                    while (true) {
+                        val i = next.getAndIncrement()
+                        if (i >= requests) break
+                        val jpeg = uploads[i % uploads.size]
+
+                        val t0 = System.nanoTime()
+                        val firstPartial = AtomicLong(-1)
+                        val result = cascade.identify(jpeg, jpeg.size, policy, partial = {
+                            firstPartial.compareAndSet(-1, elapsedMs(t0))
+                        })
+                        stats.identified(elapsedMs(t0), firstPartial.get(), result, cascade)
+                    }
+                }
+            }.joinAll()
+        }
+        val seconds = (System.nanoTime() - start) / 1e9
+
+        println()
+        println(String.format("%d identifications in %.1f s (%.1f/s)", requests, seconds, requests / seconds))
+        stats.print()
+
+        client.dispatcher.executorService.shutdown()
+        client.connectionPool.evictAll()
+    }
+
+    private fun elapsedMs(startNanos: Long): Long = (System.nanoTime() - startNanos) / 1_000_000
+
+    /**
+     * Every .jpg / .jpeg / .png in [dir], as the app would upload it
+     */
+    private fun loadUploads(dir: File): List<ByteArray> {
+        val files = dir.listFiles { f ->
+            f.isFile && f.extension.lowercase() in setOf("jpg", "jpeg", "png")
+        }?.sortedBy { it.name } ?: return emptyList()
+
+        val uploads = ArrayList<ByteArray>()
+        for (file in files) {
+            val image = ImageIO.read(file)
+            if (image == null) {
+                System.err.println("Skipping ${file.name}: not a readable image")
+                continue
+            }
+            val isJpeg = file.extension.lowercase() != "png"
+            uploads.add(
+                if (isJpeg && maxOf(image.width, image.height) <= MAX_IMAGE_SIZE) file.readBytes()
+                else encodeUpload(image)
+            )
+        }
+        return uploads
+    }
+
+    private fun encodeUpload(image: BufferedImage): ByteArray {
+        val scale = minOf(1.0, MAX_IMAGE_SIZE.toDouble() / maxOf(image.width, image.height))
+        val width = (image.width * scale).toInt().coerceAtLeast(1)
+        val height = (image.height * scale).toInt().coerceAtLeast(1)
+
+        // RGB without alpha, the JPEG writer rejects ARGB
+        val scaled = BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+        val g = scaled.createGraphics()
+        g.drawImage(image.getScaledInstance(width, height, java.awt.Image.SCALE_SMOOTH), 0, 0, null)
+        g.dispose()
+
+        val writer = ImageIO.getImageWritersByFormatName("jpeg").next()
+        val param = writer.defaultWriteParam.apply {
+            compressionMode = ImageWriteParam.MODE_EXPLICIT
+            compressionQuality = JPEG_QUALITY
+        }
+        val out = ByteArrayOutputStream()
+        ImageIO.createImageOutputStream(out).use { stream ->
+            writer.output = stream
+            writer.write(null, IIOImage(scaled, null, null), param)
+        }
+        writer.dispose()
+        return out.toByteArray()
+    }
+
+    private fun parseOptions(args: Array<String>): Map<String, String> {
+        val options = HashMap<String, String>()
+        var i = 0
+        while (i < args.size) {
+            val arg = args[i]
+            if (!arg.startsWith("--")) usage("unexpected argument $arg")
+            val name = arg.substring(2)
+            if (name == "verbose") {
+                options[name] = "true"
+                i++
+            } else {
+                if (i + 1 >= args.size) usage("$arg needs a value")
+                options[name] = args[i + 1]
+                i += 2
+            }
+        }
+        return options
+    }
+
+    private fun usage(message: String): Nothing {
+        System.err.println(message)
+        System.err.println("usage: --images DIR [--requests N] [--concurrency N] [--cascade serial|parallel|hedged] " +
+                "[--hedge-percentile P] [--hedge-delay-ms MS] [--url URL] [--api-key KEY] " +
+                "[--tier1-model M] [--tier2-model M] [--timeout-ms MS] [--verbose]")
+        exitProcess(2)
+    }
+
+    private object StderrLog : IdentificationCascade.Log {
+        override fun d(message: String) = System.err.println("D $message")
+        override fun w(message: String) = System.err.println("W $message")
+        override fun e(message: String, error: Throwable?) {
+            System.err.println("E $message" + (error?.let { ": $it" } ?: ""))
+        }
+    }
+
+    /**
+     * Latencies of identifications and of every tier call
+     */
+    private class Stats(requests: Int) : IdentificationCascade.TierListener {
+
+        private val identification = LatencyWindow(requests)
+        private val firstPartial = LatencyWindow(requests)
+        private val tierAnswered = arrayOf(LatencyWindow(requests), LatencyWindow(requests))
+        private val tierCalls = arrayOf(AtomicInteger(), AtomicInteger())
+        private val tierFailed = arrayOf(AtomicInteger(), AtomicInteger())
+        private val tierCancelled = arrayOf(AtomicInteger(), AtomicInteger())
+        private val tierTokens = arrayOf(AtomicLong(), AtomicLong())
+        private val resultTier = arrayOf(AtomicInteger(), AtomicInteger())
+        private val uncertain = AtomicInteger()
+        private val failed = AtomicInteger()
+
+        override fun onTierDone(
+            tier: Int,
+            model: String,
+            elapsedMs: Long,
+            result: ProductInfo?,
+            cancelled: Boolean,
+            tokens: Int
+        ) {
+            val i = tier - 1
+            tierCalls[i].incrementAndGet()
+            tierTokens[i].addAndGet(tokens.toLong())
+            when {
+                result != null -> tierAnswered[i].add(elapsedMs)
+                cancelled -> tierCancelled[i].incrementAndGet()
+                else -> tierFailed[i].incrementAndGet()
+            }
+        }
+
+        fun identified(elapsedMs: Long, firstPartialMs: Long, result: ProductInfo?, cascade: IdentificationCascade) {
+            identification.add(elapsedMs)
+            if (firstPartialMs >= 0) firstPartial.add(firstPartialMs)
+            if (result == null) {
+                failed.incrementAndGet()
+                return
+            }
+            resultTier[result.tier - 1].incrementAndGet()
+            if (cascade.shouldUpgrade(result)) uncertain.incrementAndGet()
+        }
+
+        fun print() {
+            println(String.format("%-16s %6s %7s %7s %7s %7s", "ms", "n", "p50", "p90", "p99", "max"))
+            row("identification", identification)
+            row("first partial", firstPartial)
+            row("tier 1 answered", tierAnswered[0])
+            row("tier 2 answered", tierAnswered[1])
+            println()
+            for (i in 0..1) {
+                println("tier ${i + 1}: ${tierCalls[i]} calls, ${tierAnswered[i].size()} answered, " +
+                        "${tierFailed[i]} failed, ${tierCancelled[i]} cancelled, ${tierTokens[i]} tokens")
+            }
+            println("results: ${resultTier[0]} from tier 1, ${resultTier[1]} from tier 2 " +
+                    "($uncertain still uncertain), $failed failed")
+        }
+
+        private fun row(name: String, window: LatencyWindow) {
+            if (window.size() == 0) {
+                println(String.format("%-16s %6d", name, 0))
+                return
+            }
+            println(String.format("%-16s %6d %7d %7d %7d %7d", name, window.size(),
+                window.percentile(0.5), window.percentile(0.9), window.percentile(0.99), window.percentile(1.0)))
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.snapshop.loadtest
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import org.json.JSONStringer
+import java.io.File
+import java.io.IOException
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Local stand-in for OpenRouter's /api/v1/chat/completions
+ *
+ * Answers identification requests with a product JSON, streamed as
+ * server-sent events (or in one response for "stream": false), with the
+ * latency, errors, stalls and confidence of a Scenario per model. Enough of the
+ * wire format for IdentificationCascade: the ": OPENROUTER PROCESSING" comment,
+ * content deltas, a final usage event and "data: [DONE]".
+ *
+ * Clients closing a stream early (key fields complete, losing cascade tier)
+ * are counted, not treated as errors.
+ */
+class MockOpenRouterServer(private val scenario: Scenario) {
+
+    companion object {
+        const val PATH = "/api/v1/chat/completions"
+
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val file = File(args.firstOrNull() ?: "scenarios/default.properties")
+            val server = MockOpenRouterServer(Scenario.load(file))
+            server.start()
+            println("Mock OpenRouter on http://127.0.0.1:${server.scenario.port}$PATH (${file.path})")
+            Runtime.getRuntime().addShutdownHook(Thread { server.stop() })
+        }
+
+        // What the identification prompt can come back with; brand and query vary, model may be blanked
+        private val PRODUCTS = listOf(
+            arrayOf("Apple", "iPhone 15 Pro Max", "smartphone", "Apple iPhone Pro Max natural titanium triple camera",
+                "natural titanium", "triple camera", "USB-C"),
+            arrayOf("Sony", "WH-1000XM5", "headphones", "Sony WH-1000XM5 black over-ear noise cancelling headphones",
+                "black", "over-ear", "matte finish"),
+            arrayOf("Nike", "Air Force 1 '07", "shoes", "Nike Air Force 1 low white leather sneakers",
+                "white leather", "low top", "perforated toe box"),
+            arrayOf("Hydro Flask", "32 oz Wide Mouth", "water bottle", "Hydro Flask 32 oz wide mouth bottle pacific blue",
+                "pacific blue", "powder coat", "flex cap"),
+            arrayOf("Logitech", "MX Master 3S", "mouse", "Logitech MX Master 3S graphite wireless mouse",
+                "graphite", "thumb wheel", "ergonomic")
+        )
+    }
+
+    /**
+     * Per model counters
+     */
+    private class Counters {
+        val requests = AtomicInteger()
+        val completed = AtomicInteger()
+        val closedByClient = AtomicInteger()
+        val errors = AtomicInteger()
+        val stalls = AtomicInteger()
+    }
+
+    private val counters = ConcurrentHashMap<String, Counters>()
+    private val requestIds = AtomicInteger()
+    private val executor = Executors.newCachedThreadPool()
+    private val reporter = Executors.newSingleThreadScheduledExecutor { Thread(it, "mock-report").apply { isDaemon = true } }
+    private var server: HttpServer? = null
+
+    fun start() {
+        val server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), scenario.port), 0)
+        server.executor = executor
+        server.createContext(PATH) { exchange ->
+            try {
+                handle(exchange)
+            } catch (e: IOException) {
+                // the client went away before a status was sent
+            } finally {
+                exchange.close()
+            }
+        }
+        server.start()
+        this.server = server
+
+        // a line every 10 s while requests come in
+        var reported = -1
+        reporter.scheduleAtFixedRate({
+            val total = requestIds.get()
+            if (total != reported) {
+                reported = total
+                println(summary())
+            }
+        }, 10, 10, TimeUnit.SECONDS)
+    }
+
+    fun stop() {
+        reporter.shutdownNow()
+        server?.stop(0)
+        executor.shutdownNow()
+        println(summary())
+    }
+
+    fun summary(): String {
+        val sb = StringBuilder("${requestIds.get()} requests")
+        for ((model, c) in counters.entries.sortedBy { it.key }) {
+            sb.append("\n  ").append(model).append(": ${c.requests} requests, ${c.completed} completed, ")
+                .append("${c.closedByClient} closed by client, ${c.errors} errors, ${c.stalls} stalls")
+        }
+        return sb.toString()
+    }
+
+    private fun handle(exchange: HttpExchange) {
+        if (exchange.requestMethod != "POST") {
+            sendJson(exchange, 405, error(405, "POST only"))
+            return
+        }
+
+        val request = try {
+            JSONObject(exchange.requestBody.readBytes().toString(Charsets.UTF_8))
+        } catch (e: JSONException) {
+            sendJson(exchange, 400, error(400, "Malformed JSON: ${e.message}"))
+            return
+        }
+
+        val modelName = request.optString("model", "")
+        val stream = request.optBoolean("stream", false)
+        val model = scenario.model(modelName)
+        val counter = counters.getOrPut(modelName) { Counters() }
+        val id = requestIds.incrementAndGet()
+        counter.requests.incrementAndGet()
+
+        val random = scenario.random(id)
+        val ttft = model.ttft.sample(random).toLong().coerceAtLeast(0)
+        val latency = model.latency.sample(random).toLong().coerceAtLeast(ttft)
+
+        when {
+            random.nextDouble() < model.errorRate -> {
+                counter.errors.incrementAndGet()
+                Thread.sleep(ttft)
+                sendJson(exchange, model.errorStatus, error(model.errorStatus, "Mock provider error"))
+            }
+            random.nextDouble() < model.stallRate -> {
+                counter.stalls.incrementAndGet()
+                Thread.sleep(model.stallMs)
+                sendJson(exchange, 504, error(504, "Mock stall"))
+            }
+            else -> {
+                val content = productJson(model, random)
+                val completed = if (stream) {
+                    streamAnswer(exchange, id, modelName, content, model.chunks, ttft, latency)
+                } else {
+                    Thread.sleep(latency)
+                    sendJson(exchange, 200, completion(id, modelName, content))
+                    true
+                }
+                if (completed) counter.completed.incrementAndGet() else counter.closedByClient.incrementAndGet()
+            }
+        }
+    }
+
+    /**
+     * Send [content] as [chunks] deltas, the first after [ttft] and the last at [latency];
+     * false if the client closed the stream first
+     */
+    private fun streamAnswer(
+        exchange: HttpExchange,
+        id: Int,
+        model: String,
+        content: String,
+        chunks: Int,
+        ttft: Long,
+        latency: Long
+    ): Boolean {
+        exchange.responseHeaders.set("Content-Type", "text/event-stream")
+        exchange.responseHeaders.set("Cache-Control", "no-cache")
+        exchange.sendResponseHeaders(200, 0)
+
+        val out = exchange.responseBody
+        try {
+            send(out, ": OPENROUTER PROCESSING\n\n")
+            Thread.sleep(ttft)
+
+            val pieces = split(content, chunks)
+            val gap = if (pieces.size > 1) (latency - ttft) / (pieces.size - 1) else 0L
+            for ((i, piece) in pieces.withIndex()) {
+                if (i > 0) Thread.sleep(gap)
+                val delta = JSONObject().put("role", "assistant").put("content", piece)
+                send(out, "data: ${chunk(id, model, delta, null)}\n\n")
+            }
+
+            val last = chunk(id, model, JSONObject(), "stop").put("usage", usage(content))
+            send(out, "data: $last\n\n")
+            send(out, "data: [DONE]\n\n")
+            out.close()
+            return true
+        } catch (e: IOException) {
+            return false
+        }
+    }
+
+    private fun send(out: OutputStream, text: String) {
+        out.write(text.toByteArray(Charsets.UTF_8))
+        out.flush()
+    }
+
+    private fun split(content: String, chunks: Int): List<String> {
+        val size = (content.length + chunks - 1) / chunks
+        return content.chunked(size.coerceAtLeast(1))
+    }
+
+    private fun productJson(model: Scenario.Model, random: Random): String {
+        val product = PRODUCTS[random.nextInt(PRODUCTS.size)]
+        val confidence = Math.round(model.confidence.sample(random).coerceIn(0.0, 1.0) * 100) / 100.0
+        val blankModel = random.nextDouble() < model.blankModelRate
+
+        // field order as the prompt lists them: notes last, the cascade closes streams before them.
+        // JSONObject does not keep insertion order, JSONStringer writes fields as given
+        return JSONStringer()
+            .`object`()
+            .key("brand").value(product[0])
+            .key("model").value(if (blankModel) "" else product[1])
+            .key("category").value(product[2])
+            .key("key_attributes").array().value(product[4]).value(product[5]).value(product[6]).endArray()
+            .key("searchQuery").value(product[3])
+            .key("confidence").value(confidence)
+            .key("notes").value("Mock answer. Generation year is not visible; identification is based on " +
+                    "color, materials and layout. Packaging, labels and serial markings are out of frame.")
+            .endObject()
+            .toString()
+    }
+
+    private fun chunk(id: Int, model: String, delta: JSONObject, finishReason: String?): JSONObject {
+        val choice = JSONObject().put("index", 0).put("delta", delta)
+        if (finishReason != null) choice.put("finish_reason", finishReason)
+        return JSONObject()
+            .put("id", "gen-mock-$id")
+            .put("object", "chat.completion.chunk")
+            .put("model", model)
+            .put("choices", JSONArray().put(choice))
+    }
+
+    private fun completion(id: Int, model: String, content: String): String {
+        val message = JSONObject().put("role", "assistant").put("content", content)
+        return JSONObject()
+            .put("id", "gen-mock-$id")
+            .put("object", "chat.completion")
+            .put("model", model)
+            .put("choices", JSONArray().put(JSONObject().put("index", 0).put("message", message).put("finish_reason", "stop")))
+            .put("usage", usage(content))
+            .toString()
+    }
+
+    // prompt ~1.1k tokens with the 258-token image, ~4 characters per completion token
+    private fun usage(content: String): JSONObject {
+        val completion = content.length / 4
+        return JSONObject()
+            .put("prompt_tokens", 1143)
+            .put("completion_tokens", completion)
+            .put("total_tokens", 1143 + completion)
+    }
+
+    private fun error(code: Int, message: String): String {
+        return JSONObject().put("error", JSONObject().put("code", code).put("message", message)).toString()
+    }
+
+    private fun sendJson(exchange: HttpExchange, status: Int, json: String) {
+        val bytes = json.toByteArray(Charsets.UTF_8)
+        exchange.responseHeaders.set("Content-Type", "application/json")
+        exchange.sendResponseHeaders(status, bytes.size.toLong())
+        exchange.responseBody.use { it.write(bytes) }
+    }
+}
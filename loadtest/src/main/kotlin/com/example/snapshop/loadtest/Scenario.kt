@@ -0,0 +1,137 @@
+package com.example.snapshop.loadtest
+
+import java.io.File
+import java.util.Properties
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * How the mock server behaves, per model, read from a properties file
+ *
+ * A plain key applies to every model, "<model>.<key>" overrides it for one:
+ *   latency = lognormal:1500:0.35
+ *   google/gemini-2.5-flash-lite.latency = lognormal:700:0.4
+ *
+ * Keys (distributions in ms unless noted):
+ *   port                 listen port (8089)
+ *   seed                 fixed random seed, for repeatable runs (each request draws
+ *                        from Random(seed xor request id), whatever thread serves it)
+ *   ttft                 time to the first content chunk
+ *   latency              time to the last content chunk (at least ttft)
+ *   chunks               content deltas per streamed answer
+ *   confidence           reported confidence, clamped to 0..1
+ *   model.blank.rate     share of answers with an empty "model"
+ *   error.rate           share of requests answered with error.status after ttft
+ *   error.status         HTTP status of those errors (500)
+ *   stall.rate           share of requests that never answer (client timeouts)
+ *   stall.ms             how long a stalled request holds the connection (120000)
+ *
+ * Distributions: "800" or "fixed:800", "uniform:min:max", "normal:mean:sd",
+ * "lognormal:median:sigma", "exponential:mean".
+ */
+class Scenario(private val props: Properties) {
+
+    companion object {
+        @JvmStatic
+        fun load(file: File): Scenario {
+            val props = Properties()
+            file.inputStream().use { props.load(it) }
+            return Scenario(props)
+        }
+    }
+
+    /**
+     * Behaviour of one model, resolved once
+     */
+    class Model(
+        val ttft: Distribution,
+        val latency: Distribution,
+        val chunks: Int,
+        val confidence: Distribution,
+        val blankModelRate: Double,
+        val errorRate: Double,
+        val errorStatus: Int,
+        val stallRate: Double,
+        val stallMs: Long
+    ) {
+        override fun toString(): String {
+            return "ttft $ttft, latency $latency, $chunks chunks, confidence $confidence, " +
+                    "blank model $blankModelRate, errors $errorRate ($errorStatus), stalls $stallRate"
+        }
+    }
+
+    val port: Int = props.getProperty("port", "8089").trim().toInt()
+
+    val seed: Long? = props.getProperty("seed")?.trim()?.toLong()
+
+    /**
+     * Random source for request [requestId]: repeatable per request with a seed,
+     * so handler threads never share (and interleave draws from) one generator
+     */
+    fun random(requestId: Int): Random = seed?.let { Random(it xor requestId.toLong()) } ?: Random()
+
+    private val models = ConcurrentHashMap<String, Model>()
+
+    fun model(name: String): Model = models.getOrPut(name) {
+        Model(
+            ttft = Distribution.parse(value(name, "ttft", "lognormal:600:0.3")),
+            latency = Distribution.parse(value(name, "latency", "lognormal:1500:0.3")),
+            chunks = value(name, "chunks", "24").toInt().coerceAtLeast(1),
+            confidence = Distribution.parse(value(name, "confidence", "uniform:0.5:0.95")),
+            blankModelRate = value(name, "model.blank.rate", "0.2").toDouble(),
+            errorRate = value(name, "error.rate", "0").toDouble(),
+            errorStatus = value(name, "error.status", "500").toInt(),
+            stallRate = value(name, "stall.rate", "0").toDouble(),
+            stallMs = value(name, "stall.ms", "120000").toLong()
+        )
+    }
+
+    private fun value(model: String, key: String, default: String): String {
+        return (props.getProperty("$model.$key") ?: props.getProperty(key) ?: default).trim()
+    }
+}
+
+/**
+ * A random variable given as "kind:param:param", see Scenario
+ */
+class Distribution private constructor(private val spec: String, private val sampler: (Random) -> Double) {
+
+    companion object {
+        @JvmStatic
+        fun parse(spec: String): Distribution {
+            val parts = spec.split(':').map { it.trim() }
+            fun param(i: Int): Double {
+                return parts.getOrNull(i)?.toDoubleOrNull()
+                    ?: throw IllegalArgumentException("Bad distribution '$spec'")
+            }
+
+            return when (parts[0].lowercase()) {
+                "fixed" -> param(1).let { v -> Distribution(spec) { v } }
+                "uniform" -> {
+                    val min = param(1)
+                    val max = param(2)
+                    Distribution(spec) { min + it.nextDouble() * (max - min) }
+                }
+                "normal" -> {
+                    val mean = param(1)
+                    val sd = param(2)
+                    Distribution(spec) { mean + it.nextGaussian() * sd }
+                }
+                "lognormal" -> {
+                    val median = param(1)
+                    val sigma = param(2)
+                    Distribution(spec) { median * Math.exp(it.nextGaussian() * sigma) }
+                }
+                "exponential" -> {
+                    val mean = param(1)
+                    Distribution(spec) { -mean * Math.log(1.0 - it.nextDouble()) }
+                }
+                else -> param(0).let { v -> Distribution(spec) { v } }
+            }
+        }
+    }
+
+    fun sample(random: Random): Double = sampler(random)
+
+    override fun toString(): String = spec
+}